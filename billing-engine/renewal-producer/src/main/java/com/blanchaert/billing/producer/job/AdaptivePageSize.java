@@ -0,0 +1,123 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Page-size controller for one kind of page (scan or publish). With the kind's target,
+ * {@code app.scanPageTargetMs} or {@code app.publishPageTargetMs}, at 0 (the default)
+ * every page has the configured size.
+ * Otherwise each page's measured time is turned into a per-row cost, and the next page
+ * gets as many rows as fit the target at that cost, within {@code min}..{@code max}.
+ * The change per page is bounded to a factor of {@value #MAX_STEP}, so one outlier page
+ * (an autovacuum pass, a flow-control stall) only nudges the size. Pages that returned
+ * no rows say nothing about the cost and leave the size as it was.
+ * <p>
+ * A page's time runs from its start to after its commit, so a publish page's confirm
+ * wait and the commit itself count. A step {@link #record records} its page in the
+ * chunk, and this controller, registered as the step's chunk listener, takes the time
+ * once Batch has committed. Callers that commit their own pages pass the time to
+ * {@link #next} themselves.
+ * <p>
+ * A step keeps its current size in its ExecutionContext, committed with the following
+ * page, so a restarted step resumes at the size it had reached instead of the
+ * configured one. The last size chosen by any page is the {@code renewal.page.size} gauge.
+ */
+public class AdaptivePageSize implements ChunkListener {
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePageSize.class);
+    private static final double MAX_STEP = 2.0;
+
+    private final String name;
+    private final String contextKey;
+    private final String pageAttribute;
+    private final int initial;
+    private final int min;
+    private final int max;
+    private final long targetNanos;
+    private final AtomicInteger last;
+
+    public AdaptivePageSize(String name, MeterRegistry meters, int initial, int min, int max, long targetMs) {
+        if (targetMs > 0 && (min < 1 || max < min)) {
+            throw new IllegalArgumentException(
+                    name + " adaptive page size needs 1 <= min <= max, was " + min + ".." + max);
+        }
+        this.name = name;
+        this.contextKey = name + ".pageSize";
+        this.pageAttribute = name + ".page";
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, targetMs));
+        this.min = min;
+        this.max = max;
+        this.initial = adaptive() ? Math.max(min, Math.min(max, initial)) : initial;
+        this.last = new AtomicInteger(this.initial);
+        Gauge.builder("renewal.page.size", last, AtomicInteger::get)
+                .description("Rows requested by the last page")
+                .tag("step", name)
+                .register(meters);
+    }
+
+    public boolean adaptive() {
+        return targetNanos > 0;
+    }
+
+    public int initial() {
+        return initial;
+    }
+
+    /** The size for a step's next page: the one its context holds, else the configured size. */
+    public int size(ExecutionContext context) {
+        if (!adaptive()) {
+            return initial;
+        }
+        return context.getInt(contextKey, initial);
+    }
+
+    /**
+     * Records a page of {@code size} requested rows that returned {@code rows}, started at
+     * {@code startedNanos} ({@link System#nanoTime}), for {@link #afterChunk} to time.
+     */
+    public void record(ChunkContext chunkContext, int size, long rows, long startedNanos) {
+        if (adaptive()) {
+            chunkContext.setAttribute(pageAttribute, new long[]{size, rows, startedNanos});
+        }
+    }
+
+    /** Sets the step's next size from the page recorded in this chunk, which has committed. */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        if (context.removeAttribute(pageAttribute) instanceof long[] page) {
+            ExecutionContext stepCtx = context.getStepContext().getStepExecution().getExecutionContext();
+            stepCtx.putInt(contextKey, next((int) page[0], page[1], System.nanoTime() - page[2]));
+        }
+    }
+
+    /** A rolled-back page leaves the size as it was. */
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        context.removeAttribute(pageAttribute);
+    }
+
+    /** The size following a page of {@code size} requested rows that took {@code elapsedNanos} for {@code rows}. */
+    public int next(int size, long rows, long elapsedNanos) {
+        if (!adaptive() || rows <= 0 || elapsedNanos <= 0) {
+            last.set(size);
+            return size;
+        }
+        double fitting = (double) targetNanos * rows / elapsedNanos;
+        double bounded = Math.max(size / MAX_STEP, Math.min(size * MAX_STEP, fitting));
+        int next = (int) Math.max(min, Math.min(max, Math.round(bounded)));
+        if (next != size) {
+            log.debug("{} page size {} -> {} ({} rows in {} ms)",
+                    name, size, next, rows, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+        last.set(next);
+        return next;
+    }
+}
@@ -0,0 +1,127 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Default scan windows for launched runs: from the day after the last due date a
+ * completed {@code renewalJob} covered, through the horizon: today, or with
+ * {@code app.lookAheadDays} set, that many days later (look-ahead staging). After a
+ * missed night the next run therefore also emits the renewals that fell due while
+ * nothing ran; with look-ahead, each run normally adds just the one new day at the
+ * horizon. The start is held to {@code app.catchUpMaxDays} before today, so a stack
+ * restored after a long outage does not emit months of late renewals unasked.
+ */
+@Component
+public class CatchUpWindows {
+    private static final Logger log = LoggerFactory.getLogger(CatchUpWindows.class);
+    // Forced re-runs add instances of their own; this many recent ones always include
+    // the last nightly run in practice.
+    private static final int RECENT_INSTANCES = 100;
+
+    private final JobExplorer explorer;
+    private final ZoneId zone;
+    private final int maxDays;
+    private final int lookAheadDays;
+
+    public CatchUpWindows(JobExplorer explorer,
+                          @Value("${app.timezone:Europe/Brussels}") String tz,
+                          @Value("${app.catchUpMaxDays:7}") int maxDays,
+                          @Value("${app.lookAheadDays:0}") int lookAheadDays) {
+        if (maxDays < 1) {
+            throw new IllegalArgumentException("app.catchUpMaxDays must be at least 1, was " + maxDays);
+        }
+        if (lookAheadDays < 0) {
+            throw new IllegalArgumentException("app.lookAheadDays must not be negative, was " + lookAheadDays);
+        }
+        this.explorer = explorer;
+        this.zone = ZoneId.of(tz);
+        this.maxDays = maxDays;
+        this.lookAheadDays = lookAheadDays;
+    }
+
+    /** The default window of a launch today. */
+    public ScanWindow today() {
+        return resolve(null, null);
+    }
+
+    /** The last due date a run launched on {@code today} may stage. */
+    public LocalDate horizon(LocalDate today) {
+        return today.plusDays(lookAheadDays);
+    }
+
+    /** The window a run's parameters ask for, held to today's horizon (see {@link ScanWindow#of}). */
+    public ScanWindow forRun(JobParameters params) {
+        LocalDate today = LocalDate.now(zone);
+        return ScanWindow.of(params, today, horizon(today));
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /**
+     * A window from {@code start} to {@code end}; a null {@code end} is the horizon, and a
+     * null {@code start} is the catch-up default for that end.
+     */
+    public ScanWindow resolve(LocalDate start, LocalDate end) {
+        LocalDate today = LocalDate.now(zone);
+        LocalDate horizon = horizon(today);
+        LocalDate last = end == null ? horizon : end;
+        if (last.isAfter(horizon)) {
+            throw new IllegalArgumentException("scan window end " + last + " is after " + horizon
+                    + " (today plus app.lookAheadDays)");
+        }
+        if (start != null) {
+            return new ScanWindow(start, last);
+        }
+        // Catch-up is counted back from today, or from a past end; days ahead of today
+        // are look-ahead, not catch-up.
+        LocalDate anchor = last.isAfter(today) ? today : last;
+        LocalDate covered = lastCoveredDay();
+        LocalDate first = covered == null ? anchor : !covered.isBefore(last) ? last : covered.plusDays(1);
+        LocalDate earliest = anchor.minusDays(maxDays - 1L);
+        if (first.isBefore(earliest)) {
+            log.warn("Last completed renewal run covered {}; catch-up limited to {} days from {} (app.catchUpMaxDays)",
+                    covered, maxDays, earliest);
+            first = earliest;
+        }
+        return new ScanWindow(first, last);
+    }
+
+    private LocalDate lastCoveredDay() {
+        LocalDate covered = null;
+        for (JobInstance instance : explorer.getJobInstances("renewalJob", 0, RECENT_INSTANCES)) {
+            for (JobExecution execution : explorer.getJobExecutions(instance)) {
+                if (execution.getStatus() != BatchStatus.COMPLETED) {
+                    continue;
+                }
+                LocalDate through = coveredThrough(execution.getJobParameters());
+                if (through != null && (covered == null || through.isAfter(covered))) {
+                    covered = through;
+                }
+            }
+        }
+        return covered;
+    }
+
+    // Runs launched before windows existed carry only scheduleDate, the day they scanned.
+    private static LocalDate coveredThrough(JobParameters params) {
+        String end = params.getString(ScanWindow.END_PARAM);
+        if (end != null) {
+            return LocalDate.parse(end);
+        }
+        String scheduleDate = params.getString("scheduleDate");
+        return scheduleDate == null ? null : LocalDate.parse(scheduleDate);
+    }
+}
@@ -0,0 +1,46 @@
+package com.blanchaert.billing.producer.job;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+
+/**
+ * Compares the stored next_due_local_date of every active subscription with the value
+ * the scan's due filter would compute today. A full pass over the active set, so it is
+ * an on-demand check, not something to poll.
+ */
+@Component
+public class DueIndexChecker {
+    private final JdbcTemplate jdbc;
+    private final String zone;
+
+    public DueIndexChecker(JdbcTemplate jdbc, @Value("${app.timezone:Europe/Brussels}") String tz) {
+        this.jdbc = jdbc;
+        this.zone = ZoneId.of(tz).getId();
+    }
+
+    public record Report(String settingsTimezone, String appTimezone, long activeRows, long staleRows) {
+        /** True when the scan may run with app.scanSource=due-index without missing rows. */
+        public boolean consistent() {
+            return staleRows == 0 && appTimezone.equals(settingsTimezone);
+        }
+    }
+
+    public Report check() {
+        String settingsTimezone = jdbc.queryForObject("SELECT timezone FROM billing_settings", String.class);
+        return jdbc.queryForObject("""
+                SELECT count(*) AS active_rows,
+                       count(*) FILTER (
+                           WHERE s.next_due_local_date IS DISTINCT FROM
+                                 renewal_due_local_date(s.renewed_at, pl.interval, ?)
+                       ) AS stale_rows
+                FROM subscription s
+                JOIN plan pl ON pl.id = s.plan_id
+                WHERE s.status = 'active'
+                """,
+                (rs, i) -> new Report(settingsTimezone, zone, rs.getLong("active_rows"), rs.getLong("stale_rows")),
+                zone);
+    }
+}
@@ -0,0 +1,110 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.ZoneId;
+import java.util.UUID;
+
+@Configuration
+public class DueIndexJobConfig {
+    private static final Logger log = LoggerFactory.getLogger(DueIndexJobConfig.class);
+    static final String REBUILD_CURSOR_KEY = "dueIndexRebuildStep.cursor";
+
+    @Bean
+    public Job dueIndexRebuildJob(JobRepository repo, @Qualifier("dueIndexRebuildStep") Step rebuildStep) {
+        return new JobBuilder("dueIndexRebuildJob", repo)
+                .start(rebuildStep)
+                .build();
+    }
+
+    @Bean
+    public Step dueIndexRebuildStep(JobRepository repo,
+                                    PlatformTransactionManager tx,
+                                    JdbcTemplate jdbc,
+                                    @Value("${app.timezone:Europe/Brussels}") String tz,
+                                    @Value("${app.scanPageSize:10000}") int pageSize) {
+        String zone = ZoneId.of(tz).getId();
+        return new StepBuilder("dueIndexRebuildStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // Recomputes subscription.next_due_local_date (V6) for every row, one PK-ordered
+                    // page per transaction, rewriting only rows whose stored value is stale. The
+                    // trigger covers renewed_at and plan_id changes; this job covers what it cannot
+                    // see — a plan interval edit, a timezone change, rows written with the trigger
+                    // disabled. The first page also points billing_settings at app.timezone, so
+                    // rows the trigger writes while the rebuild runs already use the new zone. The
+                    // cursor lives in the step ExecutionContext like the scan's: a crash resumes
+                    // from the last committed page, and the IS DISTINCT FROM guard makes a
+                    // re-run page a no-op.
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    String cursorValue = stepCtx.getString(REBUILD_CURSOR_KEY, null);
+                    if (cursorValue == null) {
+                        jdbc.update("UPDATE billing_settings SET timezone = ? WHERE timezone <> ?", zone, zone);
+                    }
+                    UUID cursor = UUID.fromString(cursorValue == null ? RenewalJobConfig.NIL_UUID : cursorValue);
+
+                    String sql = """
+                            WITH page AS (
+                                SELECT s.id, s.renewed_at, s.next_due_local_date, pl.interval
+                                FROM subscription s
+                                JOIN plan pl ON pl.id = s.plan_id
+                                WHERE s.id > ?
+                                ORDER BY s.id
+                                LIMIT ?
+                            ), fixed AS (
+                                UPDATE subscription s
+                                SET next_due_local_date = renewal_due_local_date(p.renewed_at, p.interval, ?)
+                                FROM page p
+                                WHERE s.id = p.id
+                                  AND s.next_due_local_date IS DISTINCT FROM
+                                      renewal_due_local_date(p.renewed_at, p.interval, ?)
+                                RETURNING 1
+                            )
+                            SELECT count(*) AS page_rows,
+                                   (SELECT id FROM page ORDER BY id DESC LIMIT 1) AS last_id,
+                                   (SELECT count(*) FROM fixed) AS fixed
+                            FROM page
+                            """;
+
+                    record RebuildPage(long pageRows, UUID lastId, long fixed) {
+                    }
+                    RebuildPage page = jdbc.query(con -> {
+                        var ps = con.prepareStatement(sql);
+                        ps.setObject(1, cursor);
+                        ps.setInt(2, pageSize);
+                        ps.setString(3, zone);
+                        ps.setString(4, zone);
+                        return ps;
+                    }, rs -> {
+                        rs.next();
+                        return new RebuildPage(
+                                rs.getLong("page_rows"),
+                                (UUID) rs.getObject("last_id"),
+                                rs.getLong("fixed")
+                        );
+                    });
+
+                    contribution.incrementWriteCount(page.fixed());
+                    log.info("Due-index rebuild page: {} subscriptions examined, {} rewritten",
+                            page.pageRows(), page.fixed());
+                    if (page.pageRows() < pageSize) {
+                        return RepeatStatus.FINISHED;
+                    }
+                    stepCtx.putString(REBUILD_CURSOR_KEY, page.lastId().toString());
+                    return RepeatStatus.CONTINUABLE;
+                }, tx).build();
+    }
+}
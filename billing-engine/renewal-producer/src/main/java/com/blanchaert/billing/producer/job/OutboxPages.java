@@ -0,0 +1,132 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One claim → publish → await confirms → mark cycle over a page of the outbox. Runs in
+ * the caller's transaction: the claimed rows stay locked (invisible to peers through
+ * SKIP LOCKED) until that transaction commits their {@code published_at}.
+ */
+@Component
+public class OutboxPages {
+    private static final Logger log = LoggerFactory.getLogger(OutboxPages.class);
+
+    private final JdbcTemplate jdbc;
+    private final OutboxPublisher publisher;
+    private final PublishThrottle throttle;
+    private final long confirmTimeoutMs;
+    private final Counter publishedCounter;
+
+    public OutboxPages(JdbcTemplate jdbc,
+                       OutboxPublisher publisher,
+                       PublishThrottle throttle,
+                       MeterRegistry meters,
+                       @Value("${app.confirmTimeoutMs:10000}") long confirmTimeoutMs) {
+        this.jdbc = jdbc;
+        this.publisher = publisher;
+        this.throttle = throttle;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.publishedCounter = Counter.builder("outbox.published")
+                .description("Outbox rows confirmed published")
+                .register(meters);
+    }
+
+    /**
+     * One page's outcome: {@code claimed} rows, 0 when no unpublished row is visible to
+     * this publisher, claimed at {@code startedNanos} ({@link System#nanoTime}). The
+     * page-size controller measures from there to the caller's commit, so it sees the
+     * page's own cost, confirm wait and commit included, but not a throttled wait
+     * before the claim.
+     */
+    public record Page(int claimed, long startedNanos) {
+    }
+
+    /** Publishes one page of at most {@code pageSize} rows. */
+    public Page publishPage(int pageSize) {
+        record OutboxRow(UUID id, LocalDate dueDate, byte[] payload) {
+        }
+        // Backpressure tokens are taken before the claim, so a throttled page waits
+        // without holding row locks; unused ones go back.
+        int limit = throttle.acquire(pageSize);
+        long started = System.nanoTime();
+        // Claim one page of unpublished rows; SKIP LOCKED keeps concurrent publishers disjoint
+        var rows = jdbc.query(
+                RenewalJobConfig.OUTBOX_CLAIM_SQL,
+                ps -> ps.setInt(1, limit),
+                (rs, i) -> new OutboxRow((UUID) rs.getObject("id"),
+                        rs.getObject("due_date", LocalDate.class), rs.getBytes("payload"))
+        );
+        throttle.release(limit - rows.size());
+
+        if (rows.isEmpty()) {
+            log.info("No publishable outbox rows visible (drained, or remainder claimed by a concurrent publisher).");
+            return new Page(0, started);
+        }
+
+        var futures = new LinkedHashMap<OutboxRow, CompletableFuture<Boolean>>(rows.size());
+        for (var row : rows) {
+            futures.put(row, publisher.publish(row.id().toString(), row.payload()));
+        }
+
+        long deadline = System.nanoTime() + confirmTimeoutMs * 1_000_000L;
+        var confirmed = new ArrayList<OutboxRow>(rows.size());
+        for (var entry : futures.entrySet()) {
+            long remaining = Math.max(deadline - System.nanoTime(), 0L);
+            try {
+                if (entry.getValue().get(remaining, TimeUnit.NANOSECONDS)) {
+                    confirmed.add(entry.getKey());
+                }
+            } catch (TimeoutException | ExecutionException | CancellationException ignored) {
+                // Leave the row unpublished so the next page or job run re-picks it.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted awaiting publisher confirms", e);
+            }
+        }
+
+        if (confirmed.isEmpty()) {
+            throw new IllegalStateException(
+                    "0/" + rows.size() + " rows confirmed within " + confirmTimeoutMs
+                            + " ms"
+            );
+        }
+
+        // due_date prunes each update to the row's partition (V8); id alone would probe
+        // every partition's primary key.
+        jdbc.batchUpdate(
+                "UPDATE renewal_outbox SET published_at = now() WHERE id = ? AND due_date = ?",
+                confirmed,
+                confirmed.size(),
+                (ps, row) -> {
+                    ps.setObject(1, row.id());
+                    ps.setObject(2, row.dueDate());
+                }
+        );
+        publishedCounter.increment(confirmed.size());
+
+        int unconfirmedCount = rows.size() - confirmed.size();
+        if (unconfirmedCount > 0) {
+            log.warn("{} of {} unconfirmed, rows stay unpublished and will be re-picked.",
+                    unconfirmedCount, rows.size());
+        }
+
+        log.info("Published page count: {}", confirmed.size());
+        return new Page(rows.size(), started);
+    }
+}
@@ -0,0 +1,93 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Daily partition upkeep for {@code renewal_outbox} (V8): creates the partitions the
+ * next scans will insert into, and detaches and drops partitions that are past the
+ * retention horizon and hold no unpublished row.
+ */
+@Component
+public class OutboxPartitions {
+    private static final Logger log = LoggerFactory.getLogger(OutboxPartitions.class);
+    private static final String PARTITION_PREFIX = "renewal_outbox_p";
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbc;
+    private final int partitionsAhead;
+    private final int retentionDays;
+
+    public OutboxPartitions(JdbcTemplate jdbc,
+                            @Value("${app.outboxPartitionsAhead:7}") int partitionsAhead,
+                            @Value("${app.outboxRetentionDays:35}") int retentionDays) {
+        this.jdbc = jdbc;
+        this.partitionsAhead = partitionsAhead;
+        this.retentionDays = retentionDays;
+    }
+
+    /** Ensures a partition exists for {@code today} and each of the next days; returns how many exist. */
+    public int createAhead(LocalDate today) {
+        return ensure(today, today.plusDays(partitionsAhead));
+    }
+
+    /** Ensures a partition exists for each day from {@code first} through {@code last}; returns how many exist. */
+    public int ensure(LocalDate first, LocalDate last) {
+        int present = 0;
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            Boolean exists = jdbc.queryForObject(
+                    "SELECT renewal_outbox_ensure_partition(?)", Boolean.class, day);
+            if (Boolean.TRUE.equals(exists)) {
+                present++;
+            } else {
+                // Rows for that date were written before its partition; they stay in the
+                // default partition, which still accepts them.
+                log.warn("No daily outbox partition for {}: rows already in renewal_outbox_default", day);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Detaches and drops every daily partition older than the retention horizon whose
+     * rows are all published; a partition still holding an unpublished row is kept and
+     * reported, since dropping it would lose a renewal.
+     */
+    public int dropExpired(LocalDate today) {
+        LocalDate horizon = today.minusDays(retentionDays);
+        List<String> partitions = jdbc.queryForList("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'renewal_outbox'::regclass
+                  AND c.relname LIKE 'renewal\\_outbox\\_p%'
+                ORDER BY c.relname
+                """, String.class);
+        int dropped = 0;
+        for (String partition : partitions) {
+            LocalDate day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_DATE);
+            if (!day.isBefore(horizon)) {
+                break;
+            }
+            Boolean pending = jdbc.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE published_at IS NULL)", Boolean.class);
+            if (Boolean.TRUE.equals(pending)) {
+                log.warn("Outbox partition {} is past retention but still has unpublished rows; kept", partition);
+                continue;
+            }
+            // Plain DETACH, not CONCURRENTLY: the default partition rules the latter out,
+            // and the parent lock it takes is held only for the catalog change.
+            jdbc.execute("ALTER TABLE renewal_outbox DETACH PARTITION " + partition);
+            jdbc.execute("DROP TABLE " + partition);
+            dropped++;
+        }
+        return dropped;
+    }
+}
@@ -9,24 +9,38 @@ import org.springframework.amqp.core.MessageBuilder;
 import org.springframework.amqp.core.ReturnedMessage;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Publishes outbox rows with correlated confirms. With {@code app.publishChannels} above
+ * one, rows are sharded by id across that many lanes; each lane sends what it has queued
+ * inside one {@link RabbitTemplate#invoke} scope, i.e. on one channel of its own with that
+ * channel's independent confirm tracking. Row semantics are the same in every case: the
+ * future completes true only for an ack without a return.
+ */
 @Component
-public class OutboxPublisher {
+public class OutboxPublisher implements DisposableBean {
     private static final Logger log = LoggerFactory.getLogger(OutboxPublisher.class);
 
     private final RabbitTemplate rabbit;
     private final String exchange;
     private final String routingKey;
     private final Counter returnedCounter;
+    private final List<PublishLane> lanes = new ArrayList<>();
 
     public OutboxPublisher(RabbitTemplate rabbit,
                            MeterRegistry meters,
                            @Value("${rabbitmq.exchange}") String exchange,
-                           @Value("${rabbitmq.routingKey}") String routingKey) {
+                           @Value("${rabbitmq.routingKey}") String routingKey,
+                           @Value("${app.publishChannels:1}") int publishChannels) {
         this.rabbit = rabbit;
         this.exchange = exchange;
         this.routingKey = routingKey;
@@ -37,12 +51,25 @@ public class OutboxPublisher {
         // exists because RabbitTemplate logs one generic WARN per returned
         // message when no callback is registered.
         rabbit.setReturnsCallback(returned -> log.debug("Publisher return delivered: {}", returned));
+        if (publishChannels > 1) {
+            for (int i = 0; i < publishChannels; i++) {
+                lanes.add(new PublishLane(i));
+            }
+        }
     }
 
-    public CompletableFuture<Boolean> publish(String id, String json) {
-        Message msg = MessageBuilder.withBody(json.getBytes()).setContentType("application/json").build();
+    /**
+     * Publishes {@code body}, the row's stored UTF-8 JSON payload, as the message body
+     * as-is; the array is not copied and must not be modified afterwards.
+     */
+    public CompletableFuture<Boolean> publish(String id, byte[] body) {
+        Message msg = MessageBuilder.withBody(body).setContentType("application/json").build();
         CorrelationData correlation = new CorrelationData(id);
-        rabbit.convertAndSend(exchange, routingKey, msg, correlation);
+        if (lanes.isEmpty()) {
+            rabbit.convertAndSend(exchange, routingKey, msg, correlation);
+        } else {
+            lanes.get(Math.floorMod(id.hashCode(), lanes.size())).submit(new Pending(msg, correlation));
+        }
         return correlation.getFuture().thenApply(confirm -> {
             // The broker acks a mandatory unroutable message right after
             // returning it, so the return must win over the ack: spring-rabbit
@@ -59,4 +86,91 @@ public class OutboxPublisher {
             return confirm != null && confirm.isAck();
         });
     }
+
+    @Override
+    public void destroy() {
+        lanes.forEach(PublishLane::close);
+    }
+
+    private static void nack(List<Pending> pending, String reason) {
+        for (Pending p : pending) {
+            p.correlation().getFuture().complete(new CorrelationData.Confirm(false, reason));
+        }
+    }
+
+    private record Pending(Message message, CorrelationData correlation) {
+    }
+
+    private final class PublishLane implements Runnable {
+        private static final int MAX_SEND_BATCH = 500;
+
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile boolean closed;
+        // Messages of the current batch handed to the channel so far; lane thread only.
+        private int sent;
+
+        private PublishLane(int index) {
+            this.thread = new Thread(this, "outbox-publish-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void submit(Pending pending) {
+            queue.add(pending);
+            if (closed) {
+                // Raced with close(): the lane may already be gone.
+                failQueued();
+            }
+        }
+
+        /** Stops the lane and nacks what it never sent, so no caller waits on a confirm. */
+        private void close() {
+            closed = true;
+            thread.interrupt();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            failQueued();
+        }
+
+        private void failQueued() {
+            List<Pending> unsent = new ArrayList<>();
+            queue.drainTo(unsent);
+            nack(unsent, "publisher shut down");
+        }
+
+        @Override
+        public void run() {
+            List<Pending> batch = new ArrayList<>(MAX_SEND_BATCH);
+            while (!closed && !Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, MAX_SEND_BATCH - 1);
+                sent = 0;
+                try {
+                    rabbit.invoke(ops -> {
+                        for (Pending pending : batch) {
+                            ops.convertAndSend(exchange, routingKey, pending.message(), pending.correlation());
+                            sent++;
+                        }
+                        return null;
+                    });
+                } catch (RuntimeException e) {
+                    // Only sends that never reached the channel are nacked here, so their rows
+                    // stay unpublished and the page cycle re-picks them. Those that did reach it
+                    // settle through their confirm, which the channel nacks if it closes first.
+                    log.warn("Publish lane {} failed after sending {} of {} messages",
+                            thread.getName(), sent, batch.size(), e);
+                    nack(batch.subList(sent, batch.size()), "send failed: " + e.getMessage());
+                }
+                batch.clear();
+            }
+        }
+    }
 }
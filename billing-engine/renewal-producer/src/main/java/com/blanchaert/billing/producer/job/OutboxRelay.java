@@ -0,0 +1,301 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Relay publish ({@code app.publishMode=relay}): reads {@code renewal_outbox} inserts from
+ * a pgoutput logical replication slot on publication {@code renewal_outbox_pub} (V9) and
+ * publishes each row as its transaction commits, with no claim query. Progress is
+ * confirm-gated per source transaction: once every row of the oldest transaction in
+ * flight is confirmed, its rows get {@code published_at} and the slot's flushed LSN moves
+ * past its commit. Anything unconfirmed drops the stream; the slot then replays from the
+ * last flushed commit, so a row is published at least once (the consumer's G2
+ * idempotency absorbs the repeats).
+ */
+@Component
+@ConditionalOnProperty(name = "app.publishMode", havingValue = "relay")
+public class OutboxRelay implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    static final String PUBLICATION = "renewal_outbox_pub";
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final JdbcConnectionDetails db;
+    private final JdbcTemplate jdbc;
+    private final OutboxPublisher publisher;
+    private final Counter publishedCounter;
+    private final String slot;
+    private final long confirmTimeoutMs;
+    private final int maxInFlightRows;
+    private volatile boolean running;
+    private Thread thread;
+
+    public OutboxRelay(JdbcConnectionDetails db,
+                       JdbcTemplate jdbc,
+                       OutboxPublisher publisher,
+                       MeterRegistry meters,
+                       @Value("${app.relaySlot:renewal_outbox_relay}") String slot,
+                       @Value("${app.confirmTimeoutMs:10000}") long confirmTimeoutMs,
+                       @Value("${app.relayMaxInFlight:20000}") int maxInFlightRows) {
+        this.db = db;
+        this.jdbc = jdbc;
+        this.publisher = publisher;
+        // Same meter as page mode: outbox_published_total stays the one
+        // confirmed-publish count whichever mode produced it.
+        this.publishedCounter = Counter.builder("outbox.published")
+                .description("Outbox rows confirmed published")
+                .register(meters);
+        this.slot = slot;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxInFlightRows = Math.max(1, maxInFlightRows);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "outbox-relay");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        long backoffMs = 1000;
+        while (running) {
+            try {
+                ensureSlot();
+                relay();
+                backoffMs = 1000;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Outbox relay stream failed; resuming from slot {} in {} ms", slot, backoffMs, e);
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    private void ensureSlot() throws SQLException {
+        Integer slots = jdbc.queryForObject(
+                "SELECT count(*) FROM pg_replication_slots WHERE slot_name = ?", Integer.class, slot);
+        if (slots != null && slots > 0) {
+            return;
+        }
+        try (Connection connection = replicationConnection()) {
+            connection.unwrap(PGConnection.class).getReplicationAPI()
+                    .createReplicationSlot()
+                    .logical()
+                    .withSlotName(slot)
+                    .withOutputPlugin("pgoutput")
+                    .make();
+        }
+        // A new slot only sees inserts committed after it; older unpublished rows need one
+        // page-mode publishStep run.
+        Long backlog = jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class);
+        log.info("Created logical replication slot {} on publication {}", slot, PUBLICATION);
+        if (backlog != null && backlog > 0) {
+            log.warn("{} unpublished outbox rows predate slot {} and will not be relayed; "
+                    + "drain them with one app.publishMode=page run", backlog, slot);
+        }
+    }
+
+    private void relay() throws SQLException, InterruptedException {
+        try (Connection connection = replicationConnection();
+             PGReplicationStream stream = connection.unwrap(PGConnection.class).getReplicationAPI()
+                     .replicationStream()
+                     .logical()
+                     .withSlotName(slot)
+                     .withSlotOption("proto_version", 1)
+                     .withSlotOption("publication_names", PUBLICATION)
+                     .withStatusInterval(1, TimeUnit.SECONDS)
+                     .start()) {
+            log.info("Outbox relay streaming from slot {}", slot);
+            Map<Integer, OutboxColumns> relations = new HashMap<>();
+            ArrayDeque<SourceTransaction> inFlight = new ArrayDeque<>();
+            SourceTransaction current = null;
+            while (running) {
+                ByteBuffer message = stream.readPending();
+                if (message == null) {
+                    settle(stream, inFlight);
+                    TimeUnit.MILLISECONDS.sleep(10);
+                    continue;
+                }
+                PgOutput.Message decoded = PgOutput.decode(message);
+                if (decoded instanceof PgOutput.Relation relation && relation.name().equals("renewal_outbox")) {
+                    relations.put(relation.oid(), OutboxColumns.of(relation.columns()));
+                } else if (decoded instanceof PgOutput.Begin) {
+                    current = new SourceTransaction(confirmTimeoutMs);
+                } else if (decoded instanceof PgOutput.Insert insert && current != null) {
+                    OutboxColumns columns = relations.get(insert.relationOid());
+                    if (columns != null) {
+                        String id = insert.values().get(columns.id());
+                        current.add(id, insert.values().get(columns.dueDate()),
+                                publisher.publish(id, bytea(insert.values().get(columns.payload()))));
+                    }
+                } else if (decoded instanceof PgOutput.Commit commit && current != null) {
+                    current.endLsn = LogSequenceNumber.valueOf(commit.endLsn());
+                    inFlight.add(current);
+                    current = null;
+                }
+                settle(stream, inFlight);
+            }
+        }
+    }
+
+    // Settles source transactions strictly in commit order, so the flushed LSN never
+    // passes an unconfirmed row. Waits on the oldest only when the window is full or its
+    // confirm deadline has passed.
+    private void settle(PGReplicationStream stream, ArrayDeque<SourceTransaction> inFlight)
+            throws SQLException, InterruptedException {
+        int rows = inFlight.stream().mapToInt(t -> t.ids.size()).sum();
+        while (!inFlight.isEmpty()) {
+            SourceTransaction oldest = inFlight.peek();
+            if (rows < maxInFlightRows && !oldest.expired() && !oldest.allDone()) {
+                return;
+            }
+            oldest.awaitConfirms(slot);
+            markPublished(oldest);
+            stream.setAppliedLSN(oldest.endLsn);
+            stream.setFlushedLSN(oldest.endLsn);
+            inFlight.poll();
+            rows -= oldest.ids.size();
+        }
+    }
+
+    private void markPublished(SourceTransaction transaction) {
+        if (transaction.ids.isEmpty()) {
+            return;
+        }
+        jdbc.update(con -> {
+            var ps = con.prepareStatement("""
+                    UPDATE renewal_outbox o
+                    SET published_at = now()
+                    FROM unnest(?::text[]::uuid[], ?::text[]::date[]) AS c(id, due_date)
+                    WHERE o.id = c.id AND o.due_date = c.due_date AND o.published_at IS NULL
+                    """);
+            ps.setArray(1, con.createArrayOf("text", transaction.ids.toArray()));
+            ps.setArray(2, con.createArrayOf("text", transaction.dueDates.toArray()));
+            return ps;
+        });
+        publishedCounter.increment(transaction.ids.size());
+    }
+
+    private Connection replicationConnection() throws SQLException {
+        Properties props = new Properties();
+        PGProperty.USER.set(props, db.getUsername());
+        PGProperty.PASSWORD.set(props, db.getPassword());
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(props, "10");
+        PGProperty.REPLICATION.set(props, "database");
+        PGProperty.PREFER_QUERY_MODE.set(props, "simple");
+        return DriverManager.getConnection(db.getJdbcUrl(), props);
+    }
+
+    /** pgoutput sends column values in text form; bytea's is {@code \x} plus hex (V10). */
+    private static byte[] bytea(String text) {
+        return HexFormat.of().parseHex(text, 2, text.length());
+    }
+
+    private record OutboxColumns(int id, int dueDate, int payload) {
+        static OutboxColumns of(List<String> columns) {
+            return new OutboxColumns(columns.indexOf("id"), columns.indexOf("due_date"), columns.indexOf("payload"));
+        }
+    }
+
+    private static final class SourceTransaction {
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> dueDates = new ArrayList<>();
+        private final List<CompletableFuture<Boolean>> confirms = new ArrayList<>();
+        private final long deadline;
+        private LogSequenceNumber endLsn;
+
+        SourceTransaction(long confirmTimeoutMs) {
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        }
+
+        void add(String id, String dueDate, CompletableFuture<Boolean> confirm) {
+            ids.add(id);
+            dueDates.add(dueDate);
+            confirms.add(confirm);
+        }
+
+        boolean allDone() {
+            return confirms.stream().allMatch(CompletableFuture::isDone);
+        }
+
+        boolean expired() {
+            return System.nanoTime() > deadline;
+        }
+
+        void awaitConfirms(String slot) throws InterruptedException {
+            int unconfirmed = 0;
+            for (CompletableFuture<Boolean> confirm : confirms) {
+                try {
+                    long remaining = Math.max(deadline - System.nanoTime(), 0L);
+                    if (!confirm.get(remaining, TimeUnit.NANOSECONDS)) {
+                        unconfirmed++;
+                    }
+                } catch (TimeoutException | ExecutionException | CancellationException e) {
+                    unconfirmed++;
+                }
+            }
+            if (unconfirmed > 0) {
+                throw new IllegalStateException(unconfirmed + "/" + confirms.size()
+                        + " relayed rows unconfirmed; replaying from slot " + slot + " at its flushed LSN");
+            }
+        }
+    }
+}
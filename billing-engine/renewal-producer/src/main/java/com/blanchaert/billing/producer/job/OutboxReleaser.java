@@ -0,0 +1,99 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Look-ahead release ({@code app.lookAheadDays > 0}): the scan stages renewals due on
+ * later days with a future {@code not_before} (V12), and the job's publishStep leaves
+ * them, because the claim only sees rows whose time has come. This loop, on every
+ * producer instance, publishes them as they become releasable: one
+ * {@link OutboxPages#publishPage} per transaction while pages come back full, then a
+ * poll every {@code app.releasePollMs}. Peers and the job's own publish share the claim
+ * through SKIP LOCKED, so running it everywhere only adds capacity.
+ */
+@Component
+@ConditionalOnExpression("${app.lookAheadDays:0} > 0")
+public class OutboxReleaser implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(OutboxReleaser.class);
+
+    private final OutboxPages pages;
+    private final AdaptivePageSize pageSizing;
+    private final TransactionTemplate tx;
+    private final long pollMs;
+    private volatile boolean running;
+    private Thread thread;
+
+    public OutboxReleaser(OutboxPages pages,
+                          @Qualifier("publishPageSizing") AdaptivePageSize pageSizing,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.releasePollMs:5000}") long pollMs) {
+        this.pages = pages;
+        this.pageSizing = pageSizing;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.pollMs = pollMs;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "outbox-release");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        int pageSize = pageSizing.initial();
+        while (running) {
+            OutboxPages.Page page;
+            try {
+                int size = pageSize;
+                page = tx.execute(status -> pages.publishPage(size));
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Outbox release page failed; retrying in {} ms", pollMs, e);
+                page = null;
+            }
+            if (page != null && page.claimed() > 0) {
+                int requested = pageSize;
+                pageSize = pageSizing.next(pageSize, page.claimed(), System.nanoTime() - page.startedNanos());
+                if (page.claimed() == requested) {
+                    continue;
+                }
+            }
+            try {
+                Thread.sleep(pollMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
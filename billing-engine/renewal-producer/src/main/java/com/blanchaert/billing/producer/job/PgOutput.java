@@ -0,0 +1,102 @@
+package com.blanchaert.billing.producer.job;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The slice of the pgoutput protocol (version 1) the outbox relay reads: relation
+ * descriptions, inserts with text-format tuples, and commit end LSNs. Every other
+ * message type is reported as {@link Other} and skipped by the caller.
+ */
+final class PgOutput {
+    private PgOutput() {
+    }
+
+    sealed interface Message permits Begin, Relation, Insert, Commit, Other {
+    }
+
+    record Begin() implements Message {
+    }
+
+    record Relation(int oid, String namespace, String name, List<String> columns) implements Message {
+    }
+
+    /** Column values in relation order; null for SQL NULL or an unchanged TOAST value. */
+    record Insert(int relationOid, List<String> values) implements Message {
+    }
+
+    record Commit(long endLsn) implements Message {
+    }
+
+    record Other(char type) implements Message {
+    }
+
+    static Message decode(ByteBuffer buffer) {
+        char type = (char) buffer.get();
+        return switch (type) {
+            case 'B' -> new Begin();
+            case 'R' -> relation(buffer);
+            case 'I' -> insert(buffer);
+            case 'C' -> commit(buffer);
+            default -> new Other(type);
+        };
+    }
+
+    private static Relation relation(ByteBuffer buffer) {
+        int oid = buffer.getInt();
+        String namespace = string(buffer);
+        String name = string(buffer);
+        buffer.get(); // replica identity setting
+        int columnCount = buffer.getShort();
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buffer.get(); // flags (part of the key)
+            columns.add(string(buffer));
+            buffer.getInt(); // type oid
+            buffer.getInt(); // type modifier
+        }
+        return new Relation(oid, namespace, name, columns);
+    }
+
+    private static Insert insert(ByteBuffer buffer) {
+        int relationOid = buffer.getInt();
+        buffer.get(); // 'N': new tuple follows
+        int columnCount = buffer.getShort();
+        List<String> values = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            char kind = (char) buffer.get();
+            if (kind == 't') {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                values.add(new String(bytes, StandardCharsets.UTF_8));
+            } else if (kind == 'b') {
+                // Binary columns are only sent when the slot asks for them; this relay does not.
+                throw new IllegalStateException("unexpected binary tuple column in pgoutput insert");
+            } else {
+                values.add(null); // 'n' null, 'u' unchanged TOAST
+            }
+        }
+        return new Insert(relationOid, values);
+    }
+
+    private static Commit commit(ByteBuffer buffer) {
+        buffer.get(); // flags
+        buffer.getLong(); // commit LSN
+        long endLsn = buffer.getLong();
+        return new Commit(endLsn);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get(); // terminator
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
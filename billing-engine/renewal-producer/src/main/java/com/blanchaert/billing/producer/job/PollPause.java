@@ -0,0 +1,38 @@
+package com.blanchaert.billing.producer.job;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+/**
+ * The wait of a polling tasklet, taken after its iteration's transaction has ended. A
+ * tasklet that has nothing to do yet calls {@link #request} and returns CONTINUABLE.
+ * This listener then sleeps in {@link #afterChunk}, which Batch calls after the commit.
+ * A sleep inside the tasklet would keep the step transaction, and its connection, open
+ * for the whole poll interval.
+ */
+final class PollPause implements ChunkListener {
+    private static final String ATTRIBUTE = PollPause.class.getName();
+
+    /** Asks for a {@code pollMs} wait once the current iteration has committed. */
+    static void request(ChunkContext chunkContext, long pollMs) {
+        chunkContext.setAttribute(ATTRIBUTE, pollMs);
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        if (!(context.removeAttribute(ATTRIBUTE) instanceof Long pollMs)) {
+            return;
+        }
+        try {
+            Thread.sleep(pollMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted between polls", e);
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        context.removeAttribute(ATTRIBUTE);
+    }
+}
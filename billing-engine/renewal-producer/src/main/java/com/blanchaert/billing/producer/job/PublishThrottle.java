@@ -0,0 +1,211 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket in front of every outbox page claim, refilled at a rate steered by the
+ * depth of the consumer's queue. With {@code app.publishTargetDepth} at 0 (the
+ * default) it is off and grants every request in full.
+ * <p>
+ * Every {@code app.publishDepthSampleMs} the first caller samples the queue's ready
+ * message count with a passive declare and re-derives the rate: the consumer's drain
+ * rate (depth fall plus messages sent since the last sample) plus the distance to the
+ * target spread over {@value #CORRECTION_HORIZON_SECONDS} s. Below the target the rate
+ * may also grow by {@value #RAMP_FACTOR}× per sample, so an idle queue fills quickly;
+ * above it, the rate drops under the drain rate until the backlog shrinks back. The
+ * rate stays within {@code app.publishMinRate}..{@code app.publishMaxRate}. Rows not
+ * yet granted stay unpublished in the outbox, so the backlog waits in Postgres rather
+ * than in broker memory.
+ */
+@Component
+public class PublishThrottle {
+    private static final Logger log = LoggerFactory.getLogger(PublishThrottle.class);
+    private static final double CORRECTION_HORIZON_SECONDS = 5.0;
+    private static final double RAMP_FACTOR = 1.5;
+    // A sample further apart than this (e.g. the first one of a nightly run) says
+    // nothing about the consumer's current rate.
+    private static final int STALE_SAMPLE_INTERVALS = 10;
+
+    private final RabbitTemplate rabbit;
+    private final String queue;
+    private final long targetDepth;
+    private final double minRate;
+    private final double maxRate;
+    private final long sampleNanos;
+
+    private double rate;
+    private double tokens;
+    private long refilledAt;
+    private long sampledAt;
+    private long depth = -1;
+    private long sentSinceSample;
+    private double drainRate;
+    private boolean probeFailing;
+
+    public PublishThrottle(RabbitTemplate rabbit,
+                           MeterRegistry meters,
+                           @Value("${rabbitmq.queue:billing.renewals.main}") String queue,
+                           @Value("${app.publishTargetDepth:0}") long targetDepth,
+                           @Value("${app.publishMinRate:10}") double minRate,
+                           @Value("${app.publishMaxRate:20000}") double maxRate,
+                           @Value("${app.publishDepthSampleMs:1000}") long sampleMs) {
+        if (targetDepth > 0 && (minRate <= 0 || maxRate < minRate || sampleMs <= 0)) {
+            throw new IllegalArgumentException("publish backpressure needs 0 < app.publishMinRate <= app.publishMaxRate"
+                    + " and app.publishDepthSampleMs > 0");
+        }
+        this.rabbit = rabbit;
+        this.queue = queue;
+        this.targetDepth = targetDepth;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.sampleNanos = TimeUnit.MILLISECONDS.toNanos(sampleMs);
+        this.rate = initialRate();
+        long now = System.nanoTime();
+        this.refilledAt = now;
+        this.sampledAt = now - sampleNanos; // the first acquire samples
+        if (enabled()) {
+            Gauge.builder("outbox.publish.rate.limit", this, PublishThrottle::rate)
+                    .description("Current publish rate granted by the backpressure token bucket (msg/s)")
+                    .register(meters);
+            Gauge.builder("outbox.publish.drain.rate", this, PublishThrottle::drainRate)
+                    .description("Consumer drain rate estimated from queue depth samples (msg/s)")
+                    .register(meters);
+            Gauge.builder("outbox.publish.queue.depth", this, PublishThrottle::depth)
+                    .description("Ready messages in the watched queue at the last sample; -1 before the first")
+                    .tag("queue", queue)
+                    .register(meters);
+            Gauge.builder("outbox.publish.target.depth", () -> targetDepth)
+                    .description("Queue depth the publish rate is steered toward")
+                    .register(meters);
+            Gauge.builder("outbox.publish.rate.min", () -> minRate)
+                    .description("Lower bound of the publish rate (msg/s)")
+                    .register(meters);
+            Gauge.builder("outbox.publish.rate.max", () -> maxRate)
+                    .description("Upper bound of the publish rate (msg/s)")
+                    .register(meters);
+        }
+    }
+
+    public boolean enabled() {
+        return targetDepth > 0;
+    }
+
+    /**
+     * Blocks until at least one token is available and takes up to {@code max};
+     * returns how many were granted, or {@code max} when backpressure is off.
+     */
+    public int acquire(int max) {
+        if (!enabled()) {
+            return max;
+        }
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (now - sampledAt >= sampleNanos) {
+                    sample(now);
+                }
+                refill(now);
+                if (tokens >= 1) {
+                    int granted = (int) Math.min(max, Math.floor(tokens));
+                    tokens -= granted;
+                    sentSinceSample += granted;
+                    return granted;
+                }
+                waitNanos = (long) ((1 - tokens) / rate * 1e9);
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, sampleNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted awaiting publish tokens", e);
+            }
+        }
+    }
+
+    /** Returns tokens granted by {@link #acquire} that did not become a message. */
+    public synchronized void release(int unused) {
+        if (!enabled() || unused <= 0) {
+            return;
+        }
+        tokens = Math.min(capacity(), tokens + unused);
+        sentSinceSample -= unused;
+    }
+
+    synchronized double rate() {
+        return rate;
+    }
+
+    synchronized double drainRate() {
+        return drainRate;
+    }
+
+    synchronized long depth() {
+        return depth;
+    }
+
+    private void sample(long now) {
+        Long observed = readyMessages();
+        if (observed == null) {
+            sampledAt = now; // keep the current rate until the queue answers again
+            return;
+        }
+        if (depth >= 0 && now - sampledAt < STALE_SAMPLE_INTERVALS * sampleNanos) {
+            double seconds = (now - sampledAt) / 1e9;
+            drainRate = Math.max(0, (depth - observed + sentSinceSample) / seconds);
+        } else {
+            drainRate = 0;
+            rate = initialRate();
+        }
+        depth = observed;
+        sentSinceSample = 0;
+        sampledAt = now;
+
+        double corrected = drainRate + (targetDepth - depth) / CORRECTION_HORIZON_SECONDS;
+        double next = depth < targetDepth ? Math.max(corrected, rate * RAMP_FACTOR) : corrected;
+        rate = Math.max(minRate, Math.min(maxRate, next));
+        log.debug("Queue {} depth {} (target {}), drain {}/s, publish rate now {}/s",
+                queue, depth, targetDepth, Math.round(drainRate), Math.round(rate));
+    }
+
+    private Long readyMessages() {
+        try {
+            Long ready = rabbit.execute(channel -> (long) channel.queueDeclarePassive(queue).getMessageCount());
+            if (probeFailing) {
+                log.info("Queue {} depth readable again; publish backpressure resumes", queue);
+                probeFailing = false;
+            }
+            return ready;
+        } catch (AmqpException e) {
+            if (!probeFailing) {
+                log.warn("Cannot read depth of queue {}; publish rate held at {}/s until it can be read",
+                        queue, Math.round(rate), e);
+                probeFailing = true;
+            }
+            return null;
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity(), tokens + (now - refilledAt) / 1e9 * rate);
+        refilledAt = now;
+    }
+
+    // One sample interval's worth of tokens: bursts stay within what a sample can correct.
+    private double capacity() {
+        return Math.max(1, rate * sampleNanos / 1e9);
+    }
+
+    private double initialRate() {
+        return Math.max(minRate, Math.min(maxRate, targetDepth / CORRECTION_HORIZON_SECONDS));
+    }
+}
@@ -1,41 +1,59 @@
 package com.blanchaert.billing.producer.job;
 
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.*;
 import java.util.*;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 @Configuration
 @EnableBatchProcessing
 public class RenewalJobConfig {
     private static final Logger log = LoggerFactory.getLogger(RenewalJobConfig.class);
-    private static final String SCAN_CURSOR_KEY = "scanStep.cursor";
-    private static final String SCAN_WINDOW_KEY = "scanStep.window";
-    private static final String NIL_UUID = "00000000-0000-0000-0000-000000000000";
+    static final String SCAN_CURSOR_KEY = "scanStep.cursor";
+    static final String SCAN_UPPER_KEY = "scanStep.upper";
+    static final String SCAN_WINDOW_KEY = "scanStep.window";
+    static final String SCAN_TABLE_KEY = "scanStep.table";
+    static final String SCAN_LEASE_RANGES_KEY = "scanStep.leaseRanges";
+    static final String NIL_UUID = "00000000-0000-0000-0000-000000000000";
+    static final String MAX_UUID = "ffffffff-ffff-ffff-ffff-ffffffffffff";
+    // Ordered exactly like idx_renewal_outbox_claim (V5, rekeyed by V12), so a page is an
+    // index range scan that stops after LIMIT rows; ORDER BY id had to sort the whole
+    // backlog per page. Since V8 that is a merge of per-partition index scans; a fully
+    // published partition's slice of the partial index is empty. Rows staged ahead of
+    // their not_before sit past the range's upper end and are never read. due_date comes
+    // back so the mark can prune to the row's partition.
+    public static final String OUTBOX_CLAIM_SQL = """
+            SELECT id, due_date, payload
+            FROM renewal_outbox
+            WHERE published_at IS NULL
+              AND not_before <= now()
+            ORDER BY not_before, id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
 
     @Bean
     public ThreadPoolTaskExecutor renewalJobTaskExecutor() {
@@ -51,6 +69,34 @@ public class RenewalJobConfig {
         return executor;
     }
 
+    @Bean
+    public ThreadPoolTaskExecutor scanPartitionExecutor(@Value("${app.scanPartitions:1}") int scanPartitions) {
+        // One thread per scan partition; unused (never started a thread) at the default of 1.
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, scanPartitions));
+        executor.setMaxPoolSize(Math.max(1, scanPartitions));
+        executor.setThreadNamePrefix("renewal-scan-");
+        return executor;
+    }
+
+    @Bean
+    public AdaptivePageSize scanPageSizing(MeterRegistry meters,
+                                           @Value("${app.scanPageSize:10000}") int scanPageSize,
+                                           @Value("${app.scanPageMin:1000}") int min,
+                                           @Value("${app.scanPageMax:50000}") int max,
+                                           @Value("${app.scanPageTargetMs:0}") long targetMs) {
+        return new AdaptivePageSize("scanStep", meters, scanPageSize, min, max, targetMs);
+    }
+
+    @Bean
+    public AdaptivePageSize publishPageSizing(MeterRegistry meters,
+                                              @Value("${app.publishPageSize:10000}") int publishPageSize,
+                                              @Value("${app.publishPageMin:500}") int min,
+                                              @Value("${app.publishPageMax:50000}") int max,
+                                              @Value("${app.publishPageTargetMs:0}") long targetMs) {
+        return new AdaptivePageSize("publishStep", meters, publishPageSize, min, max, targetMs);
+    }
+
     @Bean
     public JobLauncher asyncJobLauncher(JobRepository repo,
                                         @Qualifier("renewalJobTaskExecutor") ThreadPoolTaskExecutor executor) throws Exception {
@@ -68,223 +114,267 @@ public class RenewalJobConfig {
     @Bean
     public Job renewalJob(
             JobRepository repo,
+            @Qualifier("outboxPartitionStep") Step outboxPartitionStep,
             @Qualifier("scanStep") Step scanStep,
-            @Qualifier("publishStep") Step publishStep
+            @Qualifier("publishStep") Step publishStep,
+            @Qualifier("publishTailStep") Step publishTailStep,
+            @Value("${app.jobFlow:sequential}") String jobFlow,
+            @Value("${app.publishMode:page}") String publishMode
     ) {
-        return new JobBuilder("renewalJob", repo)
-                .start(scanStep)
-                .next(publishStep)
-                .build();
+        switch (jobFlow) {
+            case "sequential" -> {
+                return new JobBuilder("renewalJob", repo)
+                        .start(outboxPartitionStep)
+                        .next(scanStep)
+                        .next(publishStep)
+                        .build();
+            }
+            case "pipelined" -> {
+                if (publishMode.equals("relay")) {
+                    throw new IllegalArgumentException(
+                            "app.jobFlow=pipelined would race OutboxRelay; use it with publishMode page");
+                }
+                // scanStep and publishTailStep run side by side on a split; the job ends only
+                // when both flows have, and a failure in either fails the job, so a restart
+                // re-runs the unfinished half (the scan from its cursor, the tail from the
+                // still-unpublished rows).
+                Flow scanFlow = new FlowBuilder<SimpleFlow>("scanFlow").start(scanStep).build();
+                Flow tailFlow = new FlowBuilder<SimpleFlow>("publishTailFlow").start(publishTailStep).build();
+                Flow scanAndPublish = new FlowBuilder<SimpleFlow>("scanAndPublish")
+                        .split(new SimpleAsyncTaskExecutor("renewal-pipeline-"))
+                        .add(scanFlow, tailFlow)
+                        .build();
+                return new JobBuilder("renewalJob", repo)
+                        .start(new FlowBuilder<SimpleFlow>("renewalFlow")
+                                .start(outboxPartitionStep)
+                                .next(scanAndPublish)
+                                .build())
+                        .end()
+                        .build();
+            }
+            default -> throw new IllegalArgumentException(
+                    "app.jobFlow must be 'sequential' or 'pipelined', was '" + jobFlow + "'");
+        }
+    }
+
+    @Bean
+    public Step outboxPartitionStep(JobRepository repo,
+                                    PlatformTransactionManager tx,
+                                    OutboxPartitions partitions,
+                                    CatchUpWindows windows) {
+        return new StepBuilder("outboxPartitionStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // Before the scan, so tonight's due date has its own partition; retention
+                    // runs here too because the nightly job is already serialized across
+                    // instances by the scheduler's advisory lock. A catch-up window's past days
+                    // and a look-ahead window's far days get their partitions too (normally
+                    // created ahead by earlier runs).
+                    LocalDate today = LocalDate.now(windows.zone());
+                    ScanWindow window = windows.forRun(
+                            chunkContext.getStepContext().getStepExecution().getJobParameters());
+                    partitions.ensure(window.start(), window.end());
+                    int ready = partitions.createAhead(today);
+                    int dropped = partitions.dropExpired(today);
+                    log.info("Outbox partitions: {} daily partitions ready from {}, {} expired dropped",
+                            ready, today, dropped);
+                    return RepeatStatus.FINISHED;
+                }, tx).build();
     }
 
     @Bean
     public Step scanStep(JobRepository repo,
                          PlatformTransactionManager tx,
                          JdbcTemplate jdbc,
-                         MeterRegistry meters,
-                         @Value("${app.timezone:Europe/Brussels}") String tz,
-                         @Value("${app.scanPageSize:10000}") int scanPageSize) {
-        Counter insertedCounter = Counter.builder("outbox.inserted")
-                .description("Outbox rows inserted by scanStep")
-                .register(meters);
-        return new StepBuilder("scanStep", repo)
+                         ScanPages pages,
+                         ScanLeases leases,
+                         CatchUpWindows windows,
+                         SubscriptionPartitioning partitioning,
+                         @Qualifier("scanPageSizing") AdaptivePageSize pageSizing,
+                         @Qualifier("scanPartitionExecutor") ThreadPoolTaskExecutor scanPartitionExecutor,
+                         @Value("${app.scanPartitions:1}") int scanPartitions,
+                         @Value("${app.scanDistribution:local}") String scanDistribution,
+                         @Value("${app.scanLeasePollMs:1000}") long leasePollMs) {
+        boolean leased = switch (scanDistribution) {
+            case "local" -> false;
+            case "lease" -> true;
+            default -> throw new IllegalArgumentException(
+                    "app.scanDistribution must be 'local' or 'lease', was '" + scanDistribution + "'");
+        };
+        boolean partitioned = scanPartitions > 1;
+        if (leased && partitioned) {
+            throw new IllegalArgumentException(
+                    "app.scanDistribution=lease splits the scan itself; scale it with app.scanLeaseWorkers, not app.scanPartitions");
+        }
+        if (leased) {
+            return new StepBuilder("scanStep", repo)
+                    .tasklet((contribution, chunkContext) -> {
+                        // Lease-distributed scan: this step only seeds the run's keyspace ranges
+                        // into scan_lease (V11) and waits for them. ScanLeaseWorker threads on
+                        // every producer instance, this one included, claim the ranges and scan
+                        // them page by page. The ranges belong to the job instance, so a restart
+                        // finds them where the failed run left them and keeps their window.
+                        var stepExecution = chunkContext.getStepContext().getStepExecution();
+                        long run = stepExecution.getJobExecution().getJobInstance().getInstanceId();
+                        ScanWindow window = pinnedWindow(stepExecution, windows);
+                        ExecutionContext stepCtx = stepExecution.getExecutionContext();
+                        if (!stepCtx.containsKey(SCAN_LEASE_RANGES_KEY)) {
+                            stepCtx.putInt(SCAN_LEASE_RANGES_KEY, leases.seed(run, window));
+                        }
+                        long open = leases.open(run);
+                        if (open == 0) {
+                            log.info("Leased scan of run {} complete: all {} ranges scanned",
+                                    run, stepCtx.getInt(SCAN_LEASE_RANGES_KEY));
+                            return RepeatStatus.FINISHED;
+                        }
+                        log.debug("Leased scan of run {}: {} ranges open", run, open);
+                        // Waits once the seed, or this check, has committed.
+                        PollPause.request(chunkContext, leasePollMs);
+                        return RepeatStatus.CONTINUABLE;
+                    }, tx)
+                    .listener(new PollPause())
+                    .build();
+        }
+        Step scanPages = new StepBuilder(partitioned ? "scanStep.partition" : "scanStep", repo)
                 .tasklet((contribution, chunkContext) -> {
                     // Keyset-paginated scan: each iteration handles one PK-ordered page of active
-                    // subscriptions in its own transaction and re-runs via RepeatStatus.CONTINUABLE.
-                    // The scan deliberately reads every active subscription (10M at target scale) to
-                    // find the due ~330k: the due predicate (renewed_at + plan interval, localized to
-                    // a configurable timezone) is cross-table and non-IMMUTABLE, so Postgres cannot
-                    // carry it in an expression index, and a PK-ordered pass is sequential-friendly
-                    // I/O with no extra write amplification (D10). The due-window filter sits INSIDE
-                    // the page, so the page query reports its row count and last id no matter how
-                    // many rows were due — all-not-due pages still advance the cursor, and the loop
-                    // ends on a short page, never on inserted == 0. The cursor and the due window
-                    // (fixed on the first page so a scan crossing midnight keeps one consistent
-                    // window) live in the step ExecutionContext, which Spring Batch persists in the
-                    // same transaction as the page's inserts: a crash resumes from the last
-                    // committed page, and ON CONFLICT DO NOTHING absorbs the one re-scanned page.
-                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
-                    ZoneId zone = ZoneId.of(tz);
-                    String windowDate = stepCtx.getString(SCAN_WINDOW_KEY, null);
-                    LocalDate today = windowDate == null ? LocalDate.now(zone) : LocalDate.parse(windowDate);
-                    if (windowDate == null) {
-                        stepCtx.putString(SCAN_WINDOW_KEY, today.toString());
-                    }
-                    LocalDateTime start = today.atStartOfDay();
-                    LocalDateTime end = today.plusDays(1).atStartOfDay();
+                    // subscriptions (ScanPages) in its own transaction and re-runs via
+                    // RepeatStatus.CONTINUABLE. The cursor and the due window (fixed on the first
+                    // page so a scan crossing midnight keeps one consistent window) live in the
+                    // step ExecutionContext, which Spring Batch persists in the same transaction
+                    // as the page's inserts: a crash resumes from the last committed page, and
+                    // ON CONFLICT DO NOTHING absorbs the one re-scanned page. The window is today
+                    // unless the run carries a catch-up window (ScanWindow). The page size is
+                    // the controller's (AdaptivePageSize), kept in the same context.
+                    var stepExecution = chunkContext.getStepContext().getStepExecution();
+                    ExecutionContext stepCtx = stepExecution.getExecutionContext();
+                    ScanWindow window = pinnedWindow(stepExecution, windows);
                     UUID cursor = UUID.fromString(stepCtx.getString(SCAN_CURSOR_KEY, NIL_UUID));
+                    // Inclusive upper bound of this scan's keyspace range (whole keyspace unless partitioned).
+                    UUID upper = UUID.fromString(stepCtx.getString(SCAN_UPPER_KEY, MAX_UUID));
+                    // One hash partition of subscription (V14) when the partitioner assigned one.
+                    String table = stepCtx.getString(SCAN_TABLE_KEY, ScanPages.TABLE);
 
-                    String sql = """
-                            WITH page AS (
-                                SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
-                                FROM subscription s
-                                WHERE s.status = 'active'
-                                  AND s.renewed_at IS NOT NULL
-                                  AND s.id > ?
-                                ORDER BY s.id
-                                LIMIT ?
-                            ), due AS (
-                                SELECT p.id AS subscription_id, p.customer_id, p.plan_id,
-                                    pl.interval, pl.price_cents, pl.currency,
-                                    (CASE WHEN pl.interval = 'year'
-                                        THEN (p.renewed_at + INTERVAL '1 year')
-                                        ELSE (p.renewed_at + INTERVAL '1 month')
-                                        END) AS due_ts
-                                FROM page p
-                                JOIN plan pl ON pl.id = p.plan_id
-                            ), win AS (
-                                SELECT *, due_ts AT TIME ZONE ? AS due_local
-                                FROM due
-                            ), events AS (
-                                SELECT *, gen_random_uuid() AS event_id,
-                                    (due_local)::date AS due_date
-                                FROM win
-                                WHERE due_local >= ? AND due_local < ?
-                            ), ins AS (
-                                INSERT INTO renewal_outbox (id, subscription_id, due_date, payload)
-                                SELECT event_id,
-                                    subscription_id,
-                                    due_date,
-                                jsonb_build_object(
-                                    'schema_version', 1,
-                                    'event_id', event_id,
-                                    'subscription_id', subscription_id,
-                                    'customer_id', customer_id,
-                                    'plan_id', plan_id,
-                                    'interval', interval,
-                                    'amount_cents', price_cents,
-                                    'currency', currency,
-                                    'idempotency_key', 'sub-' || subscription_id || '|' || to_char(due_date, 'YYYY-MM-DD'),
-                                    'due_date', to_char(due_date, 'YYYY-MM-DD'),
-                                    'period_start', to_char(due_date, 'YYYY-MM-DD'),
-                                    'period_end', to_char(
-                                        (CASE
-                                            WHEN interval = 'month' THEN due_date + INTERVAL '1 month'
-                                            WHEN interval = 'year' THEN due_date + INTERVAL '1 year'
-                                        END)::date,
-                                        'YYYY-MM-DD'
-                                    ),
-                                    'occurred_at', to_char(
-                                        now() AT TIME ZONE 'UTC',
-                                        'YYYY-MM-DD"T"HH24:MI:SS.MS"Z"'
-                                    )
-                                ) AS payload
-                                FROM events
-                                ON CONFLICT (subscription_id, due_date) DO NOTHING
-                                RETURNING 1
-                            )
-                            SELECT count(*) AS page_rows,
-                                   (SELECT id FROM page ORDER BY id DESC LIMIT 1) AS last_id,
-                                   (SELECT count(*) FROM ins) AS inserted
-                            FROM page
-                            """;
-
-                    record ScanPage(long pageRows, UUID lastId, long inserted) {
-                    }
-                    ScanPage page = jdbc.query(con -> {
-                        var ps = con.prepareStatement(sql);
-                        ps.setObject(1, cursor);
-                        ps.setInt(2, scanPageSize);
-                        ps.setString(3, zone.getId());
-                        ps.setObject(4, start);
-                        ps.setObject(5, end);
-                        return ps;
-                    }, rs -> {
-                        rs.next();
-                        return new ScanPage(
-                                rs.getLong("page_rows"),
-                                (UUID) rs.getObject("last_id"),
-                                rs.getLong("inserted")
-                        );
-                    });
-
-                    insertedCounter.increment(page.inserted());
-                    log.info("Scan page: {} active subscriptions examined, {} outbox rows inserted",
-                            page.pageRows(), page.inserted());
-                    if (page.pageRows() < scanPageSize) {
+                    int pageSize = pageSizing.size(stepCtx);
+                    ScanPages.Page page = pages.scan(table, cursor, upper, window, pageSize);
+                    if (page.last()) {
                         return RepeatStatus.FINISHED;
                     }
+                    pageSizing.record(chunkContext, pageSize, page.rows(), page.startedNanos());
                     stepCtx.putString(SCAN_CURSOR_KEY, page.lastId().toString());
                     return RepeatStatus.CONTINUABLE;
-                }, tx).build();
+                }, tx)
+                .listener(pageSizing)
+                .build();
+        if (!partitioned) {
+            return scanPages;
+        }
+        // Partitioned scan: the same keyset loop per UUID range, or per hash partition of
+        // subscription, concurrently, each with its cursor in its own partition
+        // ExecutionContext. The partitioner pins one due window for all of them; a restart
+        // reuses the partition contexts, so every range resumes from its last committed
+        // page and keeps the original window.
+        ScanPartitioner partitioner = new ScanPartitioner(jdbc, windows, partitioning);
+        return new StepBuilder("scanStep", repo)
+                .partitioner("scanStep.partition", partitioner)
+                .listener(partitioner)
+                .step(scanPages)
+                .gridSize(scanPartitions)
+                .taskExecutor(scanPartitionExecutor)
+                .build();
+    }
+
+    // The step's due window, pinned in its context on first use.
+    private static ScanWindow pinnedWindow(StepExecution stepExecution, CatchUpWindows windows) {
+        ExecutionContext stepCtx = stepExecution.getExecutionContext();
+        String pinned = stepCtx.getString(SCAN_WINDOW_KEY, null);
+        if (pinned != null) {
+            return ScanWindow.parse(pinned);
+        }
+        ScanWindow window = windows.forRun(stepExecution.getJobParameters());
+        stepCtx.putString(SCAN_WINDOW_KEY, window.toString());
+        return window;
     }
 
     @Bean
     public Step publishStep(JobRepository repo,
                             PlatformTransactionManager tx,
-                            JdbcTemplate jdbc,
-                            OutboxPublisher publisher,
-                            MeterRegistry meters,
-                            @Value("${app.publishPageSize:10000}") int publishPageSize,
-                            @Value("${app.confirmTimeoutMs:10000}") long confirmTimeoutMs) {
-        Counter publishedCounter = Counter.builder("outbox.published")
-                .description("Outbox rows confirmed published")
-                .register(meters);
+                            OutboxPages pages,
+                            @Qualifier("publishPageSizing") AdaptivePageSize pageSizing,
+                            @Value("${app.publishMode:page}") String publishMode,
+                            @Value("${app.lookAheadDays:0}") int lookAheadDays) {
+        boolean relay = switch (publishMode) {
+            case "page" -> false;
+            case "relay" -> true;
+            default -> throw new IllegalArgumentException(
+                    "app.publishMode must be 'page' or 'relay', was '" + publishMode + "'");
+        };
+        if (relay && lookAheadDays > 0) {
+            // The relay publishes each row as its insert commits, not_before or not.
+            throw new IllegalArgumentException(
+                    "app.lookAheadDays needs publishMode page; OutboxRelay ignores not_before");
+        }
+        // The relay skip has nothing to commit, so it takes no connection.
+        PlatformTransactionManager stepTx = relay ? new ResourcelessTransactionManager() : tx;
         return new StepBuilder("publishStep", repo)
                 .tasklet((contribution, chunkContext) -> {
-                    // Claim one page of unpublished rows; SKIP LOCKED keeps concurrent publishers disjoint
-                    record OutboxRow(UUID id, String payload) {
-                    }
-                    var rows = jdbc.query(
-                            "SELECT id, payload " +
-                                    "FROM renewal_outbox " +
-                                    "WHERE published_at IS NULL " +
-                                    "ORDER BY id " +
-                                    "LIMIT ? " +
-                                    "FOR UPDATE SKIP LOCKED",
-                            ps -> ps.setInt(1, publishPageSize),
-                            (rs, i) -> new OutboxRow((UUID) rs.getObject("id"), rs.getString("payload"))
-                    );
-
-                    if (rows.isEmpty()) {
-                        log.info("No publishable outbox rows visible (drained, or remainder claimed by a concurrent publisher).");
-                        return RepeatStatus.FINISHED; // stop the step
-                    }
-
-                    var futures = new LinkedHashMap<UUID, CompletableFuture<Boolean>>(rows.size());
-                    for (var row : rows) {
-                        futures.put(row.id(), publisher.publish(row.id().toString(), row.payload()));
+                    if (relay) {
+                        // OutboxRelay publishes each scan page as it commits; a claim pass
+                        // here would only race it for the same rows.
+                        log.info("publishMode=relay: rows are published by OutboxRelay; publishStep skipped");
+                        return RepeatStatus.FINISHED;
                     }
-
-                    long deadline = System.nanoTime() + confirmTimeoutMs * 1_000_000L;
-                    var confirmedIds = new ArrayList<UUID>(rows.size());
-                    for (var entry : futures.entrySet()) {
-                        long remaining = Math.max(deadline - System.nanoTime(), 0L);
-                        try {
-                            if (entry.getValue().get(remaining, TimeUnit.NANOSECONDS)) {
-                                confirmedIds.add(entry.getKey());
-                            }
-                        } catch (TimeoutException | ExecutionException | CancellationException ignored) {
-                            // Leave the row unpublished so the next page or job run re-picks it.
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            throw new IllegalStateException("interrupted awaiting publisher confirms", e);
-                        }
+                    // Stop-and-wait: one page per step transaction, the row locks spanning
+                    // the confirm await; an empty page ends the step.
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    int pageSize = pageSizing.size(stepCtx);
+                    OutboxPages.Page page = pages.publishPage(pageSize);
+                    if (page.claimed() == 0) {
+                        return RepeatStatus.FINISHED;
                     }
+                    pageSizing.record(chunkContext, pageSize, page.claimed(), page.startedNanos());
+                    return RepeatStatus.CONTINUABLE; // ask Batch to run this tasklet again (new tx), next page
+                }, stepTx)
+                .listener(pageSizing)
+                .build();
+    }
 
-                    if (confirmedIds.isEmpty()) {
+    @Bean
+    public Step publishTailStep(JobRepository repo,
+                                PlatformTransactionManager tx,
+                                OutboxPages pages,
+                                @Qualifier("publishPageSizing") AdaptivePageSize pageSizing,
+                                @Value("${app.pipelinePollMs:500}") long pollMs) {
+        return new StepBuilder("publishTailStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // Pipelined flow only: publishes scan pages as they commit. The scan's
+                    // state is read BEFORE claiming, so an empty page after a completed scan
+                    // proves nothing is left; the last scanStep execution of this job
+                    // instance counts, so a restart whose scan already completed drains and
+                    // ends instead of waiting for a scan that will not run again.
+                    var jobExecution = chunkContext.getStepContext().getStepExecution().getJobExecution();
+                    StepExecution scan = repo.getLastStepExecution(jobExecution.getJobInstance(), "scanStep");
+                    boolean scanCompleted = scan != null && scan.getStatus() == BatchStatus.COMPLETED;
+                    if (scan != null && scan.getJobExecutionId().equals(jobExecution.getId())
+                            && (scan.getStatus().isUnsuccessful() || scan.getStatus() == BatchStatus.STOPPED)) {
                         throw new IllegalStateException(
-                                "0/" + rows.size() + " rows confirmed within " + confirmTimeoutMs
-                                        + " ms"
-                        );
+                                "scanStep ended " + scan.getStatus() + "; publish tail stops so a restart resumes both");
                     }
-
-                    jdbc.batchUpdate(
-                            "UPDATE renewal_outbox SET published_at = now() WHERE id = ?",
-                            confirmedIds,
-                            confirmedIds.size(),
-                            (ps, id) -> ps.setObject(1, id)
-                    );
-                    publishedCounter.increment(confirmedIds.size());
-
-                    int unconfirmedCount = rows.size() - confirmedIds.size();
-                    if (unconfirmedCount > 0) {
-                        log.warn("{} of {} unconfirmed, rows stay unpublished and will be re-picked.",
-                                unconfirmedCount, rows.size());
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    int pageSize = pageSizing.size(stepCtx);
+                    OutboxPages.Page page = pages.publishPage(pageSize);
+                    if (page.claimed() > 0) {
+                        pageSizing.record(chunkContext, pageSize, page.claimed(), page.startedNanos());
+                        return RepeatStatus.CONTINUABLE;
                     }
-
-                    log.info("Published page count: {}", confirmedIds.size());
-                    return RepeatStatus.CONTINUABLE; // ask Batch to run this tasklet again (new tx), next page
-                }, tx).build();
+                    if (scanCompleted) {
+                        return RepeatStatus.FINISHED;
+                    }
+                    // Waits for the scan's next pages once this empty claim has committed.
+                    PollPause.request(chunkContext, pollMs);
+                    return RepeatStatus.CONTINUABLE;
+                }, tx)
+                .listener(new PollPause())
+                .listener(pageSizing)
+                .build();
     }
 }
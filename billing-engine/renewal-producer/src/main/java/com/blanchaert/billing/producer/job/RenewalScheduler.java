@@ -28,17 +28,20 @@ public class RenewalScheduler {
     private final Job renewalJob;
     private final ZoneId zone;
     private final DataSource dataSource;
+    private final CatchUpWindows windows;
 
     // Explicitly the SYNC launcher (Batch's default "jobLauncher" bean): runDaily()
     // releases the advisory lock when run() returns, so the launch must not outlive
     // the lock. The async launcher (asyncJobLauncher) is endpoint-only — see D9.
     public RenewalScheduler(@Qualifier("jobLauncher") JobLauncher launcher, Job renewalJob,
                             @Value("${app.timezone:Europe/Brussels}") String tz,
-                            DataSource dataSource) {
+                            DataSource dataSource,
+                            CatchUpWindows windows) {
         this.launcher = launcher;
         this.renewalJob = renewalJob;
         this.zone = ZoneId.of(tz);
         this.dataSource = dataSource;
+        this.windows = windows;
     }
 
     // Fire daily at the configured cron (default 03:00 local). Declared in application.yml
@@ -55,8 +58,15 @@ public class RenewalScheduler {
             }
             try {
                 LocalDate d = LocalDate.now(zone);
-                JobParameters params = new JobParametersBuilder()
-                        .addString("scheduleDate", d.toString())
+                // Read under the lock, so the last completed run is final: after missed
+                // nights the window reaches back to the first day nothing covered. It ends
+                // at the horizon: today, or later with look-ahead staging.
+                ScanWindow window = windows.resolve(null, windows.horizon(d));
+                if (window.days() > 1) {
+                    log.info("Renewal job for {} catches up on due dates {}", d, window);
+                }
+                JobParameters params = window.addTo(new JobParametersBuilder()
+                                .addString("scheduleDate", d.toString()))
                         .toJobParameters();
                 launcher.run(renewalJob, params);
             } catch (JobExecutionAlreadyRunningException | JobInstanceAlreadyCompleteException e) {
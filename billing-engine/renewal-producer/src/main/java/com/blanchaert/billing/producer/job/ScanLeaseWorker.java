@@ -0,0 +1,118 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leased-scan worker threads ({@code app.scanDistribution=lease}), on every producer
+ * instance whether or not it runs the job: each thread loops over
+ * {@link ScanLeases#scanPage}, one page per transaction, and polls every
+ * {@code app.scanLeasePollMs} while no range is claimable. Each thread sizes its pages
+ * with the scan's {@link AdaptivePageSize}. A page that fails rolls back
+ * and is retried after the poll interval; if this instance dies instead, its ranges are
+ * claimed by the others once their leases expire.
+ */
+@Component
+@ConditionalOnProperty(name = "app.scanDistribution", havingValue = "lease")
+public class ScanLeaseWorker implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(ScanLeaseWorker.class);
+
+    private final ScanLeases leases;
+    private final AdaptivePageSize pageSizing;
+    private final TransactionTemplate tx;
+    private final int workers;
+    private final long pollMs;
+    // Lease owner prefix: unique per process, readable in scan_lease (HOSTNAME is the
+    // container id under compose).
+    private final String instance;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public ScanLeaseWorker(ScanLeases leases,
+                           PlatformTransactionManager transactionManager,
+                           @Qualifier("scanPageSizing") AdaptivePageSize pageSizing,
+                           @Value("${app.scanLeaseWorkers:1}") int workers,
+                           @Value("${app.scanLeasePollMs:1000}") long pollMs,
+                           @Value("${HOSTNAME:producer}") String hostname) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("app.scanLeaseWorkers must be at least 1, was " + workers);
+        }
+        this.leases = leases;
+        this.pageSizing = pageSizing;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.workers = workers;
+        this.pollMs = pollMs;
+        this.instance = hostname + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            String owner = instance + "#" + i;
+            Thread thread = new Thread(() -> run(owner), "scan-lease-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        log.info("Leased scan: {} worker threads as {}", workers, instance);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run(String owner) {
+        int pageSize = pageSizing.initial();
+        while (running) {
+            ScanPages.Page page;
+            try {
+                int size = pageSize;
+                page = tx.execute(status -> leases.scanPage(owner, size));
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Leased scan page failed for {}; retrying in {} ms", owner, pollMs, e);
+                page = null;
+            }
+            if (page != null) {
+                pageSize = pageSizing.next(pageSize, page.rows(), System.nanoTime() - page.startedNanos());
+            } else {
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
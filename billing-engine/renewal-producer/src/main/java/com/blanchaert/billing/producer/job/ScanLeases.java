@@ -0,0 +1,161 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The lease table behind {@code app.scanDistribution=lease} ({@code scan_lease}, V11).
+ * The job's scanStep {@link #seed seeds} one row per keyspace range of its run; any
+ * producer instance then {@link #scanPage scans a page} of a range it holds or can
+ * claim. A claim is a lease for {@code app.scanLeaseTtlMs}, renewed by every page the
+ * holder scans; a range whose holder stopped renewing (a crashed or partitioned-off
+ * instance) is claimable by anyone once the lease has expired, and resumes from the
+ * cursor its last committed page left.
+ */
+@Component
+public class ScanLeases {
+    private static final Logger log = LoggerFactory.getLogger(ScanLeases.class);
+
+    private final JdbcTemplate jdbc;
+    private final ScanPages pages;
+    private final int ranges;
+    private final long ttlMs;
+    private final Counter claimedCounter;
+    private final Counter reclaimedCounter;
+
+    public ScanLeases(JdbcTemplate jdbc,
+                      ScanPages pages,
+                      MeterRegistry meters,
+                      @Value("${app.scanLeaseRanges:64}") int ranges,
+                      @Value("${app.scanLeaseTtlMs:30000}") long ttlMs) {
+        if (ranges < 1 || ttlMs <= 0) {
+            throw new IllegalArgumentException("scan leases need app.scanLeaseRanges >= 1 and app.scanLeaseTtlMs > 0");
+        }
+        this.jdbc = jdbc;
+        this.pages = pages;
+        this.ranges = ranges;
+        this.ttlMs = ttlMs;
+        this.claimedCounter = Counter.builder("scan.lease.claimed")
+                .description("Scan ranges claimed by this instance, fresh or expired")
+                .register(meters);
+        this.reclaimedCounter = Counter.builder("scan.lease.reclaimed")
+                .description("Scan ranges claimed by this instance after another holder's lease expired")
+                .register(meters);
+    }
+
+    /**
+     * Splits the keyspace of run {@code run} into ranges with the scan partitioner's
+     * sampled cuts, once: a run that already has ranges (a restart) keeps them and
+     * their cursors. Ranges of earlier, fully scanned runs are dropped. Returns the
+     * run's range count.
+     */
+    public int seed(long run, ScanWindow window) {
+        jdbc.update("""
+                DELETE FROM scan_lease l
+                WHERE l.job_instance_id <> ?
+                  AND NOT EXISTS (SELECT 1 FROM scan_lease o
+                                  WHERE o.job_instance_id = l.job_instance_id AND o.completed_at IS NULL)
+                """, run);
+        Integer existing = jdbc.queryForObject(
+                "SELECT count(*) FROM scan_lease WHERE job_instance_id = ?", Integer.class, run);
+        if (existing != null && existing > 0) {
+            log.info("Leased scan of run {} resumes its {} ranges", run, existing);
+            return existing;
+        }
+        List<UUID> cuts = ScanPartitioner.sampledCuts(jdbc, ranges);
+        List<Object[]> rows = new ArrayList<>(cuts.size() + 1);
+        for (int i = 0; i <= cuts.size(); i++) {
+            rows.add(new Object[]{
+                    run, i,
+                    i == 0 ? UUID.fromString(RenewalJobConfig.NIL_UUID) : cuts.get(i - 1),
+                    i == cuts.size() ? UUID.fromString(RenewalJobConfig.MAX_UUID) : cuts.get(i),
+                    window.start(), window.end()
+            });
+        }
+        jdbc.batchUpdate("""
+                INSERT INTO scan_lease (job_instance_id, range_no, cursor_id, upper_id, window_start, window_end)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """, rows);
+        log.info("Leased scan of run {} seeded {} ranges for due dates {}", run, rows.size(), window);
+        return rows.size();
+    }
+
+    /** Ranges of run {@code run} not yet scanned to their end. */
+    public long open(long run) {
+        Long open = jdbc.queryForObject(
+                "SELECT count(*) FROM scan_lease WHERE job_instance_id = ? AND completed_at IS NULL",
+                Long.class, run);
+        return open == null ? 0 : open;
+    }
+
+    /**
+     * Scans one page of a range leased to {@code owner}: the range it already holds if
+     * it still has one, else an unleased or expired one. Runs in the caller's
+     * transaction, which keeps the range's row locked while the page runs (peers skip
+     * it) and commits the renewed lease and the moved cursor together with the page's
+     * outbox inserts. Returns the page, or null when no range was claimable.
+     */
+    public ScanPages.Page scanPage(String owner, int pageSize) {
+        record Lease(long run, int range, UUID cursor, UUID upper, ScanWindow window, String previousOwner) {
+        }
+        List<Lease> claimed = jdbc.query("""
+                WITH next AS (
+                    SELECT job_instance_id, range_no, owner AS previous_owner
+                    FROM scan_lease
+                    WHERE completed_at IS NULL
+                      AND (owner = ? OR owner IS NULL OR lease_until < now())
+                    ORDER BY owner IS NOT DISTINCT FROM ? DESC, job_instance_id, range_no
+                    LIMIT 1
+                    FOR UPDATE SKIP LOCKED
+                )
+                UPDATE scan_lease l
+                SET owner = ?, lease_until = now() + make_interval(secs => ?)
+                FROM next
+                WHERE l.job_instance_id = next.job_instance_id AND l.range_no = next.range_no
+                RETURNING l.job_instance_id, l.range_no, l.cursor_id, l.upper_id,
+                          l.window_start, l.window_end, next.previous_owner
+                """, (rs, i) -> new Lease(
+                rs.getLong("job_instance_id"),
+                rs.getInt("range_no"),
+                (UUID) rs.getObject("cursor_id"),
+                (UUID) rs.getObject("upper_id"),
+                new ScanWindow(rs.getObject("window_start", LocalDate.class),
+                        rs.getObject("window_end", LocalDate.class)),
+                rs.getString("previous_owner")
+        ), owner, owner, owner, ttlMs / 1000.0);
+        if (claimed.isEmpty()) {
+            return null;
+        }
+        Lease lease = claimed.get(0);
+        if (!owner.equals(lease.previousOwner())) {
+            claimedCounter.increment();
+            if (lease.previousOwner() != null) {
+                reclaimedCounter.increment();
+                log.warn("Scan range {}/{} reclaimed from {} after its lease expired; resuming after {}",
+                        lease.run(), lease.range(), lease.previousOwner(), lease.cursor());
+            }
+        }
+
+        ScanPages.Page page = pages.scan(lease.cursor(), lease.upper(), lease.window(), pageSize);
+        jdbc.update("""
+                UPDATE scan_lease
+                SET cursor_id = coalesce(?, cursor_id),
+                    completed_at = CASE WHEN ? THEN now() END
+                WHERE job_instance_id = ? AND range_no = ?
+                """, page.lastId(), page.last(), lease.run(), lease.range());
+        if (page.last()) {
+            log.info("Scan range {}/{} complete ({})", lease.run(), lease.range(), owner);
+        }
+        return page;
+    }
+}
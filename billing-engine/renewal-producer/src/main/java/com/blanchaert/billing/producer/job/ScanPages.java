@@ -0,0 +1,243 @@
+package com.blanchaert.billing.producer.job;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * One keyset page of the renewal scan: reads up to a page size of active
+ * subscriptions after a cursor, in id order, and inserts an outbox row for each one
+ * whose due date falls in the scan window. Runs in the caller's transaction, so the
+ * caller commits its cursor together with the page's inserts. Shared by every scan
+ * shape: the single-range step, the partitioned step's ranges and the leased ranges.
+ * <p>
+ * In "full" mode the page reads every active subscription (10M at target scale) to
+ * find the due ~330k in a sequential-friendly PK-ordered pass (D10); every column the
+ * page reads is in idx_subscription_scan_covering (V13), so pages over all-visible heap
+ * blocks are index-only (D28). In "due-index"
+ * mode it reads only rows whose trigger-maintained next_due_local_date (V6) falls in
+ * the window, walking idx_subscription_next_due one window day at a time and merging
+ * the days in the same id order (D17); the
+ * in-page due filter still recomputes the date with V6's function, so a stale stored
+ * value can hide a row but never emit a wrong one. "full" mode keeps the scan's
+ * original due-date formula. The due filter sits INSIDE the page, so the page
+ * reports its row count and last id no matter how many rows were due: all-not-due
+ * pages still advance the cursor, and a scan ends on a short page, never on
+ * {@code inserted == 0}. Each row lands on its own due date, so a catch-up or
+ * look-ahead {@link ScanWindow} is still one pass. A page reads {@code subscription}, or
+ * one of its hash partitions (V14) directly when the partitioned scan assigns one. A row
+ * due after today is staged: its {@code not_before} is the due day's start, offset per
+ * subscription within {@code app.releaseSpreadMinutes}, and {@link OutboxReleaser}
+ * publishes it from then.
+ */
+@Component
+public class ScanPages {
+    private static final Logger log = LoggerFactory.getLogger(ScanPages.class);
+    public static final String TABLE = "subscription";
+    // Names come from partition contexts, i.e. from the catalog (SubscriptionPartitioning).
+    private static final Pattern TABLE_NAME = Pattern.compile("subscription(_p\\d+)?");
+    // The page in "full" mode: the next active rows in id order.
+    private static final String FULL_PAGE = """
+                SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
+                FROM {table} s
+                WHERE s.status = 'active'
+                  AND s.renewed_at IS NOT NULL
+                  AND s.id > ?
+                  AND s.id <= ?
+                ORDER BY s.id
+                LIMIT ?
+            """;
+    // The page in "due-index" mode, one window day at a time. A range on
+    // next_due_local_date, even BETWEEN d AND d, leaves the index unable to return id
+    // order, and the planner walks the primary key filtering on the date instead. An
+    // equality per day keeps each day an ordered index range; the page is the first
+    // rows of their union, at most days × page size rows to sort.
+    private static final String DUE_INDEX_PAGE = """
+                SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
+                FROM generate_series(?::date, ?::date, INTERVAL '1 day') AS d(day)
+                CROSS JOIN LATERAL (
+                    SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
+                    FROM {table} s
+                    WHERE s.status = 'active'
+                      AND s.renewed_at IS NOT NULL
+                      AND s.next_due_local_date = d.day::date
+                      AND s.id > ?
+                      AND s.id <= ?
+                    ORDER BY s.id
+                    LIMIT ?
+                ) s
+                ORDER BY s.id
+                LIMIT ?
+            """;
+    // The due date in "full" mode, as the scan has always computed it: the interval added
+    // to renewed_at, then converted to the billing zone. The month arithmetic happens in
+    // the session TimeZone, so outside the billing zone it can be a day off near local
+    // midnight at month ends; it is kept so the default mode's due dates do not move.
+    private static final String FULL_DUE = """
+            ((CASE WHEN pl.interval = 'year'
+                        THEN p.renewed_at + INTERVAL '1 year'
+                        ELSE p.renewed_at + INTERVAL '1 month'
+                        END) AT TIME ZONE ?)::date""";
+    // The due date in "due-index" mode: V6's function, which also writes the stored
+    // column, so the in-page guard agrees with the index in every session.
+    private static final String DUE_INDEX_DUE = "renewal_due_local_date(p.renewed_at, pl.interval, ?)";
+    // Spliced with replace(), not formatted: the statement has a literal % of its own.
+    private static final String PAGE_SQL = """
+            WITH page AS (
+            {page}), due AS (
+                SELECT p.id AS subscription_id, p.customer_id, p.plan_id,
+                    pl.interval, pl.price_cents, pl.currency,
+                    {due} AS due_date
+                FROM page p
+                JOIN plan pl ON pl.id = p.plan_id
+            ), events AS (
+                SELECT *, uuidv7() AS event_id
+                FROM due
+                WHERE due_date BETWEEN ? AND ?
+            ), ins AS (
+                INSERT INTO renewal_outbox (id, subscription_id, due_date, not_before, payload)
+                SELECT event_id,
+                    subscription_id,
+                    due_date,
+                -- Releasable from the due day's local midnight plus the row's spread offset
+                -- (look-ahead staging, V12), or now once that time has passed
+                greatest(now(), (due_date::timestamp AT TIME ZONE ?)
+                    + make_interval(secs => (hashtext(subscription_id::text)::bigint & 2147483647) % ?)),
+                -- Stored as the wire bytes (V10): rendered and encoded once here
+                convert_to(jsonb_build_object(
+                    'schema_version', 1,
+                    'event_id', event_id,
+                    'subscription_id', subscription_id,
+                    'customer_id', customer_id,
+                    'plan_id', plan_id,
+                    'interval', interval,
+                    'amount_cents', price_cents,
+                    'currency', currency,
+                    'idempotency_key', 'sub-' || subscription_id || '|' || to_char(due_date, 'YYYY-MM-DD'),
+                    'due_date', to_char(due_date, 'YYYY-MM-DD'),
+                    'period_start', to_char(due_date, 'YYYY-MM-DD'),
+                    'period_end', to_char(
+                        (CASE
+                            WHEN interval = 'month' THEN due_date + INTERVAL '1 month'
+                            WHEN interval = 'year' THEN due_date + INTERVAL '1 year'
+                        END)::date,
+                        'YYYY-MM-DD'
+                    ),
+                    'occurred_at', to_char(
+                        now() AT TIME ZONE 'UTC',
+                        'YYYY-MM-DD"T"HH24:MI:SS.MS"Z"'
+                    )
+                )::text, 'UTF8') AS payload
+                FROM events
+                ON CONFLICT (subscription_id, due_date) DO NOTHING
+                RETURNING 1
+            )
+            SELECT count(*) AS page_rows,
+                   (SELECT id FROM page ORDER BY id DESC LIMIT 1) AS last_id,
+                   (SELECT count(*) FROM ins) AS inserted
+            FROM page
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final ZoneId zone;
+    private final boolean dueIndex;
+    private final long spreadSeconds;
+    // Page statement per table read: subscription, or one of its partitions.
+    private final Map<String, String> sqlByTable = new ConcurrentHashMap<>();
+    private final Counter insertedCounter;
+
+    public ScanPages(JdbcTemplate jdbc,
+                     MeterRegistry meters,
+                     @Value("${app.timezone:Europe/Brussels}") String tz,
+                     @Value("${app.scanSource:full}") String scanSource,
+                     @Value("${app.lookAheadDays:0}") int lookAheadDays,
+                     @Value("${app.releaseSpreadMinutes:0}") int releaseSpreadMinutes) {
+        this.dueIndex = switch (scanSource) {
+            case "full" -> false;
+            case "due-index" -> true;
+            default -> throw new IllegalArgumentException(
+                    "app.scanSource must be 'full' or 'due-index', was '" + scanSource + "'");
+        };
+        if (releaseSpreadMinutes < 0 || releaseSpreadMinutes > 1440 || (releaseSpreadMinutes > 0 && lookAheadDays == 0)) {
+            // Without look-ahead, a spread would hold back rows due today that nothing
+            // releases later.
+            throw new IllegalArgumentException("app.releaseSpreadMinutes must be 0..1440, and 0 unless"
+                    + " app.lookAheadDays > 0; was " + releaseSpreadMinutes);
+        }
+        this.jdbc = jdbc;
+        this.zone = ZoneId.of(tz);
+        // Modulus of the spread offset; 1 makes every offset 0.
+        this.spreadSeconds = Math.max(1, releaseSpreadMinutes * 60L);
+        this.insertedCounter = Counter.builder("outbox.inserted")
+                .description("Outbox rows inserted by scanStep")
+                .register(meters);
+    }
+
+    /**
+     * The outcome of one page; {@code lastId} is null on an empty page. A page shorter
+     * than the page size was the last one of its range. {@code startedNanos} is the
+     * {@link System#nanoTime} at which the page statement started: the page-size
+     * controller measures from there to the caller's commit.
+     */
+    public record Page(long rows, UUID lastId, long inserted, boolean last, long startedNanos) {
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /** Scans up to {@code pageSize} rows after {@code cursor} (exclusive), up to {@code upper} (inclusive). */
+    public Page scan(UUID cursor, UUID upper, ScanWindow window, int pageSize) {
+        return scan(TABLE, cursor, upper, window, pageSize);
+    }
+
+    /** {@link #scan(UUID, UUID, ScanWindow, int)} over {@code table}: subscription or one of its partitions. */
+    public Page scan(String table, UUID cursor, UUID upper, ScanWindow window, int pageSize) {
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("not subscription or one of its partitions: " + table);
+        }
+        String sql = sqlByTable.computeIfAbsent(table, t ->
+                PAGE_SQL.replace("{page}", dueIndex ? DUE_INDEX_PAGE : FULL_PAGE)
+                        .replace("{due}", dueIndex ? DUE_INDEX_DUE : FULL_DUE)
+                        .replace("{table}", t));
+        long started = System.nanoTime();
+        Page page = jdbc.query(con -> {
+            var ps = con.prepareStatement(sql);
+            int i = 1;
+            if (dueIndex) {
+                ps.setObject(i++, window.start());
+                ps.setObject(i++, window.end());
+            }
+            ps.setObject(i++, cursor);
+            ps.setObject(i++, upper);
+            ps.setInt(i++, pageSize);
+            if (dueIndex) {
+                ps.setInt(i++, pageSize);
+            }
+            ps.setString(i++, zone.getId());
+            ps.setObject(i++, window.start());
+            ps.setObject(i++, window.end());
+            ps.setString(i++, zone.getId());
+            ps.setLong(i, spreadSeconds);
+            return ps;
+        }, rs -> {
+            rs.next();
+            long rows = rs.getLong("page_rows");
+            return new Page(rows, (UUID) rs.getObject("last_id"), rs.getLong("inserted"), rows < pageSize, started);
+        });
+        insertedCounter.increment(page.inserted());
+        log.info("Scan page: {} active subscriptions examined, {} outbox rows inserted",
+                page.rows(), page.inserted());
+        return page;
+    }
+}
@@ -0,0 +1,123 @@
+package com.blanchaert.billing.producer.job;
+
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Splits the subscription keyspace into {@code gridSize} contiguous ranges holding
+ * roughly equal numbers of active subscriptions. Cuts come from a block sample of
+ * active ids; an even split on the high 64 bits is the fallback when the table has no
+ * statistics or the sample is too small. Each partition's context starts its keyset
+ * cursor at the range's exclusive lower bound and carries the inclusive upper bound;
+ * all partitions share the due window fixed here, once, for the whole step: today, or
+ * the run's catch-up {@link ScanWindow}, read from the job parameters in
+ * {@link #beforeStep}.
+ * <p>
+ * Once {@code subscription} is hash-partitioned (V14), the step gets one partition per
+ * table partition instead, whatever {@code gridSize}: each scans its own table over the
+ * whole keyspace, and the partition executor's {@code app.scanPartitions} threads take
+ * them in turn. Hash partitions hold near-equal row counts, so no cuts are sampled.
+ */
+class ScanPartitioner implements Partitioner, StepExecutionListener {
+    private static final BigInteger KEYSPACE = BigInteger.ONE.shiftLeft(64);
+    private static final int SAMPLE_ROWS = 10_000;
+
+    private final JdbcTemplate jdbc;
+    private final CatchUpWindows windows;
+    private final SubscriptionPartitioning partitioning;
+    // Set by beforeStep from the manager step's job parameters, just before partition().
+    private volatile JobParameters parameters = new JobParameters();
+
+    ScanPartitioner(JdbcTemplate jdbc, CatchUpWindows windows, SubscriptionPartitioning partitioning) {
+        this.jdbc = jdbc;
+        this.windows = windows;
+        this.partitioning = partitioning;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        parameters = stepExecution.getJobParameters();
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        String window = windows.forRun(parameters).toString();
+        List<String> tables = partitioning.partitions();
+        if (!tables.isEmpty()) {
+            Map<String, ExecutionContext> partitions = new LinkedHashMap<>(tables.size());
+            for (int i = 0; i < tables.size(); i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putString(RenewalJobConfig.SCAN_WINDOW_KEY, window);
+                context.putString(RenewalJobConfig.SCAN_TABLE_KEY, tables.get(i));
+                partitions.put("partition" + i, context);
+            }
+            return partitions;
+        }
+        List<UUID> cuts = sampledCuts(jdbc, gridSize);
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>(gridSize);
+        for (int i = 0; i < gridSize; i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putString(RenewalJobConfig.SCAN_WINDOW_KEY, window);
+            context.putString(RenewalJobConfig.SCAN_CURSOR_KEY,
+                    i == 0 ? RenewalJobConfig.NIL_UUID : cuts.get(i - 1).toString());
+            context.putString(RenewalJobConfig.SCAN_UPPER_KEY,
+                    i == gridSize - 1 ? RenewalJobConfig.MAX_UUID : cuts.get(i).toString());
+            partitions.put("partition" + i, context);
+        }
+        return partitions;
+    }
+
+    // uuidv7 ids (V7) all share a timestamp prefix, so an even keyspace split would put
+    // every new subscription in one range; cutting at sampled id quantiles follows the
+    // ids actually present, v4 and v7 alike. Also cuts the leased scan's ranges (ScanLeases).
+    static List<UUID> sampledCuts(JdbcTemplate jdbc, int gridSize) {
+        // Summed over the leaves: a partitioned subscription (V14) keeps no estimate of its own.
+        Double rows = jdbc.queryForObject("""
+                SELECT sum(c.reltuples)::float8
+                FROM pg_partition_tree('subscription') t
+                JOIN pg_class c ON c.oid = t.relid
+                WHERE t.isleaf AND c.reltuples > 0
+                """, Double.class);
+        if (rows == null || rows <= 0) {
+            return keyspaceCuts(gridSize);
+        }
+        double percent = Math.min(100.0, SAMPLE_ROWS * 100.0 / rows);
+        // Last sampled id of each ntile bucket; the final bucket's is not a cut.
+        List<UUID> bucketEnds = jdbc.queryForList("""
+                SELECT DISTINCT ON (bucket) id
+                FROM (
+                    SELECT id, ntile(?) OVER (ORDER BY id) AS bucket
+                    FROM subscription TABLESAMPLE SYSTEM (CAST(? AS real))
+                    WHERE status = 'active'
+                ) sample
+                ORDER BY bucket, id DESC
+                """, UUID.class, gridSize, percent);
+        if (bucketEnds.size() < gridSize) {
+            return keyspaceCuts(gridSize);
+        }
+        return bucketEnds.subList(0, gridSize - 1);
+    }
+
+    // Postgres orders uuid by unsigned bytes, so ranges are cut on the unsigned high long.
+    private static List<UUID> keyspaceCuts(int gridSize) {
+        List<UUID> cuts = new ArrayList<>(gridSize - 1);
+        for (int i = 1; i < gridSize; i++) {
+            long high = KEYSPACE.multiply(BigInteger.valueOf(i))
+                    .divide(BigInteger.valueOf(gridSize))
+                    .longValue();
+            cuts.add(new UUID(high, 0L));
+        }
+        return cuts;
+    }
+}
@@ -0,0 +1,70 @@
+package com.blanchaert.billing.producer.job;
+
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+
+import java.time.LocalDate;
+
+/**
+ * The inclusive range of local due dates one scan emits renewals for. A nightly run's
+ * window is the single day it runs on; a catch-up window also covers the days a missed
+ * run would have, a look-ahead window days still to come, and the scan assigns each
+ * due row to its own due date in the same keyset pass. Travels as the non-identifying job parameters {@code windowStart} and
+ * {@code windowEnd}, so {@code scheduleDate} alone still names the job instance.
+ */
+public record ScanWindow(LocalDate start, LocalDate end) {
+    public static final String START_PARAM = "windowStart";
+    public static final String END_PARAM = "windowEnd";
+
+    public ScanWindow {
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("scan window starts after it ends: " + start + ".." + end);
+        }
+    }
+
+    public static ScanWindow day(LocalDate day) {
+        return new ScanWindow(day, day);
+    }
+
+    /**
+     * The window a run's parameters ask for; a launch without them (the startup runner,
+     * older callers) scans {@code today} through {@code horizon}. A window may not end
+     * after {@code horizon}: today, unless look-ahead staging lets the scan emit future
+     * renewals, which then wait in the outbox until their {@code not_before} (V12).
+     */
+    public static ScanWindow of(JobParameters params, LocalDate today, LocalDate horizon) {
+        String start = params.getString(START_PARAM);
+        String end = params.getString(END_PARAM);
+        LocalDate endDate = end == null ? horizon : LocalDate.parse(end);
+        LocalDate startDate = start != null ? LocalDate.parse(start) : end == null ? today : endDate;
+        ScanWindow window = new ScanWindow(startDate, endDate);
+        if (window.end().isAfter(horizon)) {
+            throw new IllegalArgumentException("scan window " + window + " ends after " + horizon);
+        }
+        return window;
+    }
+
+    /** Reads a window pinned in a step context; a bare date is a one-day window. */
+    public static ScanWindow parse(String value) {
+        int slash = value.indexOf('/');
+        return slash < 0
+                ? day(LocalDate.parse(value))
+                : new ScanWindow(LocalDate.parse(value.substring(0, slash)), LocalDate.parse(value.substring(slash + 1)));
+    }
+
+    public JobParametersBuilder addTo(JobParametersBuilder builder) {
+        return builder
+                .addString(START_PARAM, start.toString(), false)
+                .addString(END_PARAM, end.toString(), false);
+    }
+
+    public long days() {
+        return end.toEpochDay() - start.toEpochDay() + 1;
+    }
+
+    /** ISO-8601 interval form, {@code start/end}; what {@link #parse} reads back. */
+    @Override
+    public String toString() {
+        return start + "/" + end;
+    }
+}
@@ -0,0 +1,228 @@
+package com.blanchaert.billing.producer.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.UUID;
+
+/**
+ * subscriptionPartitionJob: stages 2 and 3 of moving {@code subscription} to hash
+ * partitions (V14, R42), while every service keeps reading and writing it. Endpoint-only,
+ * like dueIndexRebuildJob. Each step first checks that {@code subscription_hashed} is still
+ * there, so a run after the swap does nothing.
+ * <ol>
+ *   <li>backfill: copies rows into the mirrored copy in PK-ordered pages;</li>
+ *   <li>verify: compares the copy with subscription page by page and fails the job on any
+ *       difference, before anything is swapped;</li>
+ *   <li>swap: {@code subscription_partition_swap()}, retried while its locks time out;</li>
+ *   <li>validate: validates the re-pointed foreign keys without blocking writes.</li>
+ * </ol>
+ */
+@Configuration
+public class SubscriptionPartitionJobConfig {
+    private static final Logger log = LoggerFactory.getLogger(SubscriptionPartitionJobConfig.class);
+    static final String BACKFILL_CURSOR_KEY = "subscriptionBackfillStep.cursor";
+    static final String VERIFY_CURSOR_KEY = "subscriptionVerifyStep.cursor";
+    static final String SWAP_ATTEMPTS_KEY = "subscriptionSwapStep.attempts";
+    private static final String PENDING_SQL = "SELECT to_regclass('subscription_hashed') IS NOT NULL";
+
+    private record CopyPage(long pageRows, UUID lastId, long changed) {
+    }
+
+    @Bean
+    public Job subscriptionPartitionJob(JobRepository repo,
+                                        @Qualifier("subscriptionBackfillStep") Step backfillStep,
+                                        @Qualifier("subscriptionVerifyStep") Step verifyStep,
+                                        @Qualifier("subscriptionSwapStep") Step swapStep,
+                                        @Qualifier("subscriptionValidateStep") Step validateStep) {
+        return new JobBuilder("subscriptionPartitionJob", repo)
+                .start(backfillStep)
+                .next(verifyStep)
+                .next(swapStep)
+                .next(validateStep)
+                .build();
+    }
+
+    @Bean
+    public Step subscriptionBackfillStep(JobRepository repo,
+                                         PlatformTransactionManager tx,
+                                         JdbcTemplate jdbc,
+                                         @Value("${app.scanPageSize:10000}") int pageSize) {
+        return new StepBuilder("subscriptionBackfillStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // One PK-ordered page per transaction, cursor in the step context like the
+                    // scan's. ON CONFLICT DO NOTHING leaves rows the mirror trigger already
+                    // wrote, which are as new or newer. FOR KEY SHARE holds off a concurrent
+                    // delete of a page row until the copy commits; the delete's mirror then
+                    // removes the copy too. Updates are not blocked.
+                    if (!swapPending(jdbc)) {
+                        log.info("subscription is already partitioned; nothing to backfill");
+                        return RepeatStatus.FINISHED;
+                    }
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    UUID cursor = UUID.fromString(stepCtx.getString(BACKFILL_CURSOR_KEY, RenewalJobConfig.NIL_UUID));
+                    CopyPage page = jdbc.queryForObject("""
+                            WITH page AS (
+                                SELECT s.*
+                                FROM subscription s
+                                WHERE s.id > ?
+                                ORDER BY s.id
+                                LIMIT ?
+                                FOR KEY SHARE
+                            ), copied AS (
+                                INSERT INTO subscription_hashed
+                                SELECT * FROM page
+                                ON CONFLICT (id) DO NOTHING
+                                RETURNING 1
+                            )
+                            SELECT count(*) AS page_rows,
+                                   (SELECT id FROM page ORDER BY id DESC LIMIT 1) AS last_id,
+                                   (SELECT count(*) FROM copied) AS copied
+                            FROM page
+                            """, (rs, i) -> new CopyPage(
+                            rs.getLong("page_rows"), (UUID) rs.getObject("last_id"), rs.getLong("copied")),
+                            cursor, pageSize);
+                    contribution.incrementWriteCount(page.changed());
+                    log.info("Subscription backfill page: {} rows read, {} copied", page.pageRows(), page.changed());
+                    if (page.pageRows() < pageSize) {
+                        return RepeatStatus.FINISHED;
+                    }
+                    stepCtx.putString(BACKFILL_CURSOR_KEY, page.lastId().toString());
+                    return RepeatStatus.CONTINUABLE;
+                }, tx).build();
+    }
+
+    @Bean
+    public Step subscriptionVerifyStep(JobRepository repo,
+                                       PlatformTransactionManager tx,
+                                       JdbcTemplate jdbc,
+                                       @Value("${app.scanPageSize:10000}") int pageSize) {
+        return new StepBuilder("subscriptionVerifyStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // Each page compares one id range of both tables within a single statement
+                    // snapshot: every row of subscription must have an identical copy, and the
+                    // copy may hold no other row in the range. Writes committed since are
+                    // mirrored in their own transactions, so a verified range stays equal.
+                    // A difference means writes bypassed the mirror. Nothing is repaired here,
+                    // because no copy from outside the writer's transaction is race-free.
+                    // Truncate subscription_hashed and run the job again.
+                    if (!swapPending(jdbc)) {
+                        return RepeatStatus.FINISHED;
+                    }
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    UUID cursor = UUID.fromString(stepCtx.getString(VERIFY_CURSOR_KEY, RenewalJobConfig.NIL_UUID));
+                    record VerifyPage(long pageRows, UUID lastId, long differing, long copies) {
+                    }
+                    VerifyPage page = jdbc.queryForObject("""
+                            WITH page AS (
+                                SELECT s.*
+                                FROM subscription s
+                                WHERE s.id > ?
+                                ORDER BY s.id
+                                LIMIT ?
+                            ), last AS (
+                                SELECT id FROM page ORDER BY id DESC LIMIT 1
+                            )
+                            SELECT (SELECT count(*) FROM page) AS page_rows,
+                                   (SELECT id FROM last) AS last_id,
+                                   (SELECT count(*) FROM page p
+                                    WHERE NOT EXISTS (SELECT 1 FROM subscription_hashed h
+                                                      WHERE h.id = p.id
+                                                        AND ROW(h.*) IS NOT DISTINCT FROM ROW(p.*))) AS differing,
+                                   -- The last, short page's range is open-ended.
+                                   (SELECT count(*) FROM subscription_hashed h
+                                    WHERE h.id > ?
+                                      AND (h.id <= (SELECT id FROM last) OR (SELECT count(*) FROM page) < ?)) AS copies
+                            """, (rs, i) -> new VerifyPage(rs.getLong("page_rows"), (UUID) rs.getObject("last_id"),
+                                    rs.getLong("differing"), rs.getLong("copies")),
+                            cursor, pageSize, cursor, pageSize);
+                    if (page.differing() > 0 || page.copies() != page.pageRows()) {
+                        throw new IllegalStateException("subscription_hashed differs from subscription after id "
+                                + cursor + ": " + page.differing() + " of " + page.pageRows()
+                                + " rows missing or different, " + page.copies() + " copies in the range");
+                    }
+                    if (page.pageRows() < pageSize) {
+                        log.info("Subscription copy verified");
+                        return RepeatStatus.FINISHED;
+                    }
+                    stepCtx.putString(VERIFY_CURSOR_KEY, page.lastId().toString());
+                    return RepeatStatus.CONTINUABLE;
+                }, tx).build();
+    }
+
+    @Bean
+    public Step subscriptionSwapStep(JobRepository repo,
+                                     PlatformTransactionManager tx,
+                                     JdbcTemplate jdbc,
+                                     @Value("${app.partitionSwapLockTimeoutMs:2000}") int lockTimeoutMs,
+                                     @Value("${app.partitionSwapAttempts:30}") int attempts) {
+        return new StepBuilder("subscriptionSwapStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // The swap waits at most lockTimeoutMs for its locks, so sessions arriving
+                    // meanwhile queue behind it for no longer than that. Between attempts the
+                    // function has changed nothing, and the transaction commits only the count.
+                    if (!swapPending(jdbc)) {
+                        return RepeatStatus.FINISHED;
+                    }
+                    ExecutionContext stepCtx = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+                    int attempt = stepCtx.getInt(SWAP_ATTEMPTS_KEY, 0) + 1;
+                    Boolean swapped = jdbc.queryForObject(
+                            "SELECT subscription_partition_swap(?)", Boolean.class, lockTimeoutMs);
+                    if (Boolean.TRUE.equals(swapped)) {
+                        log.info("subscription swapped for its hash-partitioned copy (attempt {}); "
+                                + "the old table is kept as subscription_unpartitioned", attempt);
+                        return RepeatStatus.FINISHED;
+                    }
+                    if (attempt >= attempts) {
+                        throw new IllegalStateException("subscription swap locks not granted within "
+                                + lockTimeoutMs + " ms in " + attempts + " attempts");
+                    }
+                    log.warn("subscription swap locks not granted within {} ms (attempt {} of {}); retrying",
+                            lockTimeoutMs, attempt, attempts);
+                    stepCtx.putInt(SWAP_ATTEMPTS_KEY, attempt);
+                    Thread.sleep(lockTimeoutMs);
+                    return RepeatStatus.CONTINUABLE;
+                }, tx).build();
+    }
+
+    @Bean
+    public Step subscriptionValidateStep(JobRepository repo,
+                                         PlatformTransactionManager tx,
+                                         JdbcTemplate jdbc) {
+        return new StepBuilder("subscriptionValidateStep", repo)
+                .tasklet((contribution, chunkContext) -> {
+                    // VALIDATE scans the referencing table under SHARE UPDATE EXCLUSIVE, which
+                    // blocks neither reads nor writes; already valid constraints are skipped.
+                    for (String[] fk : new String[][]{
+                            {"charge", "charge_subscription_id_fkey"},
+                            {"renewal_outbox", "renewal_outbox_subscription_id_fkey"}}) {
+                        Boolean valid = jdbc.queryForObject("""
+                                SELECT convalidated FROM pg_constraint
+                                WHERE conrelid = ?::regclass AND conname = ?
+                                """, Boolean.class, fk[0], fk[1]);
+                        if (!Boolean.TRUE.equals(valid)) {
+                            jdbc.execute("ALTER TABLE " + fk[0] + " VALIDATE CONSTRAINT " + fk[1]);
+                            log.info("Validated {}", fk[1]);
+                        }
+                    }
+                    return RepeatStatus.FINISHED;
+                }, tx).build();
+    }
+
+    private static boolean swapPending(JdbcTemplate jdbc) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(PENDING_SQL, Boolean.class));
+    }
+}
@@ -0,0 +1,58 @@
+package com.blanchaert.billing.producer.job;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Where the move of {@code subscription} to hash partitions (V14) stands, read from
+ * the catalog: before the swap, {@code subscription_hashed} exists beside the plain
+ * table and mirrors its writes; after it, {@code subscription} itself is partitioned.
+ */
+@Component
+public class SubscriptionPartitioning {
+    private final JdbcTemplate jdbc;
+
+    public SubscriptionPartitioning(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public record Report(boolean partitioned, List<String> partitions, boolean swapPending,
+                         long estimatedRows, long estimatedCopiedRows) {
+    }
+
+    /** The leaf partitions of {@code subscription} in name order; empty while it is one table. */
+    public List<String> partitions() {
+        return leaves("subscription");
+    }
+
+    public Report report() {
+        boolean swapPending = Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT to_regclass('subscription_hashed') IS NOT NULL", Boolean.class));
+        List<String> partitions = partitions();
+        return new Report(!partitions.isEmpty(), partitions, swapPending,
+                estimatedRows("subscription"), swapPending ? estimatedRows("subscription_hashed") : 0);
+    }
+
+    private List<String> leaves(String table) {
+        return jdbc.queryForList("""
+                SELECT c.relname
+                FROM pg_partition_tree(?::regclass) t
+                JOIN pg_class c ON c.oid = t.relid
+                WHERE t.isleaf AND t.level > 0
+                ORDER BY c.relname
+                """, String.class, table);
+    }
+
+    // Planner estimates summed over the leaves: a partitioned parent keeps none of its own.
+    private long estimatedRows(String table) {
+        Long rows = jdbc.queryForObject("""
+                SELECT coalesce(sum(greatest(c.reltuples, 0)), 0)::bigint
+                FROM pg_partition_tree(?::regclass) t
+                JOIN pg_class c ON c.oid = t.relid
+                WHERE t.isleaf
+                """, Long.class, table);
+        return rows == null ? 0 : rows;
+    }
+}
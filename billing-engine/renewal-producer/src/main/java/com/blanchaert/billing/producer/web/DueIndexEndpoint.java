@@ -0,0 +1,64 @@
+package com.blanchaert.billing.producer.web;
+
+import com.blanchaert.billing.producer.job.DueIndexChecker;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@Component
+@Endpoint(id = "due-index")
+public class DueIndexEndpoint {
+    private final JobLauncher launcher;
+    private final Job rebuildJob;
+    private final DueIndexChecker checker;
+
+    // Same endpoint-only asyncJobLauncher as renewal-job: the rebuild is a full keyset
+    // pass, so the POST returns the execution id and status is polled through
+    // GET /actuator/renewal-job/{executionId}.
+    public DueIndexEndpoint(@Qualifier("asyncJobLauncher") JobLauncher launcher,
+                            @Qualifier("dueIndexRebuildJob") Job rebuildJob,
+                            DueIndexChecker checker) {
+        this.launcher = launcher;
+        this.rebuildJob = rebuildJob;
+        this.checker = checker;
+    }
+
+    /**
+     * GET /actuator/due-index — drift between the stored and computed due dates.
+     */
+    @ReadOperation
+    public Map<String, Object> check() {
+        DueIndexChecker.Report report = checker.check();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("consistent", report.consistent());
+        body.put("activeRows", report.activeRows());
+        body.put("staleRows", report.staleRows());
+        body.put("settingsTimezone", report.settingsTimezone());
+        body.put("appTimezone", report.appTimezone());
+        return body;
+    }
+
+    /**
+     * POST /actuator/due-index — launches dueIndexRebuildJob and returns immediately.
+     */
+    @WriteOperation
+    public Map<String, Object> rebuild() throws Exception {
+        var exec = launcher.run(rebuildJob, new JobParametersBuilder()
+                .addString("run.id", UUID.randomUUID().toString())
+                .toJobParameters());
+        return Map.of(
+                "job", exec.getJobInstance().getJobName(),
+                "status", exec.getStatus().toString(),
+                "executionId", exec.getId()
+        );
+    }
+}
@@ -1,5 +1,7 @@
 package com.blanchaert.billing.producer.web;
 
+import com.blanchaert.billing.producer.job.CatchUpWindows;
+import com.blanchaert.billing.producer.job.ScanWindow;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
@@ -13,6 +15,7 @@ import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
 import org.springframework.boot.actuate.endpoint.annotation.Selector;
 import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
@@ -27,6 +30,7 @@ public class RenewalJobEndpoint {
     private final JobLauncher launcher;
     private final JobExplorer explorer;
     private final Job renewalJob;
+    private final CatchUpWindows windows;
     private final ZoneId zone;
 
     // Launches via the endpoint-only asyncJobLauncher so the POST returns as soon as
@@ -34,11 +38,12 @@ public class RenewalJobEndpoint {
     // synchronous default launcher because its advisory lock must span the whole run
     // (see D9 in docs/decisions.md).
     public RenewalJobEndpoint(@Qualifier("asyncJobLauncher") JobLauncher launcher,
-                              JobExplorer explorer, Job renewalJob,
+                              JobExplorer explorer, Job renewalJob, CatchUpWindows windows,
                               @Value("${app.timezone:Europe/Brussels}") String tz) {
         this.launcher = launcher;
         this.explorer = explorer;
         this.renewalJob = renewalJob;
+        this.windows = windows;
         this.zone = ZoneId.of(tz);
     }
 
@@ -46,12 +51,21 @@ public class RenewalJobEndpoint {
      * POST /actuator/renewal-job — returns immediately with the execution id.
      * Poll status via GET /actuator/renewal-job/{executionId}.
      * @param force if true, add a random run.id so you can re-run same-day
+     * @param windowStart first due date to scan (ISO date); defaults to the day after the
+     *                    last completed run's window, as the scheduler does
+     * @param windowEnd last due date to scan (ISO date, not after today plus
+     *                  app.lookAheadDays); defaults to that horizon
      */
     @WriteOperation
-    public Map<String, Object> trigger(Boolean force) throws Exception {
+    public Map<String, Object> trigger(Boolean force,
+                                       @Nullable String windowStart,
+                                       @Nullable String windowEnd) throws Exception {
         LocalDate d = LocalDate.now(zone);
-        JobParametersBuilder b = new JobParametersBuilder()
-                .addString("scheduleDate", d.toString());
+        ScanWindow window = windows.resolve(
+                windowStart == null ? null : LocalDate.parse(windowStart),
+                windowEnd == null ? null : LocalDate.parse(windowEnd));
+        JobParametersBuilder b = window.addTo(new JobParametersBuilder()
+                .addString("scheduleDate", d.toString()));
         if (Boolean.TRUE.equals(force)) {
             b.addString("run.id", UUID.randomUUID().toString());
         }
@@ -63,6 +77,7 @@ public class RenewalJobEndpoint {
                 "instanceId", exec.getJobInstance().getInstanceId(),
                 "status", exec.getStatus().toString(),
                 "parameters", djpc.getProperties(params),
+                "window", Map.of("start", window.start().toString(), "end", window.end().toString()),
                 "executionId", exec.getId()
         );
     }
@@ -85,6 +100,11 @@ public class RenewalJobEndpoint {
         body.put("exitStatus", execution.getExitStatus().getExitCode());
         body.put("startTime", execution.getStartTime());
         body.put("endTime", execution.getEndTime());
+        String windowStart = execution.getJobParameters().getString(ScanWindow.START_PARAM);
+        if (windowStart != null) {
+            body.put("window", Map.of("start", windowStart,
+                    "end", execution.getJobParameters().getString(ScanWindow.END_PARAM)));
+        }
         return body;
     }
 }
@@ -0,0 +1,65 @@
+package com.blanchaert.billing.producer.web;
+
+import com.blanchaert.billing.producer.job.SubscriptionPartitioning;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+@Component
+@Endpoint(id = "subscription-partition")
+public class SubscriptionPartitionEndpoint {
+    private final JobLauncher launcher;
+    private final Job partitionJob;
+    private final SubscriptionPartitioning partitioning;
+
+    // Endpoint-only like due-index: the backfill is a full keyset pass, so the POST
+    // returns the execution id and status is polled through GET /actuator/renewal-job/{executionId}.
+    public SubscriptionPartitionEndpoint(@Qualifier("asyncJobLauncher") JobLauncher launcher,
+                                         @Qualifier("subscriptionPartitionJob") Job partitionJob,
+                                         SubscriptionPartitioning partitioning) {
+        this.launcher = launcher;
+        this.partitionJob = partitionJob;
+        this.partitioning = partitioning;
+    }
+
+    /**
+     * GET /actuator/subscription-partition — whether subscription is partitioned yet, and
+     * how far the copy has got by planner estimate.
+     */
+    @ReadOperation
+    public Map<String, Object> status() {
+        SubscriptionPartitioning.Report report = partitioning.report();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("partitioned", report.partitioned());
+        body.put("partitions", report.partitions());
+        body.put("swapPending", report.swapPending());
+        body.put("estimatedRows", report.estimatedRows());
+        body.put("estimatedCopiedRows", report.estimatedCopiedRows());
+        return body;
+    }
+
+    /**
+     * POST /actuator/subscription-partition — launches subscriptionPartitionJob (backfill,
+     * verify, swap, validate) and returns immediately.
+     */
+    @WriteOperation
+    public Map<String, Object> migrate() throws Exception {
+        var exec = launcher.run(partitionJob, new JobParametersBuilder()
+                .addString("run.id", UUID.randomUUID().toString())
+                .toJobParameters());
+        return Map.of(
+                "job", exec.getJobInstance().getJobName(),
+                "status", exec.getStatus().toString(),
+                "executionId", exec.getId()
+        );
+    }
+}
@@ -0,0 +1,106 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanPageSize=1",
+        "app.scanPageMin=1",
+        "app.scanPageMax=64",
+        "app.scanPageTargetMs=2000",
+        "app.publishPageSize=1",
+        "app.publishPageMin=1",
+        "app.publishPageMax=32",
+        "app.publishPageTargetMs=2000"
+})
+@Testcontainers
+class AdaptivePageSizeTest {
+    private static final int DUE_ROWS = 120;
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void pagesFasterThanTheTargetGrowToTheMaximumAndTheSizeIsKeptInTheStepContext() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        UUID customerId = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('page-size-probe@example.test') RETURNING id", UUID.class);
+        jdbc.update("INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                        + "SELECT ?, ?, 'active', now() - INTERVAL '1 month' FROM generate_series(1, ?)",
+                customerId, planId, DUE_ROWS);
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        var run = jobLauncher.run(renewalJob, new JobParametersBuilder()
+                .addString("scheduleDate", "2026-01-01")
+                .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                .toJobParameters());
+
+        assertThat(run.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        // Millisecond pages against a 2 s target: each page doubles the next one, up to the bound.
+        assertThat(step(run.getStepExecutions(), "scanStep").getExecutionContext().getInt("scanStep.pageSize"))
+                .isEqualTo(64);
+        assertThat(step(run.getStepExecutions(), "publishStep").getExecutionContext().getInt("publishStep.pageSize"))
+                .isEqualTo(32);
+        assertThat(registry.get("renewal.page.size").tag("step", "publishStep").gauge().value()).isEqualTo(32.0);
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE published_at IS NOT NULL AND subscription_id IN "
+                        + "(SELECT id FROM subscription WHERE customer_id = ?)", Long.class, customerId))
+                .isEqualTo(DUE_ROWS);
+    }
+
+    private static StepExecution step(Iterable<StepExecution> steps, String name) {
+        for (StepExecution step : steps) {
+            if (step.getStepName().equals(name)) {
+                return step;
+            }
+        }
+        throw new AssertionError("no step execution " + name);
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
@@ -65,18 +66,18 @@ class AsyncTriggerEndpointTest {
         );
         jdbc.update(
                 "INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"async-trigger\"}'::jsonb)",
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"async-trigger\"}', 'UTF8'))",
                 OUTBOX_ROW_ID, subscriptionId
         );
 
         var publishCalled = new CountDownLatch(1);
         var confirmGate = new CompletableFuture<Boolean>();
-        when(publisher.publish(anyString(), anyString())).thenAnswer(invocation -> {
+        when(publisher.publish(anyString(), any(byte[].class))).thenAnswer(invocation -> {
             publishCalled.countDown();
             return confirmGate;
         });
 
-        Map<String, Object> response = endpoint.trigger(true);
+        Map<String, Object> response = endpoint.trigger(true, null, null);
 
         // trigger() returned while the confirm future still gates the publish
         // step — the job cannot have finished. That, not timing, proves async.
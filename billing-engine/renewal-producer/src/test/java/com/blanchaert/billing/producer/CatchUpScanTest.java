@@ -0,0 +1,131 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.CatchUpWindows;
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.ScanWindow;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanPageSize=2"
+})
+@Testcontainers
+class CatchUpScanTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000d00");
+    // Days relative to today that each subscription's renewed_at is shifted by, so its
+    // due date lands around the catch-up window: before it, inside it, and after it.
+    private static final Map<UUID, Integer> SHIFT_DAYS = Map.of(
+            UUID.fromString("00000000-0000-0000-0000-000000000d01"), -6,
+            UUID.fromString("00000000-0000-0000-0000-000000000d02"), -2,
+            UUID.fromString("00000000-0000-0000-0000-000000000d03"), -1,
+            UUID.fromString("00000000-0000-0000-0000-000000000d04"), 0,
+            UUID.fromString("00000000-0000-0000-0000-000000000d05"), 1
+    );
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private CatchUpWindows windows;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void oneScanAfterMissedNightsEmitsEachMissedDayOnItsOwnDueDate() throws Exception {
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Brussels"));
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "catch-up-probe@example.test");
+        Map<UUID, LocalDate> dueDates = new HashMap<>();
+        SHIFT_DAYS.forEach((id, days) -> {
+            jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                            + "VALUES (?, ?, ?, 'active', now() - INTERVAL '1 month' + make_interval(days => ?))",
+                    id, CUSTOMER_ID, planId, days);
+            dueDates.put(id, jdbc.queryForObject("""
+                    SELECT ((s.renewed_at + INTERVAL '1 month') AT TIME ZONE 'Europe/Brussels')::date
+                    FROM subscription s
+                    WHERE s.id = ?
+                    """, LocalDate.class, id));
+        });
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        // The last night that ran: three days ago.
+        LocalDate lastRun = today.minusDays(3);
+        var previous = jobLauncher.run(renewalJob, ScanWindow.day(lastRun)
+                .addTo(new JobParametersBuilder().addString("scheduleDate", lastRun.toString()))
+                .toJobParameters());
+        assertThat(previous.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        ScanWindow window = windows.today();
+        assertThat(window).isEqualTo(new ScanWindow(lastRun.plusDays(1), today));
+
+        var run = jobLauncher.run(renewalJob, window
+                .addTo(new JobParametersBuilder().addString("scheduleDate", today.toString()))
+                .toJobParameters());
+
+        assertThat(run.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(run.getStepExecutions().stream().filter(step -> step.getStepName().equals("scanStep")))
+                .singleElement()
+                .satisfies(step -> assertThat(step.getExecutionContext().getString("scanStep.window"))
+                        .isEqualTo(window.toString()));
+        // Both runs together: the one three days ago and the catch-up through today.
+        Map<UUID, LocalDate> expected = new HashMap<>();
+        dueDates.forEach((id, due) -> {
+            if (!due.isBefore(lastRun) && !due.isAfter(window.end())) {
+                expected.put(id, due);
+            }
+        });
+        assertThat(expected).hasSizeGreaterThanOrEqualTo(2);
+        Map<UUID, LocalDate> emitted = new HashMap<>();
+        jdbc.query("SELECT subscription_id, due_date FROM renewal_outbox", rs -> {
+            emitted.put((UUID) rs.getObject("subscription_id"), rs.getObject("due_date", LocalDate.class));
+        });
+        assertThat(emitted).isEqualTo(expected);
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class))
+                .isZero();
+
+        // The catch-up run covered through today, so the next default window is today alone.
+        assertThat(windows.today()).isEqualTo(ScanWindow.day(today));
+    }
+}
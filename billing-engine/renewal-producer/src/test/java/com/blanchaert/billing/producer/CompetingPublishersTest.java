@@ -27,6 +27,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
@@ -83,10 +84,10 @@ class CompetingPublishersTest {
         );
         jdbc.update(
                 "INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"competing-a\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"competing-b\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"competing-c\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"competing-d\"}'::jsonb)",
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"competing-a\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"competing-b\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"competing-c\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"competing-d\"}', 'UTF8'))",
                 A, subscriptionA, B, subscriptionB, C, subscriptionC, D, subscriptionD
         );
 
@@ -94,7 +95,7 @@ class CompetingPublishersTest {
         var calls = new ConcurrentHashMap<String, AtomicInteger>();
         var firstPageInFlight = new CountDownLatch(2);
         var bothPagesInFlight = new CountDownLatch(4);
-        when(publisher.publish(anyString(), anyString())).thenAnswer(invocation -> {
+        when(publisher.publish(anyString(), any(byte[].class))).thenAnswer(invocation -> {
             String id = invocation.getArgument(0);
             calls.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
             var future = futures.computeIfAbsent(id, key -> new CompletableFuture<>());
@@ -0,0 +1,75 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The full scan's keyset page reads only columns of {@code idx_subscription_scan_covering}
+ * (V13), so on a vacuumed table it is an index-only scan that fetches no heap block.
+ */
+@SpringBootTest(properties = "spring.batch.job.enabled=false")
+@Testcontainers
+class CoveringScanIndexTest {
+    private static final int ROWS = 20_000;
+    // The page CTE of ScanPages' full-mode statement, with the first page's bounds.
+    private static final String PAGE_SELECT = """
+            SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
+            FROM subscription s
+            WHERE s.status = 'active'
+              AND s.renewed_at IS NOT NULL
+              AND s.id > '00000000-0000-0000-0000-000000000000'
+              AND s.id <= 'ffffffff-ffff-ffff-ffff-ffffffffffff'
+            ORDER BY s.id
+            LIMIT 1000
+            """;
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void scanPageIsAnIndexOnlyScanWithoutHeapFetchesOnceVacuumed() {
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        UUID customerId = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('covering-scan@example.test') RETURNING id", UUID.class);
+        jdbc.update("INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                        + "SELECT ?, ?, CASE WHEN n % 10 = 0 THEN 'canceled' ELSE 'active' END, now() "
+                        + "FROM generate_series(1, ?) AS n",
+                customerId, planId, ROWS);
+        jdbc.execute("VACUUM ANALYZE subscription");
+
+        String plan = String.join("\n", jdbc.queryForList(
+                "EXPLAIN (ANALYZE, BUFFERS) " + PAGE_SELECT, String.class));
+
+        assertThat(plan).contains("Index Only Scan using idx_subscription_scan_covering")
+                .contains("Heap Fetches: 0")
+                .doesNotContain("Sort");
+    }
+
+    @Test
+    void subscriptionAutovacuumKeepsTheVisibilityMapCurrent() {
+        // V13's settings; scripts/verify.sh checks the same on a running stack.
+        assertThat(jdbc.queryForList(
+                "SELECT unnest(reloptions) FROM pg_class WHERE oid = 'subscription'::regclass", String.class))
+                .contains("autovacuum_vacuum_scale_factor=0.02", "autovacuum_vacuum_insert_scale_factor=0.02");
+    }
+}
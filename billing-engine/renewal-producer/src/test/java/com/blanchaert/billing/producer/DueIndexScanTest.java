@@ -0,0 +1,250 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.DueIndexChecker;
+import com.blanchaert.billing.producer.job.OutboxPartitions;
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.ScanPages;
+import com.blanchaert.billing.producer.job.ScanWindow;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanSource=due-index",
+        "app.scanPageSize=1"
+})
+@Testcontainers
+class DueIndexScanTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000800");
+    private static final UUID DUE = UUID.fromString("00000000-0000-0000-0000-000000000801");
+    private static final UUID NOT_DUE = UUID.fromString("00000000-0000-0000-0000-000000000802");
+    private static final UUID STALE = UUID.fromString("00000000-0000-0000-0000-000000000803");
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private Job dueIndexRebuildJob;
+
+    @Autowired
+    private DueIndexChecker checker;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ScanPages pages;
+
+    @Autowired
+    private OutboxPartitions partitions;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void scanReadsOnlyTheDueSliceAndTheRebuildRepairsDrift() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "due-index-probe@example.test");
+        insertSubscription(DUE, planId, "1 month");
+        insertSubscription(NOT_DUE, planId, "10 days");
+        insertSubscription(STALE, planId, "1 month");
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Brussels"));
+        assertThat(nextDue(DUE)).isEqualTo(today);
+        assertThat(nextDue(NOT_DUE)).isAfter(today);
+
+        // Drift the trigger cannot see: a direct write to the maintained column.
+        jdbc.update("UPDATE subscription SET next_due_local_date = DATE '2000-01-01' WHERE id = ?", STALE);
+        DueIndexChecker.Report drifted = checker.check();
+        assertThat(drifted.staleRows()).isEqualTo(1);
+        assertThat(drifted.consistent()).isFalse();
+
+        var scan1 = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(scan1.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(outboxSubscriptions()).containsExactly(DUE);
+
+        var rebuild = jobLauncher.run(dueIndexRebuildJob, parameters());
+
+        assertThat(rebuild.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(nextDue(STALE)).isEqualTo(today);
+        assertThat(checker.check().consistent()).isTrue();
+
+        var scan2 = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(scan2.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(outboxSubscriptions()).containsExactlyInAnyOrder(DUE, STALE);
+    }
+
+    @Test
+    void dueDateAddsTheIntervalOnTheBillingCalendarInEverySession() throws SQLException {
+        // Local renewal times: Jan 31 00:30, Mar 31 10:00, Oct 16 00:30 in Brussels.
+        List<OffsetDateTime> renewals = List.of(
+                OffsetDateTime.parse("2026-01-30T23:30Z"),
+                OffsetDateTime.parse("2026-03-31T08:00Z"),
+                OffsetDateTime.parse("2026-10-15T22:30Z"));
+        List<LocalDate> due = List.of(
+                LocalDate.of(2026, 2, 28),
+                LocalDate.of(2026, 4, 30),
+                LocalDate.of(2026, 11, 16));
+        String function = "SELECT renewal_due_local_date(?, 'month', 'Europe/Brussels')";
+        // The full scan's formula: interval added in the session zone, converted after.
+        String baseline = "SELECT ((CAST(? AS timestamptz) + INTERVAL '1 month') AT TIME ZONE 'Europe/Brussels')::date";
+        try (Connection connection = dataSource.getConnection(); Statement session = connection.createStatement()) {
+            try {
+                for (String zone : List.of("Europe/Brussels", "UTC", "America/New_York")) {
+                    session.execute("SET TimeZone = '" + zone + "'");
+                    assertThat(dates(connection, function, renewals)).as(zone).isEqualTo(due);
+                }
+                // Same as the baseline in a billing-zone session, as compose runs them ...
+                session.execute("SET TimeZone = 'Europe/Brussels'");
+                assertThat(dates(connection, baseline, renewals)).isEqualTo(due);
+                // ... but the baseline moves with the session; the stored column must not.
+                session.execute("SET TimeZone = 'UTC'");
+                assertThat(dates(connection, baseline, renewals))
+                        .containsExactly(LocalDate.of(2026, 3, 1), LocalDate.of(2026, 4, 30), LocalDate.of(2026, 11, 15));
+            } finally {
+                session.execute("RESET TimeZone");
+            }
+        }
+    }
+
+    @Test
+    void multiDayWindowIsScannedOneDayAtATimeInIdOrder() {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        UUID customerId = UUID.randomUUID();
+        ScanWindow window = new ScanWindow(LocalDate.of(2026, 3, 10), LocalDate.of(2026, 3, 12));
+        List<UUID> dueInWindow = new ArrayList<>();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            status.setRollbackOnly();
+            partitions.ensure(window.start(), window.end());
+            jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", customerId, customerId + "@example.test");
+            // Two subscriptions due on each window day, one the day before and one after.
+            for (LocalDate day = window.start().minusDays(1); !day.isAfter(window.end().plusDays(1));
+                 day = day.plusDays(1)) {
+                for (int i = 0; i < 2; i++) {
+                    UUID id = UUID.randomUUID();
+                    jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                                    + "VALUES (?, ?, ?, 'active', (CAST(? AS date) + TIME '12:00') AT TIME ZONE 'Europe/Brussels')",
+                            id, customerId, planId, day.minusMonths(1));
+                    if (!day.isBefore(window.start()) && !day.isAfter(window.end())) {
+                        dueInWindow.add(id);
+                    }
+                }
+            }
+
+            // One-row pages cross from day to day; each must resume after the last id.
+            UUID cursor = UUID.fromString("00000000-0000-0000-0000-000000000000");
+            UUID upper = UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff");
+            long examined = 0;
+            ScanPages.Page page;
+            do {
+                page = pages.scan(cursor, upper, window, 1);
+                examined += page.rows();
+                if (page.lastId() != null) {
+                    cursor = page.lastId();
+                }
+            } while (!page.last());
+
+            assertThat(examined).isEqualTo(dueInWindow.size());
+            assertThat(jdbc.query(
+                    "SELECT subscription_id FROM renewal_outbox WHERE due_date BETWEEN ? AND ?",
+                    (rs, rowNum) -> (UUID) rs.getObject("subscription_id"), window.start(), window.end()))
+                    .containsExactlyInAnyOrderElementsOf(dueInWindow);
+        });
+    }
+
+    private static List<LocalDate> dates(Connection connection, String sql, List<OffsetDateTime> renewals)
+            throws SQLException {
+        List<LocalDate> dates = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (OffsetDateTime renewal : renewals) {
+                statement.setObject(1, renewal);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    dates.add(rs.getObject(1, LocalDate.class));
+                }
+            }
+        }
+        return dates;
+    }
+
+    private void insertSubscription(UUID id, UUID planId, String renewedAgo) {
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', now() - CAST(? AS interval))", id, CUSTOMER_ID, planId, renewedAgo);
+    }
+
+    private LocalDate nextDue(UUID id) {
+        return jdbc.queryForObject(
+                "SELECT next_due_local_date FROM subscription WHERE id = ?", LocalDate.class, id);
+    }
+
+    private List<UUID> outboxSubscriptions() {
+        return jdbc.query("SELECT subscription_id FROM renewal_outbox",
+                (rs, rowNum) -> (UUID) rs.getObject("subscription_id"));
+    }
+
+    private static JobParameters parameters() {
+        return new JobParametersBuilder()
+                .addString("scheduleDate", "2026-01-01")
+                .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                .toJobParameters();
+    }
+}
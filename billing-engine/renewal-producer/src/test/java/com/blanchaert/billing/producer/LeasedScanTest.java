@@ -0,0 +1,149 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.ScanLeases;
+import com.blanchaert.billing.producer.job.ScanWindow;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanDistribution=lease",
+        "app.scanLeaseRanges=4",
+        "app.scanLeaseWorkers=3",
+        "app.scanLeasePollMs=100",
+        "app.scanPageSize=1"
+})
+@Testcontainers
+class LeasedScanTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000e00");
+    private static final List<UUID> DUE_SUBSCRIPTIONS = List.of(
+            UUID.fromString("00000000-0000-0000-0000-000000000e01"),
+            UUID.fromString("3fffffff-ffff-ffff-ffff-ffffffffffff"),
+            UUID.fromString("40000000-0000-0000-0000-000000000e02"),
+            UUID.fromString("80000000-0000-0000-0000-000000000e03"),
+            UUID.fromString("c0000000-0000-0000-0000-000000000e04"),
+            UUID.fromString("ffffffff-ffff-ffff-ffff-fffffffffffe")
+    );
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private ScanLeases leases;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void workersScanEverySeededRangeOfTheRun() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "lease-probe@example.test");
+        jdbc.batchUpdate(
+                "INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                        + "VALUES (?, ?, ?, 'active', now() - INTERVAL '1 month')",
+                DUE_SUBSCRIPTIONS,
+                DUE_SUBSCRIPTIONS.size(),
+                (statement, subscriptionId) -> {
+                    statement.setObject(1, subscriptionId);
+                    statement.setObject(2, CUSTOMER_ID);
+                    statement.setObject(3, planId);
+                }
+        );
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        var run = jobLauncher.run(renewalJob, new JobParametersBuilder()
+                .addString("scheduleDate", "2026-01-01")
+                .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                .toJobParameters());
+
+        assertThat(run.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        long instanceId = run.getJobInstance().getInstanceId();
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM scan_lease WHERE job_instance_id = ? AND completed_at IS NOT NULL AND owner IS NOT NULL",
+                Long.class, instanceId)).isEqualTo(4);
+        assertThat(jdbc.query(
+                "SELECT subscription_id FROM renewal_outbox WHERE subscription_id IN (SELECT id FROM subscription WHERE customer_id = ?)",
+                (rs, rowNum) -> (UUID) rs.getObject("subscription_id"), CUSTOMER_ID
+        )).containsExactlyInAnyOrderElementsOf(DUE_SUBSCRIPTIONS);
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class))
+                .isZero();
+    }
+
+    @Test
+    void anExpiredLeaseIsReclaimedAndALiveOneIsLeftAlone() {
+        long run = 4_242_424L;
+        ScanWindow window = ScanWindow.day(LocalDate.of(2026, 1, 1));
+        double reclaimedBefore = registry.get("scan.lease.reclaimed").counter().count();
+        // Seeded and marked in one transaction: the workers must not see the ranges
+        // before the two holders are in place.
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(leases.seed(run, window)).isEqualTo(4);
+            jdbc.update("UPDATE scan_lease SET owner = 'crashed#0', lease_until = now() - INTERVAL '1 second' "
+                    + "WHERE job_instance_id = ? AND range_no = 0", run);
+            jdbc.update("UPDATE scan_lease SET owner = 'alive#0', lease_until = now() + INTERVAL '1 hour' "
+                    + "WHERE job_instance_id = ? AND range_no = 1", run);
+        });
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> leases.open(run) == 1);
+        assertThat(jdbc.queryForObject(
+                "SELECT owner FROM scan_lease WHERE job_instance_id = ? AND range_no = 0", String.class, run))
+                .isNotEqualTo("crashed#0");
+        assertThat(jdbc.queryForObject(
+                "SELECT owner FROM scan_lease WHERE job_instance_id = ? AND completed_at IS NULL", String.class, run))
+                .isEqualTo("alive#0");
+        assertThat(registry.get("scan.lease.reclaimed").counter().count() - reclaimedBefore).isEqualTo(1.0);
+
+        jdbc.update("UPDATE scan_lease SET completed_at = now() WHERE job_instance_id = ?", run);
+    }
+}
@@ -0,0 +1,135 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.CatchUpWindows;
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.ScanWindow;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.lookAheadDays=2",
+        "app.releasePollMs=100"
+})
+@Testcontainers
+class LookAheadStagingTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000e00");
+    // Days relative to today that each subscription's renewed_at is shifted by: due
+    // today, inside the look-ahead horizon, and beyond it.
+    private static final Map<UUID, Integer> SHIFT_DAYS = Map.of(
+            UUID.fromString("00000000-0000-0000-0000-000000000e01"), 0,
+            UUID.fromString("00000000-0000-0000-0000-000000000e02"), 1,
+            UUID.fromString("00000000-0000-0000-0000-000000000e03"), 3
+    );
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private CatchUpWindows windows;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void renewalsDueWithinTheHorizonAreStagedAndReleasedAtTheirNotBefore() throws Exception {
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Brussels"));
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "look-ahead-probe@example.test");
+        Map<UUID, LocalDate> dueDates = new HashMap<>();
+        SHIFT_DAYS.forEach((id, days) -> {
+            jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                            + "VALUES (?, ?, ?, 'active', now() - INTERVAL '1 month' + make_interval(days => ?))",
+                    id, CUSTOMER_ID, planId, days);
+            dueDates.put(id, jdbc.queryForObject("""
+                    SELECT ((s.renewed_at + INTERVAL '1 month') AT TIME ZONE 'Europe/Brussels')::date
+                    FROM subscription s
+                    WHERE s.id = ?
+                    """, LocalDate.class, id));
+        });
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        ScanWindow window = windows.today();
+        assertThat(window).isEqualTo(new ScanWindow(today, today.plusDays(2)));
+        var run = jobLauncher.run(renewalJob, window
+                .addTo(new JobParametersBuilder().addString("scheduleDate", today.toString()))
+                .toJobParameters());
+        assertThat(run.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        Map<UUID, LocalDate> expected = new HashMap<>();
+        dueDates.forEach((id, due) -> {
+            if (!due.isBefore(today) && !due.isAfter(window.end())) {
+                expected.put(id, due);
+            }
+        });
+        Map<UUID, LocalDate> staged = new HashMap<>();
+        jdbc.query("SELECT subscription_id, due_date FROM renewal_outbox", rs -> {
+            staged.put((UUID) rs.getObject("subscription_id"), rs.getObject("due_date", LocalDate.class));
+        });
+        assertThat(staged).isEqualTo(expected);
+
+        // Due today: released at once and published by the run. Due later: staged for
+        // local midnight of its due date, and left alone until then.
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE due_date = ? AND published_at IS NULL",
+                Long.class, today)).isZero();
+        long future = jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE due_date > ? AND not_before > now()",
+                Long.class, today);
+        assertThat(future).isPositive();
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE due_date > ? AND published_at IS NULL",
+                Long.class, today)).isEqualTo(future);
+
+        // Its time comes: OutboxReleaser publishes it without another run.
+        jdbc.update("UPDATE renewal_outbox SET not_before = now() WHERE published_at IS NULL");
+        await().atMost(Duration.ofSeconds(10)).until(() -> jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class) == 0);
+
+        // The run covered through the horizon, so today's next default window is the
+        // horizon day alone (tomorrow's adds the one after it).
+        assertThat(windows.today()).isEqualTo(ScanWindow.day(today.plusDays(2)));
+    }
+}
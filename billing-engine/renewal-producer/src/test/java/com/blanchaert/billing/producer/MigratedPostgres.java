@@ -7,13 +7,19 @@ import org.testcontainers.utility.MountableFile;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 final class MigratedPostgres {
+    private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(.+\\.sql)");
+
     private MigratedPostgres() {
     }
 
     static PostgreSQLContainer<?> postgresWithMigrations() {
-        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse("postgres:18"));
+        // wal_level=logical like compose, so relay mode can create its replication slot.
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse("postgres:18"))
+                .withCommand("postgres", "-c", "fsync=off", "-c", "wal_level=logical");
         Path moduleDirectory = Path.of(System.getProperty("basedir", System.getProperty("user.dir")));
         Path migrationDirectory = moduleDirectory
                 .resolve("../../db-migrations")
@@ -27,15 +33,24 @@ final class MigratedPostgres {
         try (var migrations = Files.list(migrationDirectory)) {
             migrations
                     .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().matches("V.*\\.sql"))
-                    .sorted()
+                    .filter(path -> MIGRATION_NAME.matcher(path.getFileName().toString()).matches())
                     .forEach(path -> container.withCopyFileToContainer(
                             MountableFile.forHostPath(path.toString()),
-                            "/docker-entrypoint-initdb.d/" + path.getFileName()));
+                            "/docker-entrypoint-initdb.d/" + initdbName(path)));
         } catch (IOException exception) {
             throw new IllegalStateException("Could not enumerate migrations in " + migrationDirectory, exception);
         }
 
         return container;
     }
+
+    // The postgres entrypoint runs initdb scripts in glob order, where V10 sorts before V2;
+    // zero-pad the version so the scripts run in Flyway's numeric order.
+    private static String initdbName(Path migration) {
+        Matcher name = MIGRATION_NAME.matcher(migration.getFileName().toString());
+        if (!name.matches()) {
+            throw new IllegalArgumentException("Not a versioned migration: " + migration);
+        }
+        return "V%03d__%s".formatted(Integer.parseInt(name.group(1)), name.group(2));
+    }
 }
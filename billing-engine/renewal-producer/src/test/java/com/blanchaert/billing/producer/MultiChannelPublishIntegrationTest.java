@@ -0,0 +1,110 @@
+package com.blanchaert.billing.producer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.publishChannels=4",
+        "app.publishPageSize=25",
+        "app.confirmTimeoutMs=10000"
+})
+@Testcontainers
+class MultiChannelPublishIntegrationTest {
+    private static final int ROWS = 100;
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Container
+    @ServiceConnection
+    static final RabbitMQContainer rabbitmq = new RabbitMQContainer(
+            DockerImageName.parse("rabbitmq:3.13-management"));
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void shardedLanesConfirmEveryRowExactlyOnce() throws Exception {
+        UUID customerId = UUID.fromString("00000000-0000-0000-0000-000000000600");
+        UUID subscriptionId = UUID.fromString("00000000-0000-0000-0000-000000000601");
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", customerId, "multi-channel-probe@example.test");
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', NULL)", subscriptionId, customerId, planId);
+        jdbc.update("""
+                INSERT INTO renewal_outbox (subscription_id, due_date, payload)
+                SELECT ?, DATE '2026-01-01' + n, convert_to(jsonb_build_object('probe', 'multi-channel-' || n)::text, 'UTF8')
+                FROM generate_series(1, ?) AS n
+                """, subscriptionId, ROWS);
+
+        Queue queue = new Queue("multi-channel-probe", false, false, true);
+        amqpAdmin.declareQueue(queue);
+        Binding binding = BindingBuilder.bind(queue)
+                .to(new DirectExchange("billing.renewals"))
+                .with("renewal.requested");
+        amqpAdmin.declareBinding(binding);
+
+        double publishedBefore = registry.get("outbox.published").counter().count();
+        double returnedBefore = registry.get("outbox.returned").counter().count();
+        var jobExecution = jobLauncher.run(
+                renewalJob,
+                new JobParametersBuilder()
+                        .addString("scheduleDate", "2026-01-01")
+                        .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                        .toJobParameters()
+        );
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(registry.get("outbox.published").counter().count() - publishedBefore).isEqualTo(ROWS);
+        assertThat(registry.get("outbox.returned").counter().count() - returnedBefore).isEqualTo(0.0);
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL",
+                Long.class
+        )).isZero();
+        await().untilAsserted(() -> assertThat(amqpAdmin.getQueueInfo(queue.getName()).getMessageCount())
+                .isEqualTo(ROWS));
+    }
+}
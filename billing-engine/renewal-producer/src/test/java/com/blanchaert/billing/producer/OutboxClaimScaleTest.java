@@ -0,0 +1,116 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.RenewalJobConfig;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Per-page claim latency must not grow with the unpublished backlog: the claim is
+ * ordered like the V5 partial index, so a page is an index range scan of LIMIT rows.
+ * The backlog is grown 16x; the previous {@code ORDER BY id} claim sorted all of it on
+ * every page and slowed down proportionally.
+ */
+@SpringBootTest(properties = "spring.batch.job.enabled=false")
+@Testcontainers
+class OutboxClaimScaleTest {
+    private static final Logger log = LoggerFactory.getLogger(OutboxClaimScaleTest.class);
+    private static final int PAGE_SIZE = 1000;
+    private static final int SAMPLES = 7;
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000500");
+    private static final UUID SUBSCRIPTION_ID = UUID.fromString("00000000-0000-0000-0000-000000000501");
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TransactionTemplate transactions;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void claimPageLatencyStaysFlatAsTheBacklogGrows() {
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "claim-scale@example.test");
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', now())", SUBSCRIPTION_ID, CUSTOMER_ID, planId);
+
+        Map<Integer, Double> medianMs = new LinkedHashMap<>();
+        int rows = 0;
+        for (int backlog : new int[]{25_000, 100_000, 400_000}) {
+            growBacklog(rows, backlog);
+            rows = backlog;
+            jdbc.execute("VACUUM ANALYZE renewal_outbox");
+
+            String plan = String.join("\n", jdbc.queryForList(
+                    "EXPLAIN " + RenewalJobConfig.OUTBOX_CLAIM_SQL.replace("?", String.valueOf(PAGE_SIZE)),
+                    String.class));
+            // Per-partition children of idx_renewal_outbox_claim (V8, rekeyed in V12) are
+            // named <partition>_not_before_id_idx; merged in order, never sorted.
+            assertThat(plan).contains("_not_before_id_idx").doesNotContain("Sort");
+
+            medianMs.put(backlog, medianClaimMs());
+        }
+        log.info("Claim latency per {}-row page by unpublished backlog (median ms): {}", PAGE_SIZE, medianMs);
+
+        double smallest = medianMs.get(25_000);
+        double largest = medianMs.get(400_000);
+        // Flat, with room for container noise; a backlog-wide sort grows ~16x here.
+        assertThat(largest).isLessThan(smallest * 4 + 10);
+    }
+
+    private void growBacklog(int from, int to) {
+        // One subscription, one due date per row: satisfies uniq_outbox_sub_due, and
+        // created_at and not_before increase with the row number like real scan inserts
+        // do; not_before is in the past, so every row is releasable.
+        jdbc.update("""
+                INSERT INTO renewal_outbox (subscription_id, due_date, payload, created_at, not_before)
+                SELECT ?, DATE '2000-01-01' + n, convert_to('{}', 'UTF8'), now() + n * INTERVAL '1 millisecond',
+                       now() - INTERVAL '1 day' + n * INTERVAL '1 millisecond'
+                FROM generate_series(?, ?) AS n
+                """, SUBSCRIPTION_ID, from, to - 1);
+    }
+
+    private double medianClaimMs() {
+        double[] samples = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            // Claim and roll back, so every sample sees the same backlog.
+            samples[i] = transactions.execute(status -> {
+                long start = System.nanoTime();
+                List<UUID> claimed = jdbc.query(RenewalJobConfig.OUTBOX_CLAIM_SQL,
+                        ps -> ps.setInt(1, PAGE_SIZE),
+                        (rs, rowNum) -> (UUID) rs.getObject("id"));
+                double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+                assertThat(claimed).hasSize(PAGE_SIZE);
+                status.setRollbackOnly();
+                return elapsedMs;
+            });
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,97 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPartitions;
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.outboxRetentionDays=5",
+        "app.outboxPartitionsAhead=3"
+})
+@Testcontainers
+class OutboxPartitionRetentionTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000900");
+    private static final UUID SUBSCRIPTION_ID = UUID.fromString("00000000-0000-0000-0000-000000000901");
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Autowired
+    private OutboxPartitions partitions;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void dropsOnlyExpiredFullyPublishedPartitionsAndCreatesAhead() {
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Brussels"));
+        LocalDate published = today.minusDays(10);
+        LocalDate pending = today.minusDays(9);
+        LocalDate retained = today.minusDays(2);
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "retention@example.test");
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', now())", SUBSCRIPTION_ID, CUSTOMER_ID, planId);
+        for (LocalDate day : new LocalDate[]{published, pending, retained}) {
+            jdbc.queryForObject("SELECT renewal_outbox_ensure_partition(?)", Boolean.class, day);
+        }
+        insertOutbox(published, true);
+        insertOutbox(pending, false);
+        insertOutbox(retained, true);
+
+        assertThat(partitions.createAhead(today)).isEqualTo(4);
+        assertThat(partitions.dropExpired(today)).isEqualTo(1);
+
+        assertThat(partitionExists(published)).isFalse();
+        assertThat(partitionExists(pending)).isTrue();
+        assertThat(partitionExists(retained)).isTrue();
+        for (int i = 0; i <= 3; i++) {
+            assertThat(partitionExists(today.plusDays(i))).isTrue();
+        }
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox WHERE subscription_id = ?",
+                Long.class, SUBSCRIPTION_ID)).isEqualTo(2);
+
+        // Tonight's insert lands in its own daily partition, not the default one.
+        insertOutbox(today, false);
+        assertThat(jdbc.queryForObject(
+                "SELECT tableoid::regclass::text FROM renewal_outbox WHERE subscription_id = ? AND due_date = ?",
+                String.class, SUBSCRIPTION_ID, today)).isEqualTo(partitionName(today));
+    }
+
+    private void insertOutbox(LocalDate dueDate, boolean published) {
+        jdbc.update("INSERT INTO renewal_outbox (subscription_id, due_date, payload, published_at) "
+                        + "VALUES (?, ?, convert_to('{}', 'UTF8'), CASE WHEN ? THEN now() END)",
+                SUBSCRIPTION_ID, dueDate, published);
+    }
+
+    private boolean partitionExists(LocalDate day) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partitionName(day)));
+    }
+
+    private static String partitionName(LocalDate day) {
+        return "renewal_outbox_p" + day.format(PARTITION_DATE);
+    }
+}
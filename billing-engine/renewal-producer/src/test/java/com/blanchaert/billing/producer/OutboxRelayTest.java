@@ -0,0 +1,93 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.publishMode=relay",
+        "app.confirmTimeoutMs=250"
+})
+@Testcontainers
+class OutboxRelayTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000a00");
+    private static final UUID SUBSCRIPTION_ID = UUID.fromString("00000000-0000-0000-0000-000000000a01");
+    private static final UUID A = UUID.fromString("00000000-0000-0000-0000-000000000a0a");
+    private static final UUID B = UUID.fromString("00000000-0000-0000-0000-000000000a0b");
+    private static final UUID C = UUID.fromString("00000000-0000-0000-0000-000000000a0c");
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void relaysCommittedInsertsAndReplaysUnconfirmedTransactions() {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        // B's first publish is nacked: its transaction must not move the slot, so the
+        // relay replays it and B (and its transaction-mate A) are published again.
+        when(publisher.publish(anyString(), any(byte[].class))).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            int attempt = attempts.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+            return CompletableFuture.completedFuture(!(id.equals(B.toString()) && attempt == 1));
+        });
+        await().atMost(Duration.ofSeconds(30)).until(() -> jdbc.queryForObject(
+                "SELECT count(*) FROM pg_replication_slots WHERE slot_name = 'renewal_outbox_relay'",
+                Integer.class) == 1);
+
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "relay-probe@example.test");
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', now())", SUBSCRIPTION_ID, CUSTOMER_ID, planId);
+        jdbc.update("INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"relay-a\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-02', convert_to('{\"probe\": \"relay-b\"}', 'UTF8'))",
+                A, SUBSCRIPTION_ID, B, SUBSCRIPTION_ID);
+        jdbc.update("INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) "
+                + "VALUES (?, ?, DATE '2026-01-03', convert_to('{\"probe\": \"relay-c\"}', 'UTF8'))", C, SUBSCRIPTION_ID);
+        String lastCommit = jdbc.queryForObject("SELECT pg_current_wal_lsn()::text", String.class);
+
+        await().atMost(Duration.ofSeconds(60)).untilAsserted(() -> {
+            assertThat(jdbc.queryForObject(
+                    "SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class)).isZero();
+            assertThat(jdbc.queryForObject(
+                    "SELECT confirmed_flush_lsn >= ?::pg_lsn FROM pg_replication_slots "
+                            + "WHERE slot_name = 'renewal_outbox_relay'", Boolean.class, lastCommit)).isTrue();
+        });
+        assertThat(attempts.get(A.toString())).hasValueGreaterThanOrEqualTo(2);
+        assertThat(attempts.get(B.toString())).hasValueGreaterThanOrEqualTo(2);
+        assertThat(attempts.get(C.toString())).hasValueGreaterThanOrEqualTo(1);
+        // pgoutput carries bytea as hex text: the body must arrive as the stored bytes.
+        verify(publisher, atLeastOnce()).publish(C.toString(), "{\"probe\": \"relay-c\"}".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,145 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.jobFlow=pipelined",
+        "app.scanPageSize=1",
+        "app.pipelinePollMs=50"
+})
+@Testcontainers
+class PipelinedJobTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000b00");
+    private static final List<UUID> DUE_SUBSCRIPTIONS = List.of(
+            UUID.fromString("00000000-0000-0000-0000-000000000b01"),
+            UUID.fromString("00000000-0000-0000-0000-000000000b02"),
+            UUID.fromString("00000000-0000-0000-0000-000000000b03"),
+            UUID.fromString("00000000-0000-0000-0000-000000000b04")
+    );
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher, run on its own thread: the test must act while the job runs.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void publishesCommittedScanPagesWhileTheScanIsStillRunning() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "pipeline-probe@example.test");
+        for (UUID id : DUE_SUBSCRIPTIONS) {
+            jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                    + "VALUES (?, ?, ?, 'active', now() - INTERVAL '1 month')", id, CUSTOMER_ID, planId);
+        }
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        // An uncommitted outbox row for the third subscription: the scan's ON CONFLICT
+        // insert for that page waits on this transaction, holding the scan mid-way.
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Brussels"));
+        try (Connection blocker = dataSource.getConnection()) {
+            blocker.setAutoCommit(false);
+            try (var ps = blocker.prepareStatement("INSERT INTO renewal_outbox (subscription_id, due_date, payload) "
+                    + "VALUES (?, ?, convert_to('{}', 'UTF8'))")) {
+                ps.setObject(1, DUE_SUBSCRIPTIONS.get(2));
+                ps.setObject(2, today);
+                ps.executeUpdate();
+            }
+
+            CompletableFuture<JobExecution> run = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return jobLauncher.run(renewalJob, new JobParametersBuilder()
+                            .addString("scheduleDate", today.toString())
+                            .toJobParameters());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            await().atMost(Duration.ofSeconds(60)).untilAsserted(() -> assertThat(jdbc.queryForObject(
+                    "SELECT count(*) FROM renewal_outbox WHERE subscription_id IN (?, ?) AND published_at IS NOT NULL",
+                    Long.class, DUE_SUBSCRIPTIONS.get(0), DUE_SUBSCRIPTIONS.get(1))).isEqualTo(2));
+            assertThat(run).isNotDone();
+            // The tail now polls for pages the held scan cannot commit; it waits between
+            // polls with no transaction open, so the blocker is the only idle one.
+            int blockerPid;
+            try (var ps = blocker.prepareStatement("SELECT pg_backend_pid()"); var rs = ps.executeQuery()) {
+                rs.next();
+                blockerPid = rs.getInt(1);
+            }
+            await().during(Duration.ofMillis(500)).atMost(Duration.ofSeconds(5)).until(() -> jdbc.queryForObject("""
+                    SELECT count(*) FROM pg_stat_activity
+                    WHERE datname = current_database() AND pid <> ?
+                      AND state = 'idle in transaction'
+                      AND clock_timestamp() - state_change > INTERVAL '30 milliseconds'
+                    """, Long.class, blockerPid) == 0);
+            assertThat(run).isNotDone();
+
+            blocker.rollback();
+            JobExecution execution = run.get(60, TimeUnit.SECONDS);
+            assertThat(execution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        }
+
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM renewal_outbox WHERE subscription_id = ANY (?) AND published_at IS NOT NULL",
+                Long.class, (Object) DUE_SUBSCRIPTIONS.toArray(UUID[]::new))).isEqualTo(DUE_SUBSCRIPTIONS.size());
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class))
+                .isZero();
+        verify(publisher, times(DUE_SUBSCRIPTIONS.size())).publish(anyString(), any(byte[].class));
+        verify(publisher, times(1)).publish(eq(jdbc.queryForObject(
+                "SELECT id::text FROM renewal_outbox WHERE subscription_id = ?",
+                String.class, DUE_SUBSCRIPTIONS.get(2))), any(byte[].class));
+    }
+}
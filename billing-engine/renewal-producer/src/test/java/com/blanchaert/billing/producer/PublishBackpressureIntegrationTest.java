@@ -0,0 +1,137 @@
+package com.blanchaert.billing.producer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "rabbitmq.queue=backpressure-probe",
+        "app.publishTargetDepth=50",
+        "app.publishMinRate=5",
+        "app.publishDepthSampleMs=200",
+        "app.publishPageSize=100"
+})
+@Testcontainers
+class PublishBackpressureIntegrationTest {
+    private static final int ROWS = 400;
+    private static final String QUEUE = "backpressure-probe";
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    @Container
+    @ServiceConnection
+    static final RabbitMQContainer rabbitmq = new RabbitMQContainer(
+            DockerImageName.parse("rabbitmq:3.13-management"));
+
+    // The SYNC launcher, run on its own thread: the test must act while the job runs.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void holdsTheQueueNearTargetDepthAndKeepsTheBacklogInTheOutbox() throws Exception {
+        UUID customerId = UUID.fromString("00000000-0000-0000-0000-000000000c00");
+        UUID subscriptionId = UUID.fromString("00000000-0000-0000-0000-000000000c01");
+        UUID planId = jdbc.queryForObject("SELECT id FROM plan ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", customerId, "backpressure-probe@example.test");
+        jdbc.update("INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                + "VALUES (?, ?, ?, 'active', NULL)", subscriptionId, customerId, planId);
+        jdbc.update("""
+                INSERT INTO renewal_outbox (subscription_id, due_date, payload)
+                SELECT ?, DATE '2026-01-01' + n, convert_to(jsonb_build_object('probe', 'backpressure-' || n)::text, 'UTF8')
+                FROM generate_series(1, ?) AS n
+                """, subscriptionId, ROWS);
+
+        Queue queue = new Queue(QUEUE, false, false, true);
+        amqpAdmin.declareQueue(queue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(queue)
+                .to(new DirectExchange("billing.renewals"))
+                .with("renewal.requested"));
+
+        CompletableFuture<JobExecution> run = CompletableFuture.supplyAsync(() -> {
+            try {
+                return jobLauncher.run(renewalJob, new JobParametersBuilder()
+                        .addString("scheduleDate", "2026-01-01")
+                        .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                        .toJobParameters());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Nothing consumes: once the target is reached, publishing slows to the minimum
+        // rate and the rest of the rows wait unpublished in the outbox.
+        await().atMost(Duration.ofSeconds(30)).until(() -> readyMessages() >= 50);
+        await().during(Duration.ofSeconds(2)).atMost(Duration.ofSeconds(5)).until(() -> readyMessages() <= 200
+                && unpublishedRows() >= ROWS - 200);
+        assertThat(run).isNotDone();
+        assertThat(registry.get("outbox.publish.rate.limit").gauge().value()).isEqualTo(5.0);
+        assertThat(registry.get("outbox.publish.target.depth").gauge().value()).isEqualTo(50.0);
+
+        // A consumer appears (purging stands in for one): the rate climbs back and the
+        // job drains the outbox.
+        ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            drainer.scheduleAtFixedRate(() -> amqpAdmin.purgeQueue(QUEUE), 0, 100, TimeUnit.MILLISECONDS);
+            JobExecution execution = run.get(60, TimeUnit.SECONDS);
+            assertThat(execution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        } finally {
+            drainer.shutdownNow();
+        }
+        assertThat(unpublishedRows()).isZero();
+        assertThat(registry.get("outbox.publish.rate.limit").gauge().value()).isGreaterThan(5.0);
+    }
+
+    private long readyMessages() {
+        return amqpAdmin.getQueueInfo(QUEUE).getMessageCount();
+    }
+
+    private long unpublishedRows() {
+        return jdbc.queryForObject("SELECT count(*) FROM renewal_outbox WHERE published_at IS NULL", Long.class);
+    }
+}
@@ -0,0 +1,119 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Failure paths of the sharded publish lanes, against a stubbed template: a failed send
+ * nacks only what never reached the channel, and shutdown leaves no future pending.
+ */
+class PublishLaneFailureTest {
+    private static final int CHANNELS = 2;
+
+    @Test
+    void failedSendNacksOnlyTheMessagesNotYetSent() {
+        CountDownLatch firstBatchHeld = new CountDownLatch(1);
+        RabbitOperations channel = mock(RabbitOperations.class);
+        doThrow(new AmqpException("channel closed")).when(channel).convertAndSend(
+                anyString(), anyString(), any(Message.class),
+                argThat((CorrelationData correlation) -> correlation.getId().equals(laneZeroId(2))));
+        RabbitTemplate rabbit = heldTemplate(channel, firstBatchHeld);
+        OutboxPublisher publisher = publisher(rabbit);
+        try {
+            // The held first send lets the rest queue, so the failing row and the one after it
+            // always share a batch; the rows before it were sent either way.
+            CompletableFuture<Boolean> first = publish(publisher, laneZeroId(0));
+            List<CompletableFuture<Boolean>> batch = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                batch.add(publish(publisher, laneZeroId(i)));
+            }
+            firstBatchHeld.countDown();
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> batch.get(2).isDone());
+            assertThat(batch.get(1)).isCompletedWithValue(false);
+            assertThat(batch.get(2)).isCompletedWithValue(false);
+            // Sent before the failure: left to the confirm, never nacked on the lane's guess.
+            assertThat(batch.get(0)).isNotDone();
+            assertThat(first).isNotDone();
+        } finally {
+            publisher.destroy();
+        }
+    }
+
+    @Test
+    void destroyNacksEveryQueuedMessage() {
+        // The lane stays inside its first send until close() interrupts it.
+        RabbitTemplate rabbit = heldTemplate(mock(RabbitOperations.class), new CountDownLatch(1));
+        OutboxPublisher publisher = publisher(rabbit);
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(publish(publisher, laneZeroId(i)));
+        }
+
+        publisher.destroy();
+
+        assertThat(futures).allSatisfy(future -> assertThat(future).isCompletedWithValue(false));
+        assertThat(publish(publisher, laneZeroId(5))).isCompletedWithValue(false);
+    }
+
+    private static OutboxPublisher publisher(RabbitTemplate rabbit) {
+        return new OutboxPublisher(rabbit, new SimpleMeterRegistry(), "billing.renewals", "renewal.requested",
+                CHANNELS);
+    }
+
+    /** A template whose first {@code invoke} waits for {@code release} before it sends. */
+    @SuppressWarnings("unchecked")
+    private static RabbitTemplate heldTemplate(RabbitOperations channel, CountDownLatch release) {
+        RabbitTemplate rabbit = mock(RabbitTemplate.class);
+        when(rabbit.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation -> {
+            try {
+                if (!release.await(30, TimeUnit.SECONDS)) {
+                    throw new AmqpException("test latch never released");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmqpException("interrupted", e);
+            }
+            return invocation.<RabbitOperations.OperationsCallback<Object>>getArgument(0).doInRabbit(channel);
+        });
+        return rabbit;
+    }
+
+    private static CompletableFuture<Boolean> publish(OutboxPublisher publisher, String id) {
+        return publisher.publish(id, "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The {@code n}-th id sharded onto lane 0, so every row of a test shares one lane. */
+    private static String laneZeroId(int n) {
+        int found = 0;
+        for (int i = 0; ; i++) {
+            String id = "row-" + i;
+            if (Math.floorMod(id.hashCode(), CHANNELS) == 0 && found++ == n) {
+                return id;
+            }
+        }
+    }
+}
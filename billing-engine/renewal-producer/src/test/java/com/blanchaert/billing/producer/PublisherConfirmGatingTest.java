@@ -23,6 +23,7 @@ import java.util.concurrent.ThreadLocalRandom;
 
 import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
@@ -79,13 +80,13 @@ class PublisherConfirmGatingTest {
         );
         jdbc.update(
                 "INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"confirm-a\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"confirm-b\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"confirm-c\"}'::jsonb)",
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"confirm-a\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"confirm-b\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"confirm-c\"}', 'UTF8'))",
                 A, subscriptionA, B, subscriptionB, C, subscriptionC
         );
 
-        when(publisher.publish(anyString(), anyString())).thenAnswer(invocation -> {
+        when(publisher.publish(anyString(), any(byte[].class))).thenAnswer(invocation -> {
             String id = invocation.getArgument(0);
             if (B.toString().equals(id)) {
                 return new CompletableFuture<Boolean>();
@@ -107,9 +108,9 @@ class PublisherConfirmGatingTest {
         assertThat(isPublished(A)).isTrue();
         assertThat(isPublished(B)).isFalse();
         assertThat(isPublished(C)).isTrue();
-        verify(publisher, times(1)).publish(eq(A.toString()), anyString());
-        verify(publisher, times(1)).publish(eq(C.toString()), anyString());
-        verify(publisher, times(2)).publish(eq(B.toString()), anyString());
+        verify(publisher, times(1)).publish(eq(A.toString()), any(byte[].class));
+        verify(publisher, times(1)).publish(eq(C.toString()), any(byte[].class));
+        verify(publisher, times(2)).publish(eq(B.toString()), any(byte[].class));
         assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox", Long.class)).isEqualTo(3L);
     }
 
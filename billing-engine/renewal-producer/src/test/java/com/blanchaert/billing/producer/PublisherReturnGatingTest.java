@@ -84,9 +84,9 @@ class PublisherReturnGatingTest {
         );
         jdbc.update(
                 "INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"return-a\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"return-b\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"return-c\"}'::jsonb)",
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"return-a\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"return-b\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"return-c\"}', 'UTF8'))",
                 A, subscriptionA, B, subscriptionB, C, subscriptionC
         );
 
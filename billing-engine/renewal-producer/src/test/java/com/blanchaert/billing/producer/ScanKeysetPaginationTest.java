@@ -19,6 +19,7 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.concurrent.ThreadLocalRandom;
 
 import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -103,7 +105,7 @@ class ScanKeysetPaginationTest {
                 CUSTOMER_ID,
                 plan.id()
         );
-        when(publisher.publish(anyString(), anyString()))
+        when(publisher.publish(anyString(), any(byte[].class)))
                 .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
 
         double insertedBeforeRun1 = counter("outbox.inserted");
@@ -144,7 +146,7 @@ class ScanKeysetPaginationTest {
         assertThat(counter("outbox.published") - publishedBeforeRun1).isEqualTo(5.0);
 
         PayloadProbe probe = jdbc.queryForObject(
-                "SELECT id, due_date, payload::text FROM renewal_outbox WHERE subscription_id = ?",
+                "SELECT id, due_date, convert_from(payload, 'UTF8') AS payload FROM renewal_outbox WHERE subscription_id = ?",
                 (rs, rowNum) -> new PayloadProbe(
                         (UUID) rs.getObject("id"),
                         rs.getObject("due_date", LocalDate.class),
@@ -172,6 +174,8 @@ class ScanKeysetPaginationTest {
                 .isEqualTo(LocalDate.parse(dueDate).plusMonths(1).toString());
         assertThat(payload.get("occurred_at").asText())
                 .matches("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}Z");
+        // The stored bytes are the message body, unchanged (V10).
+        verify(publisher).publish(probe.id().toString(), probe.payload().getBytes(StandardCharsets.UTF_8));
 
         double insertedBeforeRun2 = counter("outbox.inserted");
         double publishedBeforeRun2 = counter("outbox.published");
@@ -187,7 +191,7 @@ class ScanKeysetPaginationTest {
         assertThat(counter("outbox.inserted") - insertedBeforeRun2).isEqualTo(0.0);
         assertThat(counter("outbox.published") - publishedBeforeRun2).isEqualTo(0.0);
         assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox", Long.class)).isEqualTo(5L);
-        verify(publisher, times(5)).publish(anyString(), anyString());
+        verify(publisher, times(5)).publish(anyString(), any(byte[].class));
     }
 
     private double counter(String name) {
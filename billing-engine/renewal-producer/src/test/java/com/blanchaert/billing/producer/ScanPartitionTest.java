@@ -0,0 +1,171 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanPartitions=4",
+        "app.scanPageSize=1"
+})
+@Testcontainers
+class ScanPartitionTest {
+    private static final UUID CUSTOMER_ID = UUID.fromString("00000000-0000-0000-0000-000000000700");
+    // Spread over the keyspace, including both sides of the 0x4000… and 0x8000… cuts the
+    // partitioner falls back to before the table has statistics.
+    private static final List<UUID> DUE_SUBSCRIPTIONS = List.of(
+            UUID.fromString("00000000-0000-0000-0000-000000000701"),
+            UUID.fromString("3fffffff-ffff-ffff-ffff-ffffffffffff"),
+            UUID.fromString("40000000-0000-0000-0000-000000000000"),
+            UUID.fromString("40000000-0000-0000-0000-000000000001"),
+            UUID.fromString("80000000-0000-0000-0000-000000000000"),
+            UUID.fromString("80000000-0000-0000-0000-000000000001"),
+            UUID.fromString("c0000000-0000-0000-0000-000000000702"),
+            UUID.fromString("ffffffff-ffff-ffff-ffff-fffffffffffe")
+    );
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void partitionsCoverTheKeyspaceOnceAndDeduplicateARescan() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        jdbc.update("INSERT INTO customer (id, email) VALUES (?, ?)", CUSTOMER_ID, "partition-probe@example.test");
+        jdbc.batchUpdate(
+                "INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at) "
+                        + "VALUES (?, ?, ?, 'active', now() - INTERVAL '1 month')",
+                DUE_SUBSCRIPTIONS,
+                DUE_SUBSCRIPTIONS.size(),
+                (statement, subscriptionId) -> {
+                    statement.setObject(1, subscriptionId);
+                    statement.setObject(2, CUSTOMER_ID);
+                    statement.setObject(3, planId);
+                }
+        );
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        double insertedBeforeRun1 = counter("outbox.inserted");
+        var run1 = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(run1.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        List<StepExecution> partitions = run1.getStepExecutions().stream()
+                .filter(step -> step.getStepName().startsWith("scanStep.partition:"))
+                .toList();
+        assertThat(partitions).hasSize(4)
+                .allSatisfy(step -> assertThat(step.getStatus()).isEqualTo(BatchStatus.COMPLETED));
+        assertThat(partitions.stream().map(step -> step.getExecutionContext().getString("scanStep.window")).distinct())
+                .hasSize(1);
+        assertThat(jdbc.query(
+                "SELECT subscription_id FROM renewal_outbox",
+                (rs, rowNum) -> (UUID) rs.getObject("subscription_id")
+        )).containsExactlyInAnyOrderElementsOf(DUE_SUBSCRIPTIONS);
+        assertThat(counter("outbox.inserted") - insertedBeforeRun1).isEqualTo(DUE_SUBSCRIPTIONS.size());
+
+        double insertedBeforeRun2 = counter("outbox.inserted");
+        var run2 = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(run2.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(counter("outbox.inserted") - insertedBeforeRun2).isEqualTo(0.0);
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM renewal_outbox", Long.class))
+                .isEqualTo(DUE_SUBSCRIPTIONS.size());
+    }
+
+    @Test
+    void timeOrderedIdsAreSpreadAcrossEveryPartition() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        UUID customerId = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('partition-v7@example.test') RETURNING id", UUID.class);
+        // Default ids (uuidv7, V7) share one timestamp prefix: an even keyspace split would
+        // leave them all in the first range. Not due, so nothing reaches the outbox.
+        jdbc.update("INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                + "SELECT ?, ?, 'active', now() - INTERVAL '10 days' FROM generate_series(1, 40)",
+                customerId, planId);
+        jdbc.execute("ANALYZE subscription");
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        var run = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(run.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        List<UUID> uppers = run.getStepExecutions().stream()
+                .filter(step -> step.getStepName().startsWith("scanStep.partition:"))
+                .map(step -> UUID.fromString(step.getExecutionContext().getString("scanStep.upper")))
+                .sorted(jdbcOrder())
+                .toList();
+        assertThat(uppers).hasSize(4);
+        UUID lower = UUID.fromString("00000000-0000-0000-0000-000000000000");
+        for (UUID upper : uppers) {
+            assertThat(jdbc.queryForObject(
+                    "SELECT count(*) FROM subscription WHERE customer_id = ? AND id > ? AND id <= ?",
+                    Long.class, customerId, lower, upper)).isPositive();
+            lower = upper;
+        }
+    }
+
+    // Postgres compares uuid as unsigned bytes; UUID.compareTo compares signed longs.
+    private static Comparator<UUID> jdbcOrder() {
+        return Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+                .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+    }
+
+    private static JobParameters parameters() {
+        return new JobParametersBuilder()
+                .addString("scheduleDate", "2026-01-01")
+                .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                .toJobParameters();
+    }
+
+    private double counter(String name) {
+        return registry.get(name).counter().count();
+    }
+}
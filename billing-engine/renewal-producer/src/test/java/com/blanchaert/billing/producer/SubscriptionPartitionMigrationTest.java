@@ -0,0 +1,369 @@
+package com.blanchaert.billing.producer;
+
+import com.blanchaert.billing.producer.job.OutboxPublisher;
+import com.blanchaert.billing.producer.job.SubscriptionPartitioning;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.blanchaert.billing.producer.MigratedPostgres.postgresWithMigrations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * subscriptionPartitionJob (V14) moves subscription to its hash partitions while a writer
+ * keeps inserting, updating and deleting rows and a consumer keeps renewing: the
+ * consumer's charge and renewed_at statements, prepared once and reused across the swap.
+ * Both tables then hold the same rows, except those written after the swap, and the
+ * renewal scan reads one partition per scanStep partition.
+ */
+@SpringBootTest(properties = {
+        "spring.batch.job.enabled=false",
+        "app.scanPartitions=4",
+        "app.scanPageSize=200",
+        "app.partitionSwapLockTimeoutMs=100"
+})
+@Testcontainers
+class SubscriptionPartitionMigrationTest {
+    private static final int SEEDED = 3_000;
+    private static final int RENEWED = 50;
+    // The consumer's statements (BillingService) without the payment rows: a charge for
+    // the due date under the period's invoice, then the settle that advances renewed_at.
+    private static final String CONSUMER_CHARGE = """
+            WITH inv_ins AS (
+                INSERT INTO invoice(id, customer_id, period_start, period_end,
+                total_cents, currency, status)
+                VALUES (uuidv7(), ?, ?, ?, 1499, 'EUR', 'posted')
+                ON CONFLICT ON CONSTRAINT uniq_invoice_period DO NOTHING
+                RETURNING id
+            ), inv AS (
+                SELECT id FROM inv_ins
+                UNION ALL
+                SELECT id FROM invoice
+                WHERE customer_id = ? AND period_start = ? AND period_end = ? AND
+                currency = 'EUR'
+                LIMIT 1
+            ), chg_ins AS (
+                INSERT INTO charge(id, subscription_id, invoice_id, amount_cents,
+                currency, status, due_date)
+                SELECT uuidv7(), ?, inv.id, 1499, 'EUR', 'pending', ? FROM inv
+                RETURNING id
+            )
+            SELECT inv.id AS invoice_id, chg_ins.id AS charge_id FROM inv, chg_ins
+            """;
+    private static final String CONSUMER_SETTLE = """
+            WITH chg AS (
+                UPDATE charge SET status = 'settled' WHERE id = ?
+            ), inv AS (
+                UPDATE invoice SET status = 'paid' WHERE id = ?
+            )
+            UPDATE subscription SET renewed_at = ? WHERE id = ?
+            """;
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
+
+    // The SYNC launcher: this test's assertions depend on run() returning only
+    // after the job finished.
+    @Autowired
+    @Qualifier("jobLauncher")
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job subscriptionPartitionJob;
+
+    @Autowired
+    private Job renewalJob;
+
+    @Autowired
+    private SubscriptionPartitioning partitioning;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @MockitoBean
+    private OutboxPublisher publisher;
+
+    @Test
+    void migratesUnderConcurrentWritesAndScansEveryHashPartition() throws Exception {
+        UUID planId = jdbc.queryForObject(
+                "SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1", UUID.class);
+        UUID seededCustomer = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('partition-seed@example.test') RETURNING id", UUID.class);
+        UUID writerCustomer = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('partition-writer@example.test') RETURNING id", UUID.class);
+        UUID renewedCustomer = jdbc.queryForObject(
+                "INSERT INTO customer (email) VALUES ('partition-renewed@example.test') RETURNING id", UUID.class);
+        // Every tenth seeded row is due today; the writer's rows never are.
+        jdbc.update("INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                        + "SELECT ?, ?, 'active', now() - CASE WHEN n % 10 = 0 THEN INTERVAL '1 month' "
+                        + "ELSE INTERVAL '10 days' END FROM generate_series(1, ?) AS n",
+                seededCustomer, planId, SEEDED);
+        List<UUID> renewable = jdbc.queryForList("INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                        + "SELECT ?, ?, 'active', now() - INTERVAL '10 days' FROM generate_series(1, ?) "
+                        + "RETURNING id",
+                UUID.class, renewedCustomer, planId, RENEWED);
+        List<UUID> due = jdbc.queryForList(
+                "SELECT id FROM subscription WHERE customer_id = ? AND renewed_at < now() - INTERVAL '20 days'",
+                UUID.class, seededCustomer);
+        when(publisher.publish(anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(true));
+
+        assertThat(partitioning.report().swapPending()).isTrue();
+        assertThat(partitioning.report().partitioned()).isFalse();
+
+        Map<UUID, String> expected = new ConcurrentHashMap<>();
+        // Ids written after the swap: only the partitioned table has their last version.
+        Set<UUID> writtenAfterSwap = ConcurrentHashMap.newKeySet();
+        AtomicInteger writes = new AtomicInteger();
+        List<Throwable> writerErrors = new CopyOnWriteArrayList<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            List<UUID> own = new ArrayList<>();
+            while (!stop.get()) {
+                try {
+                    int n = writes.incrementAndGet();
+                    // tableoid names the table the row went to: a partition once swapped.
+                    Map<String, Object> inserted = jdbc.queryForMap(
+                            "INSERT INTO subscription (customer_id, plan_id, status, renewed_at) "
+                            + "VALUES (?, ?, 'active', now() - INTERVAL '10 days') "
+                            + "RETURNING id, tableoid::regclass::text AS tbl",
+                            writerCustomer, planId);
+                    UUID id = (UUID) inserted.get("id");
+                    own.add(id);
+                    expected.put(id, "active");
+                    track(writtenAfterSwap, id, (String) inserted.get("tbl"));
+                    if (n % 3 == 0) {
+                        UUID paused = own.get(ThreadLocalRandom.current().nextInt(own.size()));
+                        track(writtenAfterSwap, paused, jdbc.queryForObject(
+                                "UPDATE subscription SET status = 'paused' WHERE id = ? "
+                                + "RETURNING tableoid::regclass::text", String.class, paused));
+                        expected.put(paused, "paused");
+                    }
+                    if (n % 5 == 0) {
+                        UUID deleted = own.remove(ThreadLocalRandom.current().nextInt(own.size()));
+                        track(writtenAfterSwap, deleted, jdbc.queryForObject(
+                                "DELETE FROM subscription WHERE id = ? RETURNING tableoid::regclass::text",
+                                String.class, deleted));
+                        expected.remove(deleted);
+                    }
+                } catch (RuntimeException e) {
+                    writerErrors.add(e);
+                }
+            }
+        }, "subscription-writer");
+
+        Map<UUID, Timestamp> renewedAt = new ConcurrentHashMap<>();
+        AtomicInteger renewals = new AtomicInteger();
+        AtomicInteger renewalsAfterSwap = new AtomicInteger();
+        List<Throwable> consumerErrors = new CopyOnWriteArrayList<>();
+        Thread consumer = new Thread(() -> {
+            Properties props = new Properties();
+            props.setProperty("user", postgres.getUsername());
+            props.setProperty("password", postgres.getPassword());
+            // Server-side prepared from the first execution, as the consumer's pooled
+            // connections are after a few: the same named statements run across the swap.
+            props.setProperty("prepareThreshold", "1");
+            try (Connection con = DriverManager.getConnection(postgres.getJdbcUrl(), props);
+                 PreparedStatement charge = con.prepareStatement(CONSUMER_CHARGE);
+                 PreparedStatement settle = con.prepareStatement(CONSUMER_SETTLE);
+                 PreparedStatement swapped = con.prepareStatement(
+                         "SELECT relkind = 'p' FROM pg_class WHERE relname = 'subscription'")) {
+                con.setAutoCommit(false);
+                for (int n = 0; !stop.get(); n++) {
+                    UUID subscription = renewable.get(n % RENEWED);
+                    LocalDate dueDate = LocalDate.now().plusMonths(n / RENEWED + 1);
+                    LocalDate periodEnd = dueDate.plusMonths(1);
+                    // Two transactions, like the consumer's phases around the PSP call.
+                    charge.setObject(1, renewedCustomer);
+                    charge.setObject(2, dueDate);
+                    charge.setObject(3, periodEnd);
+                    charge.setObject(4, renewedCustomer);
+                    charge.setObject(5, dueDate);
+                    charge.setObject(6, periodEnd);
+                    charge.setObject(7, subscription);
+                    charge.setObject(8, dueDate);
+                    UUID invoiceId;
+                    UUID chargeId;
+                    try (ResultSet rs = charge.executeQuery()) {
+                        rs.next();
+                        invoiceId = (UUID) rs.getObject("invoice_id");
+                        chargeId = (UUID) rs.getObject("charge_id");
+                    }
+                    con.commit();
+                    Timestamp next = Timestamp.valueOf(periodEnd.atTime(9, 0));
+                    settle.setObject(1, chargeId);
+                    settle.setObject(2, invoiceId);
+                    settle.setTimestamp(3, next);
+                    settle.setObject(4, subscription);
+                    assertThat(settle.executeUpdate()).isEqualTo(1);
+                    // Asked in the settle's transaction, which still holds its lock on the
+                    // table it updated: the swap has committed exactly when that table is
+                    // the partitioned one.
+                    boolean afterSwap;
+                    try (ResultSet rs = swapped.executeQuery()) {
+                        rs.next();
+                        afterSwap = rs.getBoolean(1);
+                    }
+                    con.commit();
+                    renewedAt.put(subscription, next);
+                    renewals.incrementAndGet();
+                    if (afterSwap) {
+                        writtenAfterSwap.add(subscription);
+                        renewalsAfterSwap.incrementAndGet();
+                    }
+                }
+            } catch (SQLException | RuntimeException | AssertionError e) {
+                consumerErrors.add(e);
+            }
+        }, "subscription-consumer");
+        writer.start();
+        consumer.start();
+        await().atMost(Duration.ofSeconds(30)).until(() -> writes.get() >= 50 && renewals.get() >= 50);
+
+        var migration = jobLauncher.run(subscriptionPartitionJob, parameters());
+
+        // A few more writes and renewals, now into the partitioned table.
+        int writesAtSwap = writes.get();
+        await().atMost(Duration.ofSeconds(30)).until(() -> !consumer.isAlive()
+                || writes.get() >= writesAtSwap + 50 && renewalsAfterSwap.get() >= 50);
+        stop.set(true);
+        writer.join();
+        consumer.join();
+
+        assertThat(migration.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(writerErrors).isEmpty();
+        assertThat(consumerErrors).isEmpty();
+        assertThat(renewalsAfterSwap.get()).isGreaterThanOrEqualTo(50);
+        assertThat(jdbc.queryForObject(
+                "SELECT relkind::text FROM pg_class WHERE oid = 'subscription'::regclass", String.class))
+                .isEqualTo("p");
+        assertThat(partitioning.partitions()).hasSize(16).first().isEqualTo("subscription_p00");
+        assertThat(jdbc.queryForObject("SELECT to_regclass('subscription_hashed') IS NULL", Boolean.class)).isTrue();
+        assertThat(jdbc.queryForObject(
+                "SELECT to_regclass('subscription_unpartitioned') IS NOT NULL", Boolean.class)).isTrue();
+        // Both foreign keys reference the partitioned table and are validated, as are the
+        // copies of renewal_outbox's constraint on its daily partitions.
+        assertThat(jdbc.queryForList("""
+                SELECT conrelid::regclass::text FROM pg_constraint
+                WHERE conname IN ('charge_subscription_id_fkey', 'renewal_outbox_subscription_id_fkey')
+                  AND conparentid = 0 AND confrelid = 'subscription'::regclass AND convalidated
+                """, String.class)).containsExactlyInAnyOrder("charge", "renewal_outbox");
+        assertThat(jdbc.queryForObject("""
+                SELECT count(*) FROM pg_constraint
+                WHERE conname IN ('charge_subscription_id_fkey', 'renewal_outbox_subscription_id_fkey')
+                  AND (NOT convalidated OR confrelid <> 'subscription'::regclass)
+                """, Long.class)).isZero();
+
+        // Row for row, the old table equals the new one except where a write came after
+        // the swap.
+        assertThat(writtenAfterSwap).isNotEmpty();
+        assertThat(jdbc.queryForObject("""
+                SELECT count(*) FROM (
+                    (TABLE subscription_unpartitioned EXCEPT ALL TABLE subscription)
+                    UNION ALL
+                    (TABLE subscription EXCEPT ALL TABLE subscription_unpartitioned)
+                ) diff
+                WHERE diff.id <> ALL (?::uuid[])
+                """, Long.class, uuidArray(writtenAfterSwap))).isZero();
+
+        // The consumer's renewals landed in the live table, before and after the swap.
+        Map<UUID, Timestamp> actualRenewedAt = new HashMap<>();
+        jdbc.query("SELECT id, renewed_at FROM subscription WHERE customer_id = ?",
+                rs -> {
+                    actualRenewedAt.put((UUID) rs.getObject("id"), rs.getTimestamp("renewed_at"));
+                }, renewedCustomer);
+        assertThat(actualRenewedAt).isEqualTo(renewedAt);
+        assertThat(jdbc.queryForObject("""
+                SELECT count(*) FROM charge c JOIN subscription s ON s.id = c.subscription_id
+                WHERE s.customer_id = ? AND c.status = 'settled'
+                """, Long.class, renewedCustomer)).isEqualTo(renewals.get());
+
+        Map<UUID, String> actual = new HashMap<>();
+        jdbc.query("SELECT id, status FROM subscription WHERE customer_id = ?",
+                rs -> {
+                    actual.put((UUID) rs.getObject("id"), rs.getString("status"));
+                }, writerCustomer);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM subscription WHERE customer_id = ?", Long.class, seededCustomer))
+                .isEqualTo(SEEDED);
+        // The due-date trigger moved with the name: the writer's post-swap rows have one.
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM subscription WHERE next_due_local_date IS NULL", Long.class))
+                .isZero();
+
+        // Running the job again finds nothing to do.
+        assertThat(jobLauncher.run(subscriptionPartitionJob, parameters()).getStatus())
+                .isEqualTo(BatchStatus.COMPLETED);
+
+        var scan = jobLauncher.run(renewalJob, parameters());
+
+        assertThat(scan.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        List<StepExecution> scanPartitions = scan.getStepExecutions().stream()
+                .filter(step -> step.getStepName().startsWith("scanStep.partition:"))
+                .toList();
+        assertThat(scanPartitions).hasSize(16)
+                .allSatisfy(step -> assertThat(step.getStatus()).isEqualTo(BatchStatus.COMPLETED));
+        assertThat(scanPartitions.stream().map(step -> step.getExecutionContext().getString("scanStep.table")))
+                .containsExactlyInAnyOrderElementsOf(partitioning.partitions());
+        assertThat(jdbc.queryForList("SELECT subscription_id FROM renewal_outbox", UUID.class))
+                .containsExactlyInAnyOrderElementsOf(due);
+    }
+
+    private static void track(Set<UUID> writtenAfterSwap, UUID id, String table) {
+        if (!"subscription".equals(table)) {
+            writtenAfterSwap.add(id);
+        }
+    }
+
+    private static String uuidArray(Set<UUID> ids) {
+        return ids.stream().map(UUID::toString).collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static JobParameters parameters() {
+        return new JobParametersBuilder()
+                .addLong("run.id", ThreadLocalRandom.current().nextLong())
+                .toJobParameters();
+    }
+}
@@ -75,9 +75,9 @@ class UnroutableReturnIntegrationTest {
         );
         jdbc.update(
                 "INSERT INTO renewal_outbox (id, subscription_id, due_date, payload) VALUES "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"unroutable-a\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"unroutable-b\"}'::jsonb), "
-                        + "(?, ?, DATE '2026-01-01', '{\"probe\": \"unroutable-c\"}'::jsonb)",
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"unroutable-a\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"unroutable-b\"}', 'UTF8')), "
+                        + "(?, ?, DATE '2026-01-01', convert_to('{\"probe\": \"unroutable-c\"}', 'UTF8'))",
                 A, subscriptionA, B, subscriptionB, C, subscriptionC
         );
 
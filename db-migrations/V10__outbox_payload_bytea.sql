@@ -0,0 +1,7 @@
+-- Store each outbox payload as its exact AMQP body (R35). The scan renders the jsonb
+-- object to text once and encodes it as UTF-8; publishers send those bytes unchanged
+-- instead of rendering jsonb to a String and encoding it again per message.
+-- jsonb::text is the same rendering the JDBC driver returned before, so message bodies
+-- are byte-for-byte what they were. Rewrites every partition (V8) once.
+ALTER TABLE renewal_outbox
+  ALTER COLUMN payload TYPE bytea USING convert_to(payload::text, 'UTF8');
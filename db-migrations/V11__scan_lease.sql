@@ -0,0 +1,19 @@
+-- Leased scan ranges for the producer's app.scanDistribution=lease mode (R38). The
+-- running job seeds one row per keyspace range of its run (a Spring Batch job instance);
+-- every producer instance claims ranges, scans them page by page and completes them.
+-- Each page moves cursor_id and renews lease_until in the same transaction as its
+-- outbox inserts, so a range whose owner stops renewing resumes from its last committed
+-- page in whichever instance claims it after lease_until. Small table: a few dozen rows
+-- per run, and a run's rows are kept until the next run seeds.
+CREATE TABLE scan_lease (
+  job_instance_id bigint NOT NULL,
+  range_no integer NOT NULL,
+  cursor_id uuid NOT NULL,          -- exclusive keyset cursor; starts at the range's lower bound
+  upper_id uuid NOT NULL,           -- inclusive upper bound of the range
+  window_start date NOT NULL,       -- the run's due window, pinned for every range
+  window_end date NOT NULL,
+  owner text,                       -- the worker holding or last holding the lease
+  lease_until timestamptz,
+  completed_at timestamptz,
+  PRIMARY KEY (job_instance_id, range_no)
+);
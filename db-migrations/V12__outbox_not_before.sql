@@ -0,0 +1,20 @@
+-- Look-ahead staging (R40): the scan may insert renewals days before they are due, so
+-- every outbox row carries the earliest time it may be published. Rows the scan emits
+-- for today or earlier get now(), which is what every row had implicitly until here.
+-- The default is evaluated once for the existing rows; their unpublished ones take
+-- their created_at so the claim order among them stays as it was.
+ALTER TABLE renewal_outbox
+  ADD COLUMN not_before timestamptz NOT NULL DEFAULT now();
+
+UPDATE renewal_outbox
+SET not_before = created_at
+WHERE published_at IS NULL;
+
+-- The claim walks unpublished rows in release order and stops at the first one still
+-- in the future, so staged rows cost a claim page nothing until they are releasable.
+-- Replaces V5's (created_at, id) key; created on the parent like V8's, so every
+-- partition gets its own.
+DROP INDEX idx_renewal_outbox_claim;
+CREATE INDEX idx_renewal_outbox_claim
+  ON renewal_outbox (not_before, id)
+  WHERE published_at IS NULL;
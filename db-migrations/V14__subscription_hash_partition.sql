@@ -0,0 +1,166 @@
+-- Hash-partitioned subscription (R42), migrated without taking the table offline. This
+-- migration only prepares the move, in three stages:
+--   1. here: subscription_hashed, partitioned BY HASH (id), with subscription's columns,
+--      constraints and indexes, and a trigger on subscription that mirrors every write
+--      into it in the writing transaction;
+--   2. the producer's subscriptionPartitionJob copies the existing rows in keyset pages
+--      and verifies the copy;
+--   3. the job's swap step calls subscription_partition_swap(), which exchanges the two
+--      tables by renaming them in one short transaction.
+-- Until stage 3 runs, subscription stays the table every service reads and writes.
+-- Nothing starts stage 2 on its own: from the moment this migration is applied until
+-- someone launches subscriptionPartitionJob (POST /actuator/subscription-partition), every
+-- insert, update and delete on subscription pays for two writes, its own and the
+-- mirrored one into subscription_hashed, in the same transaction. Launch the job soon
+-- after migrating.
+CREATE TABLE subscription_hashed (LIKE subscription INCLUDING DEFAULTS)
+  PARTITION BY HASH (id);
+
+ALTER TABLE subscription_hashed
+  ADD CONSTRAINT subscription_hashed_pkey PRIMARY KEY (id);
+ALTER TABLE subscription_hashed
+  ADD CONSTRAINT subscription_hashed_customer_id_fkey FOREIGN KEY (customer_id) REFERENCES customer(id);
+ALTER TABLE subscription_hashed
+  ADD CONSTRAINT subscription_hashed_plan_id_fkey FOREIGN KEY (plan_id) REFERENCES plan(id);
+
+-- 16 partitions: ~625k rows each at the 10M target. Each is vacuumed on its own, with
+-- V13's thresholds, and the producer scans them in parallel (app.scanPartitions).
+-- Created before the secondary indexes below: a new partition gets a generated copy of
+-- every index already on the parent, ON ONLY ones included, and the named index built
+-- for it below could then no longer be attached.
+DO $$
+DECLARE
+  p text;
+BEGIN
+  FOR r IN 0..15 LOOP
+    p := format('subscription_p%s', lpad(r::text, 2, '0'));
+    EXECUTE format('CREATE TABLE %I PARTITION OF subscription_hashed FOR VALUES WITH (MODULUS 16, REMAINDER %s)', p, r);
+    EXECUTE format('ALTER TABLE %I SET (autovacuum_vacuum_scale_factor = 0.02, '
+                   'autovacuum_vacuum_insert_scale_factor = 0.02)', p);
+  END LOOP;
+END
+$$;
+
+-- subscription's secondary indexes (V3, V6, V13), created ON ONLY the parent and attached
+-- per partition, so each partition's index has a readable name in plans:
+-- subscription_p07_scan_covering rather than a generated column list.
+CREATE INDEX idx_subscription_hashed_status_renewed_at
+  ON ONLY subscription_hashed (status, renewed_at);
+CREATE INDEX idx_subscription_hashed_plan_id
+  ON ONLY subscription_hashed (plan_id);
+CREATE INDEX idx_subscription_hashed_next_due
+  ON ONLY subscription_hashed (next_due_local_date, id)
+  WHERE status = 'active';
+CREATE INDEX idx_subscription_hashed_scan_covering
+  ON ONLY subscription_hashed (id) INCLUDE (customer_id, plan_id, renewed_at)
+  WHERE status = 'active';
+
+DO $$
+DECLARE
+  p text;
+BEGIN
+  FOR r IN 0..15 LOOP
+    p := format('subscription_p%s', lpad(r::text, 2, '0'));
+    EXECUTE format('CREATE INDEX %I ON %I (status, renewed_at)', p || '_status_renewed_at', p);
+    EXECUTE format('CREATE INDEX %I ON %I (plan_id)', p || '_plan_id', p);
+    EXECUTE format('CREATE INDEX %I ON %I (next_due_local_date, id) WHERE status = ''active''', p || '_next_due', p);
+    EXECUTE format('CREATE INDEX %I ON %I (id) INCLUDE (customer_id, plan_id, renewed_at) WHERE status = ''active''',
+                   p || '_scan_covering', p);
+    EXECUTE format('ALTER INDEX idx_subscription_hashed_status_renewed_at ATTACH PARTITION %I', p || '_status_renewed_at');
+    EXECUTE format('ALTER INDEX idx_subscription_hashed_plan_id ATTACH PARTITION %I', p || '_plan_id');
+    EXECUTE format('ALTER INDEX idx_subscription_hashed_next_due ATTACH PARTITION %I', p || '_next_due');
+    EXECUTE format('ALTER INDEX idx_subscription_hashed_scan_covering ATTACH PARTITION %I', p || '_scan_covering');
+  END LOOP;
+END
+$$;
+
+-- The mirror copies each row as subscription's BEFORE trigger (V6) left it, so the
+-- copy needs no due-date trigger of its own until the swap. A write and its mirror
+-- commit or roll back together. The backfill's ON CONFLICT DO NOTHING therefore never
+-- overwrites a newer mirrored version, and its FOR KEY SHARE page lock makes a
+-- concurrent delete wait until the copied row is there to be deleted.
+CREATE FUNCTION subscription_mirror() RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  IF TG_OP = 'DELETE' OR (TG_OP = 'UPDATE' AND NEW.id <> OLD.id) THEN
+    DELETE FROM subscription_hashed WHERE id = OLD.id;
+  END IF;
+  IF TG_OP <> 'DELETE' THEN
+    INSERT INTO subscription_hashed SELECT NEW.*
+    ON CONFLICT (id) DO UPDATE SET
+      customer_id = EXCLUDED.customer_id,
+      plan_id = EXCLUDED.plan_id,
+      status = EXCLUDED.status,
+      start_at = EXCLUDED.start_at,
+      cancel_at = EXCLUDED.cancel_at,
+      renewed_at = EXCLUDED.renewed_at,
+      next_due_local_date = EXCLUDED.next_due_local_date;
+  END IF;
+  RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER subscription_mirror
+  AFTER INSERT OR UPDATE OR DELETE ON subscription
+  FOR EACH ROW EXECUTE FUNCTION subscription_mirror();
+-- ALWAYS: also under session_replication_role = replica, which bulk loaders set to skip
+-- triggers, since a skipped mirror would be a row the swap loses.
+ALTER TABLE subscription ENABLE ALWAYS TRIGGER subscription_mirror;
+
+-- Stage 3. Takes the locks with lock_timeout_ms and returns false if they are not
+-- granted in time (the caller retries), so a long transaction on subscription delays the
+-- swap instead of queueing every other session behind it. With the locks held, the
+-- swap changes only the catalog: the tables, constraints and indexes trade names, the
+-- due-date trigger moves, and the foreign keys referencing subscription are re-pointed
+-- NOT VALID (validated afterwards without blocking writes). The unpartitioned table is
+-- kept as subscription_unpartitioned. It no longer receives writes, and dropping it is
+-- left to the operator.
+CREATE FUNCTION subscription_partition_swap(lock_timeout_ms integer) RETURNS boolean
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  IF to_regclass('subscription_hashed') IS NULL THEN
+    RAISE EXCEPTION 'no subscription_hashed to swap in; subscription is already partitioned';
+  END IF;
+  PERFORM set_config('lock_timeout', lock_timeout_ms || 'ms', true);
+  BEGIN
+    LOCK TABLE subscription, subscription_hashed, charge, renewal_outbox IN ACCESS EXCLUSIVE MODE;
+  EXCEPTION WHEN lock_not_available OR deadlock_detected THEN
+    RETURN false;
+  END;
+
+  ALTER TABLE subscription RENAME TO subscription_unpartitioned;
+  ALTER TABLE subscription_unpartitioned RENAME CONSTRAINT subscription_pkey TO subscription_unpartitioned_pkey;
+  ALTER TABLE subscription_unpartitioned
+    RENAME CONSTRAINT subscription_customer_id_fkey TO subscription_unpartitioned_customer_id_fkey;
+  ALTER TABLE subscription_unpartitioned
+    RENAME CONSTRAINT subscription_plan_id_fkey TO subscription_unpartitioned_plan_id_fkey;
+  ALTER INDEX idx_subscription_status_renewed_at RENAME TO idx_subscription_unpartitioned_status_renewed_at;
+  ALTER INDEX idx_subscription_plan_id RENAME TO idx_subscription_unpartitioned_plan_id;
+  ALTER INDEX idx_subscription_next_due RENAME TO idx_subscription_unpartitioned_next_due;
+  ALTER INDEX idx_subscription_scan_covering RENAME TO idx_subscription_unpartitioned_scan_covering;
+  DROP TRIGGER subscription_mirror ON subscription_unpartitioned;
+  DROP TRIGGER subscription_next_due ON subscription_unpartitioned;
+
+  ALTER TABLE subscription_hashed RENAME TO subscription;
+  ALTER TABLE subscription RENAME CONSTRAINT subscription_hashed_pkey TO subscription_pkey;
+  ALTER TABLE subscription RENAME CONSTRAINT subscription_hashed_customer_id_fkey TO subscription_customer_id_fkey;
+  ALTER TABLE subscription RENAME CONSTRAINT subscription_hashed_plan_id_fkey TO subscription_plan_id_fkey;
+  ALTER INDEX idx_subscription_hashed_status_renewed_at RENAME TO idx_subscription_status_renewed_at;
+  ALTER INDEX idx_subscription_hashed_plan_id RENAME TO idx_subscription_plan_id;
+  ALTER INDEX idx_subscription_hashed_next_due RENAME TO idx_subscription_next_due;
+  ALTER INDEX idx_subscription_hashed_scan_covering RENAME TO idx_subscription_scan_covering;
+  CREATE TRIGGER subscription_next_due
+    BEFORE INSERT OR UPDATE OF renewed_at, plan_id ON subscription
+    FOR EACH ROW EXECUTE FUNCTION subscription_set_next_due();
+
+  ALTER TABLE charge DROP CONSTRAINT charge_subscription_id_fkey;
+  ALTER TABLE charge ADD CONSTRAINT charge_subscription_id_fkey
+    FOREIGN KEY (subscription_id) REFERENCES subscription(id) NOT VALID;
+  ALTER TABLE renewal_outbox DROP CONSTRAINT renewal_outbox_subscription_id_fkey;
+  ALTER TABLE renewal_outbox ADD CONSTRAINT renewal_outbox_subscription_id_fkey
+    FOREIGN KEY (subscription_id) REFERENCES subscription(id) NOT VALID;
+  RETURN true;
+END
+$$;
@@ -0,0 +1,9 @@
+-- publishStep claims unpublished rows in (created_at, id) order. Matching the partial
+-- index's key order lets every claim page be a bounded index range scan instead of a
+-- sort of the whole unpublished backlog. The leading created_at column still serves
+-- the old "anything to publish?" probe, so the created_at-only index goes.
+CREATE INDEX idx_renewal_outbox_claim
+  ON renewal_outbox (created_at, id)
+  WHERE published_at IS NULL;
+
+DROP INDEX idx_renewal_outbox_unpublished;
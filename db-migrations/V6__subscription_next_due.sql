@@ -0,0 +1,65 @@
+-- Maintained due date (R30). next_due_local_date is the local calendar date on which
+-- the subscription's next renewal falls: renewed_at + plan interval, with the month or
+-- year added in the billing timezone. It is written by trigger on every insert and on
+-- every renewed_at or plan change, so both the producer's seeds and the consumer's
+-- finalization keep it current without code changes. A plan interval or timezone change
+-- does not fire the trigger; the producer's dueIndexRebuildJob recomputes in bulk.
+
+-- The billing timezone the trigger computes in; the rebuild job aligns it with the
+-- producer's app.timezone.
+CREATE TABLE billing_settings (
+  singleton boolean PRIMARY KEY DEFAULT TRUE CHECK (singleton),
+  timezone  text NOT NULL
+);
+INSERT INTO billing_settings (timezone) VALUES ('Europe/Brussels');
+
+-- Shared by the trigger, the scan's in-page due filter, the rebuild job, and the checker,
+-- so all four agree on what "due" means.
+-- The month or year is added to the local time, not to renewed_at. The scan before R30
+-- added it first and converted after, which did the calendar arithmetic in the session
+-- TimeZone. That gives the same date when the session runs in the billing zone, as
+-- compose sets it (TZ). In any other session it can differ by a day around month ends and
+-- local midnight: 2026-10-15 22:30 UTC is 00:30 on the 16th in Brussels, due 2026-11-16
+-- here but 2026-11-15 in a UTC session. A stored column written from several sessions
+-- needs one answer, so this one does not depend on the session.
+CREATE FUNCTION renewal_due_local_date(renewed_at timestamptz, plan_interval text, zone text)
+RETURNS date
+LANGUAGE sql
+STABLE
+AS $$
+  SELECT (CASE WHEN plan_interval = 'year'
+              THEN (renewed_at AT TIME ZONE zone) + INTERVAL '1 year'
+              ELSE (renewed_at AT TIME ZONE zone) + INTERVAL '1 month'
+          END)::date
+$$;
+
+ALTER TABLE subscription ADD COLUMN next_due_local_date date;
+
+CREATE FUNCTION subscription_set_next_due() RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+  IF NEW.renewed_at IS NULL THEN
+    NEW.next_due_local_date := NULL;
+  ELSE
+    NEW.next_due_local_date := renewal_due_local_date(
+        NEW.renewed_at,
+        (SELECT interval FROM plan WHERE id = NEW.plan_id),
+        (SELECT timezone FROM billing_settings));
+  END IF;
+  RETURN NEW;
+END
+$$;
+
+CREATE TRIGGER subscription_next_due
+  BEFORE INSERT OR UPDATE OF renewed_at, plan_id ON subscription
+  FOR EACH ROW EXECUTE FUNCTION subscription_set_next_due();
+
+-- Existing rows keep a NULL next_due_local_date here: a backfill in this migration would
+-- rewrite every subscription row in one transaction. dueIndexRebuildJob fills them in
+-- keyset pages and must run before app.scanSource is switched to due-index.
+
+-- Today's due slice in keyset order.
+CREATE INDEX idx_subscription_next_due
+  ON subscription (next_due_local_date, id)
+  WHERE status = 'active';
@@ -0,0 +1,24 @@
+-- Time-ordered keys for new rows. gen_random_uuid() (v4) scatters every insert across
+-- the whole primary-key B-tree and leaves PK order unrelated to heap order, so the
+-- scan's "PK-ordered" pass visits the heap at random. uuidv7() (Postgres 18) leads
+-- with a millisecond timestamp: inserts append to the right edge of the index and
+-- PK order follows insertion order.
+--
+-- Migration path: defaults only. Existing rows keep their v4 ids — rewriting primary
+-- keys would cascade through every foreign key. Both versions share one uuid ordering,
+-- so keyset cursors see every row once; v7 ids just cluster in a narrow band of the
+-- keyspace (the scan partitioner cuts on sampled keys for that reason). Old rows keep
+-- their random heap order until a maintenance window runs
+-- CLUSTER subscription USING subscription_pkey (ACCESS EXCLUSIVE for its duration).
+ALTER TABLE customer       ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE mandate        ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE payment_method ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE plan           ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE subscription   ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE invoice        ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE charge         ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE payment        ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE bank_tx        ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE recon_match    ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE ledger_entry   ALTER COLUMN id SET DEFAULT uuidv7();
+ALTER TABLE renewal_outbox ALTER COLUMN id SET DEFAULT uuidv7();
@@ -0,0 +1,74 @@
+-- renewal_outbox becomes a daily range-partitioned table on due_date (R32). The scan
+-- inserts one due_date per night, so each night's rows, their slice of
+-- uniq_outbox_sub_due, and their slice of the claim index live in one small partition,
+-- and retention is a DETACH + DROP instead of a bulk DELETE. The producer's
+-- outboxPartitionStep pre-creates partitions ahead of the scan and drops fully
+-- published ones past app.outboxRetentionDays.
+--
+-- Partitioned tables need the partition key in every unique constraint, so the primary
+-- key widens to (id, due_date); uniq_outbox_sub_due already contains due_date.
+
+-- Creates the daily partition for d unless it exists. A date whose rows already sit in
+-- the default partition is left there (attaching would fail on those rows); returns
+-- whether the partition exists afterwards.
+CREATE FUNCTION renewal_outbox_ensure_partition(d date) RETURNS boolean
+LANGUAGE plpgsql
+AS $$
+DECLARE
+  part text := 'renewal_outbox_p' || to_char(d, 'YYYYMMDD');
+BEGIN
+  IF to_regclass(part) IS NOT NULL THEN
+    RETURN TRUE;
+  END IF;
+  IF to_regclass('renewal_outbox_default') IS NOT NULL
+     AND EXISTS (SELECT 1 FROM renewal_outbox_default WHERE due_date = d) THEN
+    RAISE NOTICE 'renewal_outbox rows for % are in the default partition; not creating %', d, part;
+    RETURN FALSE;
+  END IF;
+  EXECUTE format('CREATE TABLE %I PARTITION OF renewal_outbox FOR VALUES FROM (%L) TO (%L)',
+                 part, d, d + 1);
+  RETURN TRUE;
+END
+$$;
+
+ALTER TABLE renewal_outbox RENAME TO renewal_outbox_v3;
+
+CREATE TABLE renewal_outbox (
+  id UUID NOT NULL DEFAULT uuidv7(),
+  subscription_id UUID NOT NULL,
+  due_date date NOT NULL,
+  payload jsonb NOT NULL,
+  created_at timestamptz NOT NULL DEFAULT now(),
+  published_at timestamptz
+) PARTITION BY RANGE (due_date);
+
+-- Catches due dates without a daily partition (hand-inserted or far-future rows) so an
+-- insert never fails for want of a partition.
+CREATE TABLE renewal_outbox_default PARTITION OF renewal_outbox DEFAULT;
+
+-- Daily partitions for every due date already in the outbox, plus the coming week.
+SELECT renewal_outbox_ensure_partition(d::date)
+FROM (
+  SELECT DISTINCT due_date AS d FROM renewal_outbox_v3
+  UNION
+  SELECT generate_series(current_date, current_date + 7, INTERVAL '1 day')::date
+) dates;
+
+INSERT INTO renewal_outbox (id, subscription_id, due_date, payload, created_at, published_at)
+SELECT id, subscription_id, due_date, payload, created_at, published_at
+FROM renewal_outbox_v3;
+
+DROP TABLE renewal_outbox_v3;
+
+-- Constraints and indexes after the copy; created on the parent, so every current and
+-- future partition gets its own.
+ALTER TABLE renewal_outbox
+  ADD CONSTRAINT renewal_outbox_pkey PRIMARY KEY (id, due_date);
+ALTER TABLE renewal_outbox
+  ADD CONSTRAINT uniq_outbox_sub_due UNIQUE (subscription_id, due_date);
+ALTER TABLE renewal_outbox
+  ADD CONSTRAINT renewal_outbox_subscription_id_fkey
+  FOREIGN KEY (subscription_id) REFERENCES subscription(id);
+CREATE INDEX idx_renewal_outbox_claim
+  ON renewal_outbox (created_at, id)
+  WHERE published_at IS NULL;
@@ -0,0 +1,8 @@
+-- Logical-replication source for the producer's relay publish mode (R33). Inserts only:
+-- the relay publishes new rows, and its own published_at marks must not echo back.
+-- publish_via_partition_root makes every daily partition (V8) report as renewal_outbox.
+-- The publication is inert until a slot reads it; the relay creates its slot on start,
+-- which needs wal_level=logical (set by compose).
+CREATE PUBLICATION renewal_outbox_pub
+  FOR TABLE renewal_outbox
+  WITH (publish = 'insert', publish_via_partition_root = true);
@@ -0,0 +1,13 @@
+{
+  "priority": 1,
+  "request": {
+    "method": "POST",
+    "urlPath": "/psp/charges/batch"
+  },
+  "response": {
+    "status": 200,
+    "headers": { "Content-Type": "application/json" },
+    "body": "{\"results\":[{{#each (jsonPath request.body '$.charges') as |charge|}}{\"idempotency_key\":\"{{charge.idempotency_key}}\",{{#matches charge.subscription_id '^.*[__PSP_FAIL_HEX__]$'}}\"status\":\"declined\",\"reason\":\"card_declined\"{{else}}\"status\":\"succeeded\"{{/matches}}}{{#unless @last}},{{/unless}}{{/each}}]}",
+    "transformers": ["response-template"]
+  }
+}
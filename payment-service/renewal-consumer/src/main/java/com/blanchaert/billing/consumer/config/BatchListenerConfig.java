@@ -0,0 +1,43 @@
+package com.blanchaert.billing.consumer.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Container factory for {@code renewal.listener.mode=batch}. The container hands the
+ * listener up to {@code batch.size} deliveries at once and leaves acknowledgement to it
+ * (MANUAL), because one batch ends in per-delivery outcomes: acked, or rejected to the DLQ.
+ * Stateless retry moves from the container advice chain into
+ * {@link ListenerRetryConfig#listenerRetryTemplate}, which the listener drives around the
+ * set-based call.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "renewal.listener", name = "mode", havingValue = "batch")
+public class BatchListenerConfig {
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            ListenerProperties listener) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        int size = listener.batch().size();
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(size);
+        factory.setBatchReceiveTimeout(listener.batch().receiveTimeoutMs());
+        // A batch cannot fill from a prefetch smaller than itself.
+        factory.setPrefetchCount(Math.max(250, size));
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        // Retry wraps processBatch in the listener instead; an interceptor here would
+        // retry the whole batch including deliveries that were already rejected.
+        factory.setAdviceChain();
+        return factory;
+    }
+}
@@ -0,0 +1,17 @@
+package com.blanchaert.billing.consumer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "renewal.commit")
+public record CommitProperties(Mode mode, Group group) {
+
+    public enum Mode {
+        // Each phase commits its own transaction on the listener thread (default).
+        PER_PHASE,
+        // Phase work from concurrent listener threads is queued and committed together.
+        GROUP
+    }
+
+    public record Group(int maxSize, long maxWaitMs) {
+    }
+}
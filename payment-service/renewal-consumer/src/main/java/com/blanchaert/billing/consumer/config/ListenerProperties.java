@@ -0,0 +1,24 @@
+package com.blanchaert.billing.consumer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "renewal.listener")
+public record ListenerProperties(Mode mode, Batch batch, Virtual virtual) {
+
+    public enum Mode {
+        // One delivery per listener invocation through BillingService.process (default).
+        SINGLE,
+        // Up to batch.size deliveries per invocation through BillingService.processBatch,
+        // acked together after the batch's finalization commits.
+        BATCH,
+        // Each delivery processed on its own virtual thread, up to virtual.max-in-flight at
+        // once, acked when its processing completes (Java 21).
+        VIRTUAL
+    }
+
+    public record Batch(int size, long receiveTimeoutMs) {
+    }
+
+    public record Virtual(int maxInFlight) {
+    }
+}
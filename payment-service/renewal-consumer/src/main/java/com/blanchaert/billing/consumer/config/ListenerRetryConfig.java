@@ -1,12 +1,19 @@
 package com.blanchaert.billing.consumer.config;
 
+import com.blanchaert.billing.consumer.psp.PspUnavailableException;
 import com.blanchaert.billing.consumer.service.InvalidRenewalMessageException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.rabbit.retry.RejectAndDontRequeueRecoverer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.boot.autoconfigure.amqp.RabbitRetryTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
 
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -14,16 +21,52 @@ public class ListenerRetryConfig {
 
     @Bean
     public RabbitRetryTemplateCustomizer listenerRetryTemplateCustomizer(
-            @Value("${spring.rabbitmq.listener.simple.retry.max-attempts}") int maxAttempts) {
+            @Value("${spring.rabbitmq.listener.simple.retry.max-attempts}") int maxAttempts,
+            RetryProperties retry) {
         return (target, retryTemplate) -> {
             if (target == RabbitRetryTemplateCustomizer.Target.LISTENER) {
-                // Deterministic contract violations cannot succeed on redelivery, so skip retry.
+                // Deterministic contract violations cannot succeed on redelivery, so skip retry;
+                // an open PSP circuit is not retried here either but requeued (recoverer below).
+                // Delayed mode retries through the tier queues (RetryRouter), never in-thread.
                 retryTemplate.setRetryPolicy(new SimpleRetryPolicy(
-                        maxAttempts,
-                        Map.of(InvalidRenewalMessageException.class, false),
+                        retry.delayed() ? 1 : maxAttempts,
+                        Map.of(InvalidRenewalMessageException.class, false,
+                                PspUnavailableException.class, false),
                         true,
                         true));
             }
         };
     }
+
+    /**
+     * Replaces Boot's default reject-and-dead-letter recoverer so a delivery that failed
+     * on an open PSP circuit goes back to the queue instead of the DLQ; the container is
+     * being paused meanwhile (RenewalContainerControl).
+     */
+    @Bean
+    public MessageRecoverer listenerMessageRecoverer() {
+        RejectAndDontRequeueRecoverer reject = new RejectAndDontRequeueRecoverer();
+        return (message, cause) -> {
+            if (PspUnavailableException.isCause(cause)) {
+                throw new ImmediateRequeueAmqpException("PSP unavailable, requeueing renewal", cause);
+            }
+            reject.recover(message, cause);
+        };
+    }
+
+    /**
+     * The same retry budget for listeners that ack manually (batch and virtual modes) and
+     * therefore run without the container's retry interceptor.
+     */
+    @Bean
+    public RetryTemplate listenerRetryTemplate(RabbitProperties rabbit, RetryProperties delayedRetry) {
+        RabbitProperties.ListenerRetry retry = rabbit.getListener().getSimple().getRetry();
+        // In delayed mode failures go to the RetryRouter, which republishes to the delay tiers.
+        return RetryTemplate.builder()
+                .maxAttempts(delayedRetry.delayed() ? 1 : retry.getMaxAttempts())
+                .exponentialBackoff(retry.getInitialInterval(), retry.getMultiplier(), retry.getMaxInterval())
+                .notRetryOn(List.of(InvalidRenewalMessageException.class, PspUnavailableException.class))
+                .traversingCauses()
+                .build();
+    }
 }
@@ -3,5 +3,23 @@ package com.blanchaert.billing.consumer.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "payment.provider")
-public record PaymentProviderProperties(String baseUrl, int timeoutMs) {
+public record PaymentProviderProperties(String baseUrl, int timeoutMs, Engine engine, int maxInFlight,
+                                        Limiter limiter, Breaker breaker, Bulk bulk) {
+
+    public enum Engine {
+        // HttpURLConnection through RestClient; blocks the caller for the whole call (default).
+        SIMPLE,
+        // java.net.http.HttpClient with keep-alive connection reuse and non-blocking sends.
+        JDK
+    }
+
+    public record Limiter(int minLimit, long latencyThresholdMs, double backoffRatio) {
+    }
+
+    public record Breaker(int failureThreshold, long openMs) {
+    }
+
+    // Batch listener charges go out as POST /psp/charges/batch of at most maxItems each.
+    public record Bulk(boolean enabled, int maxItems) {
+    }
 }
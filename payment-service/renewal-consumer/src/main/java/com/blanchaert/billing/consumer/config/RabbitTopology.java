@@ -3,11 +3,18 @@ package com.blanchaert.billing.consumer.config;
 import org.springframework.amqp.core.*;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitTopology {
+    public static final String RETRY_EXCHANGE = "billing.renewals.retry";
+
     @Bean
     public DirectExchange renewalsExchange(@Value("${rabbitmq.exchange}") String ex) {
         return ExchangeBuilder.directExchange(ex).durable(true).build();
@@ -43,4 +50,31 @@ public class RabbitTopology {
                               @Qualifier("dlx") DirectExchange dlx) {
         return BindingBuilder.bind(dlq).to(dlx).with("dlq");
     }
+
+    /**
+     * Delay tiers for {@code renewal.retry.mode=delayed}: one queue per configured delay,
+     * each with a per-queue TTL that dead-letters expired messages back through the main
+     * exchange onto the main queue. The uniform per-queue TTL keeps expiry in FIFO order.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "renewal.retry", name = "mode", havingValue = "delayed")
+    public Declarables retryTiers(RetryProperties retry,
+                                  @Value("${rabbitmq.exchange}") String ex,
+                                  @Value("${rabbitmq.queue}") String q,
+                                  @Value("${rabbitmq.routingKey}") String rk) {
+        DirectExchange retryExchange = ExchangeBuilder.directExchange(RETRY_EXCHANGE).durable(true).build();
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+        for (Duration delay : retry.delays()) {
+            String name = retry.tierQueue(q, delay);
+            Queue tier = QueueBuilder.durable(name)
+                    .ttl(Math.toIntExact(delay.toMillis()))
+                    .withArgument("x-dead-letter-exchange", ex)
+                    .withArgument("x-dead-letter-routing-key", rk)
+                    .build();
+            declarables.add(tier);
+            declarables.add(BindingBuilder.bind(tier).to(retryExchange).with(name));
+        }
+        return new Declarables(declarables);
+    }
 }
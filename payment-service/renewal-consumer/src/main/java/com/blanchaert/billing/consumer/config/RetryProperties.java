@@ -0,0 +1,25 @@
+package com.blanchaert.billing.consumer.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "renewal.retry")
+public record RetryProperties(Mode mode, List<Duration> delays) {
+
+    public enum Mode {
+        // Backoff sleeps inside the listener thread (spring.rabbitmq.listener.simple.retry, default).
+        IN_THREAD,
+        // Failed deliveries are republished to a TTL'd tier queue and acked; one tier per entry in delays.
+        DELAYED
+    }
+
+    public boolean delayed() {
+        return mode == Mode.DELAYED;
+    }
+
+    public String tierQueue(String mainQueue, Duration delay) {
+        return mainQueue + ".retry." + delay.toMillis() + "ms";
+    }
+}
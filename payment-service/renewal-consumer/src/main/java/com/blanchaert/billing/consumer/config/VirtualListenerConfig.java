@@ -0,0 +1,34 @@
+package com.blanchaert.billing.consumer.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Container factory for {@code renewal.listener.mode=virtual}. The container's own
+ * consumer thread only hands deliveries off to virtual threads, so acknowledgement is
+ * MANUAL and happens when each delivery's processing completes. Prefetch matches the
+ * in-flight bound so the broker keeps every permit busy; retry runs inside the virtual
+ * thread through {@link ListenerRetryConfig#listenerRetryTemplate}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "renewal.listener", name = "mode", havingValue = "virtual")
+public class VirtualListenerConfig {
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory virtualListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            ListenerProperties listener) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setPrefetchCount(listener.virtual().maxInFlight());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setAdviceChain();
+        return factory;
+    }
+}
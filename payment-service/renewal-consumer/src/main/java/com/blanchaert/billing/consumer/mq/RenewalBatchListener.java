@@ -0,0 +1,115 @@
+package com.blanchaert.billing.consumer.mq;
+
+import com.blanchaert.billing.consumer.model.RenewalRequested;
+import com.blanchaert.billing.consumer.psp.PspUnavailableException;
+import com.blanchaert.billing.consumer.service.BillingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch-mode counterpart of {@link RenewalListener}. Each delivery is parsed and validated
+ * on its own so a contract violation dead-letters alone; the valid remainder goes through
+ * {@link BillingService#processBatch} under the listener retry budget and is acked once
+ * that returns. If the batch still fails after retry, every delivery is re-run through
+ * {@link BillingService#process} so one poison message cannot dead-letter its neighbours;
+ * a delivery that fails there is handed to the {@link RetryRouter} or dead-lettered.
+ * Every delivery is acked or rejected before the method returns.
+ */
+@Component
+@ConditionalOnProperty(prefix = "renewal.listener", name = "mode", havingValue = "batch")
+public class RenewalBatchListener {
+    private static final Logger log = LoggerFactory.getLogger(RenewalBatchListener.class);
+
+    private final ObjectMapper om;
+    private final BillingService billing;
+    private final RetryTemplate retryTemplate;
+    private final RetryRouter retryRouter;
+
+    public RenewalBatchListener(ObjectMapper om, BillingService billing, RetryTemplate retryTemplate,
+                                RetryRouter retryRouter) {
+        this.om = om;
+        this.billing = billing;
+        this.retryTemplate = retryTemplate;
+        this.retryRouter = retryRouter;
+    }
+
+    @RabbitListener(id = "renewal", queues = "${rabbitmq.queue}",
+            containerFactory = "batchListenerContainerFactory")
+    public void onBatch(List<Message> messages, Channel channel) throws IOException {
+        List<Delivery> valid = new ArrayList<>(messages.size());
+        for (Message msg : messages) {
+            long tag = msg.getMessageProperties().getDeliveryTag();
+            try {
+                RenewalRequested evt = om.readValue(msg.getBody(), RenewalRequested.class);
+                billing.validate(evt);
+                valid.add(new Delivery(msg, evt));
+            } catch (Exception e) {
+                log.warn("Rejecting renewal message {} to the DLQ: {}", tag, e.getMessage());
+                channel.basicReject(tag, false);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        List<RenewalRequested> events = valid.stream().map(Delivery::event).toList();
+        try {
+            retryTemplate.execute(context -> {
+                billing.processBatch(events);
+                return null;
+            });
+        } catch (Exception e) {
+            if (PspUnavailableException.isCause(e)) {
+                log.warn("PSP unavailable, requeueing batch of {} renewals", events.size());
+                for (Delivery delivery : valid) {
+                    channel.basicNack(delivery.tag(), false, true);
+                }
+                return;
+            }
+            log.warn("Batch of {} renewals failed after retry, falling back to per-message processing",
+                    events.size(), e);
+            processOneByOne(valid, channel);
+            return;
+        }
+        for (Delivery delivery : valid) {
+            channel.basicAck(delivery.tag(), false);
+        }
+    }
+
+    private void processOneByOne(List<Delivery> deliveries, Channel channel) throws IOException {
+        for (Delivery delivery : deliveries) {
+            try {
+                billing.process(delivery.event());
+                channel.basicAck(delivery.tag(), false);
+            } catch (Exception e) {
+                if (PspUnavailableException.isCause(e)) {
+                    channel.basicNack(delivery.tag(), false, true);
+                    continue;
+                }
+                if (retryRouter.scheduleRetry(delivery.message(), e)) {
+                    channel.basicAck(delivery.tag(), false);
+                    continue;
+                }
+                log.warn("Rejecting renewal {} to the DLQ", delivery.event().idempotency_key(), e);
+                channel.basicReject(delivery.tag(), false);
+            }
+        }
+    }
+
+    private record Delivery(Message message, RenewalRequested event) {
+        long tag() {
+            return message.getMessageProperties().getDeliveryTag();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.blanchaert.billing.consumer.mq;
+
+import com.blanchaert.billing.consumer.psp.PspCircuitStateChanged;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stops the {@code renewal} listener container while the PSP circuit is open and starts
+ * it again when the breaker goes half-open. Transitions are usually published from a
+ * listener thread, and stopping a container waits for its listener threads, so the
+ * container is driven from a dedicated thread in transition order.
+ */
+@Component
+public class RenewalContainerControl implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(RenewalContainerControl.class);
+
+    private final RabbitListenerEndpointRegistry registry;
+    private final ExecutorService control = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "renewal-container-control");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RenewalContainerControl(RabbitListenerEndpointRegistry registry) {
+        this.registry = registry;
+    }
+
+    @EventListener
+    public void onCircuitStateChanged(PspCircuitStateChanged event) {
+        control.execute(() -> {
+            MessageListenerContainer container = registry.getListenerContainer("renewal");
+            if (container == null) {
+                return;
+            }
+            switch (event.state()) {
+                case OPEN -> {
+                    log.warn("Pausing renewal listener while the PSP circuit is open");
+                    container.stop();
+                }
+                case HALF_OPEN, CLOSED -> {
+                    if (!container.isRunning()) {
+                        log.info("Resuming renewal listener (PSP circuit {})", event.state());
+                        container.start();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        control.shutdownNow();
+    }
+}
@@ -5,22 +5,30 @@ import com.blanchaert.billing.consumer.service.BillingService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(prefix = "renewal.listener", name = "mode", havingValue = "single", matchIfMissing = true)
 public class RenewalListener {
     private final ObjectMapper om;
     private final BillingService billing;
+    private final RetryRouter retryRouter;
 
-    public RenewalListener(ObjectMapper om, BillingService billing) {
+    public RenewalListener(ObjectMapper om, BillingService billing, RetryRouter retryRouter) {
         this.om = om;
         this.billing = billing;
+        this.retryRouter = retryRouter;
     }
 
     @RabbitListener(id = "renewal", queues = "${rabbitmq.queue}")
     public void onMessage(Message msg) throws Exception {
-        RenewalRequested evt = om.readValue(msg.getBody(),
-                RenewalRequested.class);
-        billing.process(evt);
+        try {
+            RenewalRequested evt = om.readValue(msg.getBody(),
+                    RenewalRequested.class);
+            billing.process(evt);
+        } catch (Exception e) {
+            retryRouter.route(msg, e);
+        }
     }
 }
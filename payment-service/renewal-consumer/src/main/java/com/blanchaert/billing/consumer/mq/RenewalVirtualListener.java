@@ -0,0 +1,130 @@
+package com.blanchaert.billing.consumer.mq;
+
+import com.blanchaert.billing.consumer.config.ListenerProperties;
+import com.blanchaert.billing.consumer.model.RenewalRequested;
+import com.blanchaert.billing.consumer.psp.PspUnavailableException;
+import com.blanchaert.billing.consumer.service.BillingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Virtual-thread counterpart of {@link RenewalListener}. The container thread parses
+ * nothing: it takes an in-flight permit (blocking when {@code virtual.max-in-flight}
+ * deliveries are outstanding, which is the backpressure) and starts a virtual thread that
+ * processes the delivery under the listener retry budget, then acks it — or hands it to
+ * the {@link RetryRouter}, or rejects it to the DLQ. Blocking PSP and JDBC calls park the
+ * virtual thread, not an OS thread; database work is additionally bounded by the
+ * connection pool in {@code CommitPhases}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "renewal.listener", name = "mode", havingValue = "virtual")
+public class RenewalVirtualListener implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(RenewalVirtualListener.class);
+
+    private final ObjectMapper om;
+    private final BillingService billing;
+    private final RetryTemplate retryTemplate;
+    private final RetryRouter retryRouter;
+    private final Semaphore inFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public RenewalVirtualListener(ObjectMapper om, BillingService billing, RetryTemplate retryTemplate,
+                                  RetryRouter retryRouter, ListenerProperties listener, MeterRegistry meters) {
+        this.om = om;
+        this.billing = billing;
+        this.retryTemplate = retryTemplate;
+        this.retryRouter = retryRouter;
+        int max = listener.virtual().maxInFlight();
+        this.inFlight = new Semaphore(max);
+        // Bound to the semaphore, not to this listener, which is still under construction.
+        Gauge.builder("renewal.listener.in.flight", inFlight, permits -> max - permits.availablePermits())
+                .description("Deliveries being processed on virtual threads")
+                .register(meters);
+    }
+
+    @RabbitListener(id = "renewal", queues = "${rabbitmq.queue}",
+            containerFactory = "virtualListenerContainerFactory")
+    public void onMessage(Message msg, Channel channel) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    handle(msg, channel);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void handle(Message msg, Channel channel) {
+        long tag = msg.getMessageProperties().getDeliveryTag();
+        try {
+            try {
+                RenewalRequested evt = om.readValue(msg.getBody(), RenewalRequested.class);
+                retryTemplate.execute(context -> {
+                    billing.process(evt);
+                    return null;
+                });
+            } catch (Exception e) {
+                if (PspUnavailableException.isCause(e)) {
+                    requeue(channel, tag);
+                    return;
+                }
+                if (!retryRouter.scheduleRetry(msg, e)) {
+                    log.warn("Rejecting renewal message {} to the DLQ", tag, e);
+                    reject(channel, tag);
+                    return;
+                }
+            }
+            ack(channel, tag);
+        } catch (IOException | RuntimeException e) {
+            // The channel is gone or the retry republish failed: the broker redelivers the
+            // unacked message, and the unique constraints absorb the repeat work.
+            log.warn("Could not settle renewal message {}; leaving it to redelivery", tag, e);
+        }
+    }
+
+    // Channel methods are not meant for concurrent callers; virtual threads settle one at a time.
+    private static void ack(Channel channel, long tag) throws IOException {
+        synchronized (channel) {
+            channel.basicAck(tag, false);
+        }
+    }
+
+    private static void requeue(Channel channel, long tag) throws IOException {
+        synchronized (channel) {
+            channel.basicNack(tag, false, true);
+        }
+    }
+
+    private static void reject(Channel channel, long tag) throws IOException {
+        synchronized (channel) {
+            channel.basicReject(tag, false);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Let in-flight deliveries finish; any that cannot ack on a closed channel are redelivered.
+        executor.close();
+    }
+}
@@ -0,0 +1,112 @@
+package com.blanchaert.billing.consumer.mq;
+
+import com.blanchaert.billing.consumer.config.RabbitTopology;
+import com.blanchaert.billing.consumer.config.RetryProperties;
+import com.blanchaert.billing.consumer.psp.PspUnavailableException;
+import com.blanchaert.billing.consumer.service.InvalidRenewalMessageException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Decides what happens to a delivery whose processing failed. In
+ * {@code renewal.retry.mode=delayed} a retryable failure is republished to the delay
+ * tier for its attempt with the incremented {@value #ATTEMPT_HEADER} header, and the
+ * caller acks the original, so the listener thread goes straight back to fresh work.
+ * Contract violations, unparseable bodies, and deliveries past the last tier go to the
+ * DLQ. In {@code in-thread} mode nothing is republished. In every mode a delivery that
+ * failed because the PSP circuit is open is requeued untouched.
+ */
+@Component
+public class RetryRouter {
+    static final String ATTEMPT_HEADER = "x-renewal-attempt";
+    private static final long CONFIRM_TIMEOUT_MS = 5000;
+    private static final Logger log = LoggerFactory.getLogger(RetryRouter.class);
+
+    private final RabbitTemplate rabbit;
+    private final RetryProperties retry;
+    private final String queue;
+    private final Counter scheduled;
+
+    public RetryRouter(RabbitTemplate rabbit, RetryProperties retry,
+                       @Value("${rabbitmq.queue}") String queue, MeterRegistry meters) {
+        this.rabbit = rabbit;
+        this.retry = retry;
+        this.queue = queue;
+        this.scheduled = Counter.builder("renewals.retry.scheduled")
+                .description("Failed renewal deliveries republished to a delay tier")
+                .register(meters);
+    }
+
+    /**
+     * Single-listener entry point: returns normally when a retry was scheduled (the
+     * container then acks), otherwise throws so the container rejects or, in
+     * {@code in-thread} mode, retries as before.
+     */
+    public void route(Message msg, Exception failure) throws Exception {
+        if (PspUnavailableException.isCause(failure)) {
+            throw new ImmediateRequeueAmqpException("PSP unavailable, requeueing renewal", failure);
+        }
+        if (!retry.delayed()) {
+            throw failure;
+        }
+        if (!scheduleRetry(msg, failure)) {
+            throw new AmqpRejectAndDontRequeueException("Dead-lettering renewal after "
+                    + attempt(msg) + " delayed retries", failure);
+        }
+    }
+
+    /**
+     * Republishes {@code msg} to its next delay tier and waits for the broker confirm.
+     * Returns false when the delivery must be dead-lettered instead: not in delayed mode,
+     * a deterministic failure, or no tier left.
+     */
+    public boolean scheduleRetry(Message msg, Exception failure) {
+        if (!retry.delayed() || !isRetryable(failure) || PspUnavailableException.isCause(failure)) {
+            return false;
+        }
+        int attempt = attempt(msg);
+        if (attempt >= retry.delays().size()) {
+            return false;
+        }
+        Duration delay = retry.delays().get(attempt);
+        Message copy = MessageBuilder.fromMessage(msg)
+                .setHeader(ATTEMPT_HEADER, attempt + 1)
+                .build();
+        // The original is acked once this returns, so the copy must be on the broker first.
+        rabbit.invoke(ops -> {
+            ops.send(RabbitTopology.RETRY_EXCHANGE, retry.tierQueue(queue, delay), copy);
+            ops.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+            return null;
+        });
+        scheduled.increment();
+        log.info("Renewal delivery failed ({}), retry {} scheduled in {}",
+                failure.getClass().getSimpleName(), attempt + 1, delay);
+        return true;
+    }
+
+    private static boolean isRetryable(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof InvalidRenewalMessageException || t instanceof JsonProcessingException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int attempt(Message msg) {
+        Object value = msg.getMessageProperties().getHeader(ATTEMPT_HEADER);
+        return value instanceof Number n ? n.intValue() : 0;
+    }
+}
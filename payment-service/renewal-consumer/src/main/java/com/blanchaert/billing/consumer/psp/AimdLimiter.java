@@ -0,0 +1,107 @@
+package com.blanchaert.billing.consumer.psp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Additive-increase/multiplicative-decrease bound on concurrent PSP calls. A call that
+ * completes under the latency threshold grows the limit by {@code 1/limit} (about one
+ * per full window of calls); a slow call or a provider error multiplies it by the
+ * backoff ratio. The limit floats between {@code minLimit} and {@code maxLimit}, and
+ * can be capped temporarily (a half-open circuit probes with one call).
+ */
+final class AimdLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long thresholdNanos;
+    private final double backoffRatio;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int cap = Integer.MAX_VALUE;
+    private int inFlight;
+
+    AimdLimiter(int minLimit, int maxLimit, long latencyThresholdMs, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.backoffRatio = backoffRatio;
+        this.limit = this.maxLimit;
+    }
+
+    void acquire() {
+        lock.lock();
+        try {
+            while (inFlight >= effectiveLimit()) {
+                available.awaitUninterruptibly();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Releases a call that completed, adjusting the limit by its latency and outcome. */
+    void release(long latencyNanos, boolean providerError) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (providerError || latencyNanos > thresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Releases a call that never reached the provider; the limit is unchanged. */
+    void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void capAt(int maxCalls) {
+        lock.lock();
+        try {
+            cap = maxCalls;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return effectiveLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int maxLimit() {
+        return maxLimit;
+    }
+
+    private int effectiveLimit() {
+        return Math.max(1, Math.min((int) limit, cap));
+    }
+}
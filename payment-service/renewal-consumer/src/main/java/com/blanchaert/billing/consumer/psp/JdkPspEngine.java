@@ -0,0 +1,107 @@
+package com.blanchaert.billing.consumer.psp;
+
+import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * JDK {@link HttpClient} over HTTP/1.1: connections are kept alive and reused from the
+ * client's pool, and {@code sendAsync} frees the caller while the charge is in flight.
+ * The number of pooled connections is bounded by {@link PspClient}'s in-flight limit.
+ */
+class JdkPspEngine implements PspEngine {
+    private final HttpClient http;
+    private final ObjectMapper om;
+    private final URI chargesUri;
+    private final URI bulkChargesUri;
+    private final Duration timeout;
+
+    JdkPspEngine(PaymentProviderProperties props, ObjectMapper om) {
+        this.timeout = Duration.ofMillis(props.timeoutMs());
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.om = om;
+        this.chargesUri = under(props.baseUrl(), "psp/charges");
+        this.bulkChargesUri = under(props.baseUrl(), "psp/charges/batch");
+    }
+
+    // Appends to the base URL's path, as RestClient's baseUrl does for SimplePspEngine; an
+    // absolute "/psp/..." would replace it.
+    private static URI under(String baseUrl, String path) {
+        return URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/").resolve(path);
+    }
+
+    @Override
+    public CompletableFuture<PspChargeOutcome> charge(PspClient.ChargeRequest request) {
+        return http.sendAsync(post(chargesUri, request), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(this::outcomeOf)
+                .exceptionally(JdkPspEngine::providerError);
+    }
+
+    @Override
+    public CompletableFuture<List<PspChargeOutcome>> chargeAll(List<PspClient.ChargeRequest> requests) {
+        return http.sendAsync(post(bulkChargesUri, new PspClient.BulkChargeRequest(requests)),
+                        HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> outcomesOf(requests, response))
+                .exceptionally(failure -> Collections.nCopies(requests.size(), providerError(failure)));
+    }
+
+    private HttpRequest post(URI uri, Object body) {
+        try {
+            return HttpRequest.newBuilder(uri)
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(om.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private PspChargeOutcome outcomeOf(HttpResponse<byte[]> response) {
+        if (response.statusCode() / 100 != 2) {
+            return PspChargeOutcome.failure("provider_error:http_" + response.statusCode());
+        }
+        try {
+            byte[] body = response.body();
+            return PspClient.outcomeOf(body.length == 0 ? null : om.readValue(body, PspClient.ChargeResponse.class));
+        } catch (IOException e) {
+            return PspChargeOutcome.failure("provider_error:" + e.getClass().getSimpleName());
+        }
+    }
+
+    private List<PspChargeOutcome> outcomesOf(List<PspClient.ChargeRequest> requests, HttpResponse<byte[]> response) {
+        if (response.statusCode() / 100 != 2) {
+            return Collections.nCopies(requests.size(),
+                    PspChargeOutcome.failure("provider_error:http_" + response.statusCode()));
+        }
+        try {
+            byte[] body = response.body();
+            return PspClient.outcomesOf(requests,
+                    body.length == 0 ? null : om.readValue(body, PspClient.BulkChargeResponse.class));
+        } catch (IOException e) {
+            return Collections.nCopies(requests.size(),
+                    PspChargeOutcome.failure("provider_error:" + e.getClass().getSimpleName()));
+        }
+    }
+
+    private static PspChargeOutcome providerError(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        return PspChargeOutcome.failure("provider_error:" + cause.getClass().getSimpleName());
+    }
+}
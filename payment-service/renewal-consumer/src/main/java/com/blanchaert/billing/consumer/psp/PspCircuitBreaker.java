@@ -0,0 +1,115 @@
+package com.blanchaert.billing.consumer.psp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Consecutive-provider-error breaker. Declines are answers, not failures, and reset the
+ * count like successes do. After {@code failureThreshold} consecutive provider errors the
+ * breaker opens and rejects calls; after {@code openMs} it goes half-open, and the next
+ * completed call closes it on success or re-opens it on a provider error.
+ */
+public final class PspCircuitBreaker {
+
+    public enum State {
+        CLOSED(0),
+        HALF_OPEN(1),
+        OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        public int code() {
+            return code;
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openMs;
+    private final Consumer<State> onTransition;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "psp-breaker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile State state = State.CLOSED;
+    private int consecutiveErrors;
+
+    PspCircuitBreaker(int failureThreshold, long openMs, Consumer<State> onTransition) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+        this.onTransition = onTransition;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    void checkAvailable() {
+        if (state == State.OPEN) {
+            throw new PspUnavailableException("PSP circuit open after " + failureThreshold
+                    + " consecutive provider errors");
+        }
+    }
+
+    void onAnswer() {
+        lock.lock();
+        try {
+            consecutiveErrors = 0;
+            if (state == State.HALF_OPEN) {
+                transition(State.CLOSED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void onProviderError() {
+        lock.lock();
+        try {
+            consecutiveErrors++;
+            if (state == State.HALF_OPEN
+                    || state == State.CLOSED && consecutiveErrors >= failureThreshold) {
+                transition(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void halfOpen() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                transition(State.HALF_OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops the half-open timer; a breaker that opens afterwards stays open. */
+    void close() {
+        timer.shutdownNow();
+    }
+
+    private void transition(State next) {
+        state = next;
+        if (next == State.OPEN) {
+            try {
+                timer.schedule(this::halfOpen, openMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closed during shutdown: nothing is left to probe the provider.
+            }
+        }
+        onTransition.accept(next);
+    }
+}
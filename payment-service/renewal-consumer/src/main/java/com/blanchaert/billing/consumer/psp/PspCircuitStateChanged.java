@@ -0,0 +1,8 @@
+package com.blanchaert.billing.consumer.psp;
+
+/**
+ * Published on every circuit breaker transition so the listener side can stop
+ * consuming while the provider is down and resume when it is probed again.
+ */
+public record PspCircuitStateChanged(PspCircuitBreaker.State state) {
+}
@@ -2,52 +2,240 @@ package com.blanchaert.billing.consumer.psp;
 
 import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import org.springframework.http.MediaType;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestClient;
-import org.springframework.web.client.RestClientException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Charges through the configured {@link PspEngine}. Concurrent calls are bounded by an
+ * {@link AimdLimiter} that adapts between {@code limiter.min-limit} and
+ * {@code payment.provider.max-in-flight} to observed latency; further callers block until
+ * a call completes. A {@link PspCircuitBreaker} fails calls fast with
+ * {@link PspUnavailableException} while the provider keeps erroring, and publishes
+ * {@link PspCircuitStateChanged} so the listener container can pause.
+ * {@link #chargeAsync} lets one thread keep several charges in flight; {@link #chargeAll}
+ * sends many charges per call when {@code payment.provider.bulk.enabled} is set, each
+ * call taking one limiter permit.
+ */
 @Component
-public class PspClient {
-    private final RestClient restClient;
+public class PspClient implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(PspClient.class);
 
-    public PspClient(PaymentProviderProperties props) {
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(props.timeoutMs());
-        requestFactory.setReadTimeout(props.timeoutMs());
-        this.restClient = RestClient.builder()
-                .baseUrl(props.baseUrl())
-                .requestFactory(requestFactory)
-                .build();
+    private final PspEngine engine;
+    private final String engineName;
+    private final AimdLimiter limiter;
+    private final PspCircuitBreaker breaker;
+    private final MeterRegistry meters;
+    private final boolean bulkEnabled;
+    private final int bulkMaxItems;
+
+    public PspClient(PaymentProviderProperties props, ObjectMapper om, MeterRegistry meters,
+                     ApplicationEventPublisher events) {
+        this.engine = switch (props.engine()) {
+            case SIMPLE -> new SimplePspEngine(props);
+            case JDK -> new JdkPspEngine(props, om);
+        };
+        this.engineName = props.engine().name().toLowerCase();
+        this.limiter = new AimdLimiter(props.limiter().minLimit(), props.maxInFlight(),
+                props.limiter().latencyThresholdMs(), props.limiter().backoffRatio());
+        this.breaker = new PspCircuitBreaker(props.breaker().failureThreshold(), props.breaker().openMs(),
+                state -> {
+                    log.warn("PSP circuit {}", state);
+                    // A half-open breaker probes with one call; closing lifts the cap again.
+                    limiter.capAt(state == PspCircuitBreaker.State.HALF_OPEN ? 1 : Integer.MAX_VALUE);
+                    events.publishEvent(new PspCircuitStateChanged(state));
+                });
+        this.meters = meters;
+        this.bulkEnabled = props.bulk().enabled();
+        this.bulkMaxItems = Math.max(1, props.bulk().maxItems());
+        Gauge.builder("psp.client.in.flight", limiter, AimdLimiter::inFlight)
+                .description("PSP charge calls currently outstanding")
+                .tag("engine", engineName)
+                .register(meters);
+        Gauge.builder("psp.client.limit.max", limiter, AimdLimiter::maxLimit)
+                .description("Upper bound of the adaptive limit on concurrent PSP charge calls")
+                .tag("engine", engineName)
+                .register(meters);
+        Gauge.builder("psp.client.limit", limiter, AimdLimiter::limit)
+                .description("Current adaptive limit on concurrent PSP charge calls")
+                .tag("engine", engineName)
+                .register(meters);
+        Gauge.builder("psp.circuit.state", breaker, b -> b.state().code())
+                .description("PSP circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .register(meters);
+        for (String outcome : new String[]{"succeeded", "declined", "provider_error"}) {
+            latency(outcome);
+        }
+        for (String outcome : new String[]{"answered", "provider_error"}) {
+            bulkLatency(outcome);
+        }
+    }
+
+    public boolean bulkEnabled() {
+        return bulkEnabled;
     }
 
     public PspChargeOutcome charge(String idempotencyKey, UUID subscriptionId, long amountCents, String currency) {
+        return chargeAsync(idempotencyKey, subscriptionId, amountCents, currency).join();
+    }
+
+    public CompletableFuture<PspChargeOutcome> chargeAsync(String idempotencyKey, UUID subscriptionId,
+                                                          long amountCents, String currency) {
+        breaker.checkAvailable();
+        limiter.acquire();
+        CompletableFuture<PspChargeOutcome> outcome;
+        long start = System.nanoTime();
+        Timer.Sample sample = Timer.start(meters);
         try {
-            ChargeResponse response = restClient.post()
-                    .uri("/psp/charges")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(new ChargeRequest(idempotencyKey, subscriptionId, amountCents, currency))
-                    .retrieve()
-                    .body(ChargeResponse.class);
-            if (response != null && "succeeded".equals(response.status())) {
-                return PspChargeOutcome.success();
+            // The breaker may have opened while this caller waited for a permit.
+            breaker.checkAvailable();
+            outcome = engine.charge(new ChargeRequest(idempotencyKey, subscriptionId, amountCents, currency));
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+        return outcome.whenComplete((result, failure) -> {
+            String tag = outcomeTag(result);
+            boolean providerError = "provider_error".equals(tag);
+            limiter.release(System.nanoTime() - start, providerError);
+            if (providerError) {
+                breaker.onProviderError();
+            } else {
+                breaker.onAnswer();
             }
-            if (response == null) {
-                return PspChargeOutcome.failure("empty_provider_response");
+            sample.stop(latency(tag));
+        });
+    }
+
+    /**
+     * Charges {@code requests} in bulk calls of at most {@code bulk.max-items}; the
+     * outcomes are in request order. The breaker and the limiter see each bulk call as
+     * one call: it is a provider error only when no item got an answer.
+     */
+    public CompletableFuture<List<PspChargeOutcome>> chargeAll(List<ChargeRequest> requests) {
+        List<CompletableFuture<List<PspChargeOutcome>>> calls = new ArrayList<>();
+        for (int from = 0; from < requests.size(); from += bulkMaxItems) {
+            calls.add(bulkCall(requests.subList(from, Math.min(requests.size(), from + bulkMaxItems))));
+        }
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<PspChargeOutcome> outcomes = new ArrayList<>(requests.size());
+            for (CompletableFuture<List<PspChargeOutcome>> call : calls) {
+                outcomes.addAll(call.join());
+            }
+            return outcomes;
+        });
+    }
+
+    private CompletableFuture<List<PspChargeOutcome>> bulkCall(List<ChargeRequest> requests) {
+        breaker.checkAvailable();
+        limiter.acquire();
+        CompletableFuture<List<PspChargeOutcome>> outcomes;
+        long start = System.nanoTime();
+        Timer.Sample sample = Timer.start(meters);
+        try {
+            breaker.checkAvailable();
+            outcomes = engine.chargeAll(List.copyOf(requests));
+        } catch (RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+        return outcomes.whenComplete((result, failure) -> {
+            boolean providerError = result == null || !result.isEmpty()
+                    && result.stream().allMatch(o -> "provider_error".equals(outcomeTag(o)));
+            limiter.release(System.nanoTime() - start, providerError);
+            if (providerError) {
+                breaker.onProviderError();
+            } else {
+                breaker.onAnswer();
+            }
+            sample.stop(bulkLatency(providerError ? "provider_error" : "answered"));
+        });
+    }
+
+    @Override
+    public void destroy() {
+        breaker.close();
+    }
+
+    private Timer bulkLatency(String outcome) {
+        return Timer.builder("psp.charge.bulk")
+                .description("PSP bulk charge call latency by engine and call outcome")
+                .tag("engine", engineName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meters);
+    }
+
+    private Timer latency(String outcome) {
+        return Timer.builder("psp.charge")
+                .description("PSP charge call latency by engine and outcome")
+                .tag("engine", engineName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meters);
+    }
+
+    private static String outcomeTag(PspChargeOutcome outcome) {
+        if (outcome == null || outcome.reason() != null && outcome.reason().startsWith("provider_error:")) {
+            return "provider_error";
+        }
+        return outcome.succeeded() ? "succeeded" : "declined";
+    }
+
+    static PspChargeOutcome outcomeOf(ChargeResponse response) {
+        if (response != null && "succeeded".equals(response.status())) {
+            return PspChargeOutcome.success();
+        }
+        if (response == null) {
+            return PspChargeOutcome.failure("empty_provider_response");
+        }
+        return PspChargeOutcome.failure(response.reason() != null ? response.reason() : "declined");
+    }
+
+    /**
+     * Maps a bulk response back onto its requests by idempotency key; an item the
+     * provider did not answer is a provider error for that item alone.
+     */
+    static List<PspChargeOutcome> outcomesOf(List<ChargeRequest> requests, BulkChargeResponse response) {
+        Map<String, BulkChargeResult> results = new HashMap<>();
+        if (response != null && response.results() != null) {
+            for (BulkChargeResult result : response.results()) {
+                results.put(result.idempotency_key(), result);
             }
-            return PspChargeOutcome.failure(response.reason() != null ? response.reason() : "declined");
-        } catch (RestClientException exception) {
-            // Timeouts, connection failures, and non-2xx all land here: a provider we
-            // cannot get a definitive success from is a failed payment, not a message error.
-            return PspChargeOutcome.failure("provider_error:" + exception.getClass().getSimpleName());
         }
+        List<PspChargeOutcome> outcomes = new ArrayList<>(requests.size());
+        for (ChargeRequest request : requests) {
+            BulkChargeResult result = results.get(request.idempotency_key());
+            outcomes.add(result == null
+                    ? PspChargeOutcome.failure("provider_error:missing_bulk_result")
+                    : outcomeOf(new ChargeResponse(result.status(), result.reason())));
+        }
+        return outcomes;
     }
 
-    record ChargeRequest(String idempotency_key, UUID subscription_id, long amount_cents, String currency) {}
+    public record ChargeRequest(String idempotency_key, UUID subscription_id, long amount_cents, String currency) {}
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     record ChargeResponse(String status, String reason) {}
+
+    record BulkChargeRequest(List<ChargeRequest> charges) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record BulkChargeResponse(List<BulkChargeResult> results) {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record BulkChargeResult(String idempotency_key, String status, String reason) {}
 }
@@ -0,0 +1,20 @@
+package com.blanchaert.billing.consumer.psp;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport behind {@link PspClient}. An engine never completes exceptionally for a
+ * provider problem: timeouts, connection failures, and non-2xx responses resolve to a
+ * failed outcome, exactly as a decline does.
+ */
+interface PspEngine {
+
+    CompletableFuture<PspChargeOutcome> charge(PspClient.ChargeRequest request);
+
+    /**
+     * One bulk call; the outcomes are in request order. A provider problem with the call
+     * itself fails every item with the same reason.
+     */
+    CompletableFuture<List<PspChargeOutcome>> chargeAll(List<PspClient.ChargeRequest> requests);
+}
@@ -0,0 +1,23 @@
+package com.blanchaert.billing.consumer.psp;
+
+/**
+ * Thrown instead of calling the provider while the circuit breaker is open. Unlike a
+ * provider error on a call that was made, this is not a payment outcome: the delivery
+ * is requeued untouched and billed once the provider is back.
+ */
+public class PspUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PspUnavailableException(String message) {
+        super(message);
+    }
+
+    public static boolean isCause(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof PspUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package com.blanchaert.billing.consumer.psp;
+
+import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One HttpURLConnection request per charge on the calling thread; the returned future
+ * is already complete.
+ */
+class SimplePspEngine implements PspEngine {
+    private final RestClient restClient;
+
+    SimplePspEngine(PaymentProviderProperties props) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(props.timeoutMs());
+        requestFactory.setReadTimeout(props.timeoutMs());
+        this.restClient = RestClient.builder()
+                .baseUrl(props.baseUrl())
+                .requestFactory(requestFactory)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<PspChargeOutcome> charge(PspClient.ChargeRequest request) {
+        try {
+            PspClient.ChargeResponse response = restClient.post()
+                    .uri("/psp/charges")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(request)
+                    .retrieve()
+                    .body(PspClient.ChargeResponse.class);
+            return CompletableFuture.completedFuture(PspClient.outcomeOf(response));
+        } catch (RestClientException exception) {
+            // Timeouts, connection failures, and non-2xx all land here: a provider we
+            // cannot get a definitive success from is a failed payment, not a message error.
+            return CompletableFuture.completedFuture(
+                    PspChargeOutcome.failure("provider_error:" + exception.getClass().getSimpleName()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<PspChargeOutcome>> chargeAll(List<PspClient.ChargeRequest> requests) {
+        try {
+            PspClient.BulkChargeResponse response = restClient.post()
+                    .uri("/psp/charges/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new PspClient.BulkChargeRequest(requests))
+                    .retrieve()
+                    .body(PspClient.BulkChargeResponse.class);
+            return CompletableFuture.completedFuture(PspClient.outcomesOf(requests, response));
+        } catch (RestClientException exception) {
+            return CompletableFuture.completedFuture(Collections.nCopies(requests.size(),
+                    PspChargeOutcome.failure("provider_error:" + exception.getClass().getSimpleName())));
+        }
+    }
+}
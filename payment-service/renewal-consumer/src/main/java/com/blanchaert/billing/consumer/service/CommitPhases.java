@@ -0,0 +1,276 @@
+package com.blanchaert.billing.consumer.service;
+
+import com.blanchaert.billing.consumer.config.CommitProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs renewal processing in explicit transactional phases: everything before the PSP
+ * call commits as one transaction, everything after it as another. In
+ * {@code renewal.commit.mode=group} each phase has a flusher thread that takes the
+ * work queued by concurrent listener threads and commits it as one transaction, so
+ * they share one WAL flush; callers block until their work has committed. A failing
+ * group is rolled back and replayed unit by unit so one bad renewal cannot fail its
+ * neighbours.
+ * <p>
+ * Phase transactions are admitted up to the Hikari pool's maximum size, so callers
+ * beyond that (hundreds of virtual threads in virtual listener mode) queue here instead
+ * of timing out in the pool's connection wait.
+ */
+@Component
+public class CommitPhases implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(CommitPhases.class);
+
+    public enum Phase {
+        PRE_PSP("pre_psp"),
+        POST_PSP("post_psp");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final PlatformTransactionManager txManager;
+    private final TransactionDefinition definition = new DefaultTransactionDefinition();
+    private final boolean grouped;
+    private final int maxGroupSize;
+    private final long maxWaitNanos;
+    private final Map<Phase, Timer> commitTimers = new EnumMap<>(Phase.class);
+    private final Map<Phase, DistributionSummary> groupSizes = new EnumMap<>(Phase.class);
+    private final Map<Phase, BlockingQueue<Unit<?>>> queues = new EnumMap<>(Phase.class);
+    private final List<Thread> flushers = new ArrayList<>();
+    private final Semaphore connections;
+    private volatile boolean running;
+
+    public CommitPhases(PlatformTransactionManager txManager, DataSource dataSource,
+                        CommitProperties props, MeterRegistry meters) {
+        this.txManager = txManager;
+        this.connections = new Semaphore(dataSource instanceof HikariDataSource hikari
+                ? hikari.getMaximumPoolSize() : Integer.MAX_VALUE);
+        this.grouped = props.mode() == CommitProperties.Mode.GROUP;
+        this.maxGroupSize = Math.max(1, props.group().maxSize());
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(props.group().maxWaitMs());
+        for (Phase phase : Phase.values()) {
+            commitTimers.put(phase, Timer.builder("billing.commit")
+                    .description("Time spent in COMMIT of a billing phase transaction, WAL flush wait included")
+                    .tag("phase", phase.tag)
+                    .register(meters));
+            groupSizes.put(phase, DistributionSummary.builder("billing.commit.group.size")
+                    .description("Phase units (a renewal, or a whole batch in batch mode) per billing phase commit")
+                    .tag("phase", phase.tag)
+                    .register(meters));
+            queues.put(phase, new LinkedBlockingQueue<>());
+        }
+    }
+
+    public <T> T call(Phase phase, Supplier<T> work) {
+        if (!grouped || !running) {
+            return inTransaction(phase, work, 1);
+        }
+        Unit<T> unit = new Unit<>(work);
+        queues.get(phase).add(unit);
+        try {
+            return unit.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void run(Phase phase, Runnable work) {
+        call(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private <T> T inTransaction(Phase phase, Supplier<T> work, int renewals) {
+        connections.acquireUninterruptibly();
+        try {
+            TransactionStatus status = txManager.getTransaction(definition);
+            T result;
+            try {
+                result = work.get();
+            } catch (RuntimeException | Error e) {
+                txManager.rollback(status);
+                throw e;
+            }
+            commitTimers.get(phase).record(() -> txManager.commit(status));
+            groupSizes.get(phase).record(renewals);
+            return result;
+        } finally {
+            connections.release();
+        }
+    }
+
+    private void flushLoop(Phase phase) {
+        BlockingQueue<Unit<?>> queue = queues.get(phase);
+        while (running || !queue.isEmpty()) {
+            try {
+                Unit<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Unit<?>> group = new ArrayList<>(maxGroupSize);
+                group.add(first);
+                try {
+                    collect(queue, group);
+                    flush(phase, group);
+                } catch (InterruptedException e) {
+                    group.forEach(unit -> unit.result.completeExceptionally(e));
+                    throw e;
+                } catch (Throwable e) {
+                    // Whatever escapes flush() must neither leave callers parked on their
+                    // units nor end this thread: fail the group and keep flushing.
+                    log.error("Commit flusher for {} failed; failing {} units", phase.tag, group.size(), e);
+                    group.forEach(unit -> unit.result.completeExceptionally(e));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failQueued(phase, queue, e);
+                return;
+            }
+        }
+    }
+
+    private void failQueued(Phase phase, BlockingQueue<Unit<?>> queue, InterruptedException cause) {
+        List<Unit<?>> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            log.warn("Commit flusher for {} interrupted; failing {} queued units", phase.tag, left.size());
+        }
+        left.forEach(unit -> unit.result.completeExceptionally(cause));
+    }
+
+    private void collect(BlockingQueue<Unit<?>> queue, List<Unit<?>> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (group.size() < maxGroupSize) {
+            queue.drainTo(group, maxGroupSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxGroupSize || remaining <= 0) {
+                return;
+            }
+            Unit<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+        }
+    }
+
+    private void flush(Phase phase, List<Unit<?>> group) {
+        List<Object> results;
+        try {
+            results = inTransaction(phase, () -> {
+                List<Object> values = new ArrayList<>(group.size());
+                for (Unit<?> unit : group) {
+                    values.add(unit.work.get());
+                }
+                return values;
+            }, group.size());
+        } catch (RuntimeException | Error e) {
+            if (group.size() > 1) {
+                log.warn("Group commit of {} {} units failed, replaying them one by one", group.size(), phase.tag, e);
+            }
+            for (Unit<?> unit : group) {
+                replayAlone(phase, unit);
+            }
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(results.get(i));
+        }
+    }
+
+    private <T> void replayAlone(Phase phase, Unit<T> unit) {
+        try {
+            unit.result.complete(inTransaction(phase, unit.work, 1));
+        } catch (RuntimeException | Error e) {
+            unit.result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!grouped) {
+            return;
+        }
+        for (Phase phase : Phase.values()) {
+            Thread flusher = new Thread(() -> flushLoop(phase), "commit-group-" + phase.tag);
+            flusher.setDaemon(true);
+            flusher.start();
+            flushers.add(flusher);
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Flushers drain what is queued before exiting; listener containers stop first.
+        running = false;
+        for (Thread flusher : flushers) {
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        flushers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Start before and stop after the listener containers.
+        return Integer.MAX_VALUE - 200;
+    }
+
+    private static final class Unit<T> {
+        private final Supplier<T> work;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Unit(Supplier<T> work) {
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(Object value) {
+            result.complete((T) value);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.blanchaert.billing.consumer;
+
+import com.blanchaert.billing.consumer.model.RenewalRequested;
+import com.blanchaert.billing.consumer.mq.RetryRouter;
+import com.blanchaert.billing.consumer.psp.PspUnavailableException;
+import com.blanchaert.billing.consumer.service.InvalidRenewalMessageException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * The listener scenarios under {@code renewal.retry.mode=delayed}, plus the delay tiers
+ * themselves: retryable failures walk the tiers with an advancing attempt header and
+ * come back through the main exchange, and the DLQ takes what is past the last tier.
+ */
+@TestPropertySource(properties = {
+        "renewal.retry.mode=delayed",
+        // The second tier is long enough for a test to fix the cause between attempts.
+        "renewal.retry.delays=200ms, 5s",
+        // RetryRouter acks the original only after waitForConfirmsOrDie on the copy.
+        "spring.rabbitmq.publisher-confirm-type=simple"
+})
+class DelayedRetryIntegrationTest extends RenewalListenerIntegrationTest {
+
+    private static final String ATTEMPT_HEADER = "x-renewal-attempt";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private RetryRouter retryRouter;
+
+    @Test
+    void retryableFailureWalksTheDelayTiersThenDeadLetters() throws JsonProcessingException {
+        assertThat(((CachingConnectionFactory) rabbitTemplate.getConnectionFactory()).isSimplePublisherConfirms())
+                .isTrue();
+        // No customer row: every attempt fails on the invoice foreign key, a retryable error.
+        RenewalRequested orphan = renewal(UUID.randomUUID(), subscriptionIdEndingIn('f'), UUID.randomUUID(),
+                LocalDate.of(2027, 6, 1));
+        double scheduledBefore = scheduledRetries();
+
+        rabbitTemplate.convertAndSend("billing.renewals", "renewal.requested", json(orphan));
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() ->
+                assertThat(amqpAdmin.getQueueInfo("billing.renewals.dlq").getMessageCount()).isEqualTo(1));
+        Message deadLetter = rabbitTemplate.receive("billing.renewals.dlq", 5000);
+        assertThat(deadLetter).isNotNull();
+        // One republish per tier, each came back through the main queue, then the DLQ.
+        assertThat(deadLetter.getMessageProperties().<Number>getHeader(ATTEMPT_HEADER).intValue()).isEqualTo(2);
+        assertThat(scheduledRetries() - scheduledBefore).isEqualTo(2.0);
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.main.retry.200ms").getMessageCount()).isZero();
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.main.retry.5000ms").getMessageCount()).isZero();
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.main").getMessageCount()).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM payment WHERE idempotency_key = ?", Long.class, orphan.idempotency_key()))
+                .isZero();
+    }
+
+    @Test
+    void retriedDeliveryIsBilledOnceItsCauseClears() throws JsonProcessingException {
+        UUID customerId = UUID.randomUUID();
+        UUID subscriptionId = subscriptionIdEndingIn('f');
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        LocalDate dueDate = LocalDate.of(2027, 7, 1);
+        RenewalRequested renewal = renewal(customerId, subscriptionId, planId, dueDate);
+        double scheduledBefore = scheduledRetries();
+
+        rabbitTemplate.convertAndSend("billing.renewals", "renewal.requested", json(renewal));
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> scheduledRetries() - scheduledBefore >= 1.0);
+        // Whichever tier holds the delivery now, the next attempt finds its rows.
+        insertCustomer(customerId, "delayed-retry-");
+        jdbcTemplate.update("""
+                INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at)
+                VALUES (?, ?, ?, 'active', ?)
+                """, subscriptionId, customerId, planId, dueDate.minusMonths(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            Long succeededPayments = jdbcTemplate.queryForObject("""
+                    SELECT count(*) FROM payment
+                    WHERE idempotency_key = ? AND status = 'succeeded'
+                    """, Long.class, renewal.idempotency_key());
+            assertThat(succeededPayments).isEqualTo(1L);
+        });
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.dlq").getMessageCount()).isZero();
+    }
+
+    @Test
+    void routerRequeuesOnOpenCircuitAndNeverDelaysTerminalFailures() throws JsonProcessingException {
+        Message fresh = json(renewal(UUID.randomUUID(), subscriptionIdEndingIn('f'), UUID.randomUUID(),
+                LocalDate.of(2027, 8, 1)));
+        Message lastTier = MessageBuilder.fromMessage(fresh).setHeader(ATTEMPT_HEADER, 2).build();
+        double scheduledBefore = scheduledRetries();
+
+        assertThatThrownBy(() -> retryRouter.route(fresh, new PspUnavailableException("circuit open")))
+                .isInstanceOf(ImmediateRequeueAmqpException.class);
+        assertThat(retryRouter.scheduleRetry(fresh, new PspUnavailableException("circuit open"))).isFalse();
+        assertThat(retryRouter.scheduleRetry(fresh, new InvalidRenewalMessageException("bad field"))).isFalse();
+        assertThat(retryRouter.scheduleRetry(lastTier, new IllegalStateException("still failing"))).isFalse();
+
+        assertThat(scheduledRetries()).isEqualTo(scheduledBefore);
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.main.retry.200ms").getMessageCount()).isZero();
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.main.retry.5000ms").getMessageCount()).isZero();
+    }
+
+    private double scheduledRetries() {
+        return registry.get("renewals.retry.scheduled").counter().count();
+    }
+
+    private Message json(RenewalRequested renewal) throws JsonProcessingException {
+        return MessageBuilder
+                .withBody(objectMapper.writeValueAsBytes(renewal))
+                .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                .build();
+    }
+
+    private static RenewalRequested renewal(UUID customerId, UUID subscriptionId, UUID planId, LocalDate dueDate) {
+        return new RenewalRequested(
+                1, UUID.randomUUID(), subscriptionId, customerId, planId, "month", 1499, "EUR",
+                "sub-" + subscriptionId + "|" + dueDate, dueDate.toString(), dueDate.toString(),
+                dueDate.plusMonths(1).toString(), dueDate + "T00:00:00.000Z");
+    }
+}
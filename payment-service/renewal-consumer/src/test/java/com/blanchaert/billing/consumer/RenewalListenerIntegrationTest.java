@@ -1,24 +1,41 @@
 package com.blanchaert.billing.consumer;
 
+import com.blanchaert.billing.consumer.config.CommitProperties;
+import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
 import com.blanchaert.billing.consumer.model.RenewalRequested;
+import com.blanchaert.billing.consumer.psp.PspChargeOutcome;
+import com.blanchaert.billing.consumer.psp.PspCircuitBreaker;
+import com.blanchaert.billing.consumer.psp.PspCircuitStateChanged;
+import com.blanchaert.billing.consumer.psp.PspClient;
 import com.blanchaert.billing.consumer.service.BillingService;
+import com.blanchaert.billing.consumer.service.CommitPhases;
 import com.blanchaert.billing.consumer.service.InvalidRenewalMessageException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageBuilder;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.client.RestClient;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -30,27 +47,44 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 import org.testcontainers.utility.MountableFile;
 
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.awaitility.Awaitility.await;
 
+// Mode-specific subclasses rerun these scenarios against their own containers; a cached
+// context would otherwise keep consuming from whichever broker it last reached.
 @SpringBootTest
 @Testcontainers
+@DirtiesContext
 class RenewalListenerIntegrationTest {
 
+    private static final Pattern MIGRATION_NAME = Pattern.compile("V(\\d+)__(.+\\.sql)");
+
     @Container
     @ServiceConnection
     static final PostgreSQLContainer<?> postgres = postgresWithMigrations();
@@ -66,6 +100,7 @@ class RenewalListenerIntegrationTest {
             .withExposedPorts(8080)
             .withCopyToContainer(Transferable.of(renderPspTemplate("psp-charge-decline.json.tpl")), "/home/wiremock/mappings/psp-charge-decline.json")
             .withCopyToContainer(Transferable.of(renderPspTemplate("psp-charge-success.json.tpl")), "/home/wiremock/mappings/psp-charge-success.json")
+            .withCopyToContainer(Transferable.of(renderPspTemplate("psp-charge-batch.json.tpl")), "/home/wiremock/mappings/psp-charge-batch.json")
             .withCopyToContainer(Transferable.of(readTestResource("psp/psp-charge-timeout.json")), "/home/wiremock/mappings/psp-charge-timeout.json")
             .waitingFor(Wait.forHttp("/__admin/health").forStatusCode(200));
 
@@ -93,6 +128,24 @@ class RenewalListenerIntegrationTest {
     @Autowired
     private MeterRegistry registry;
 
+    @Autowired
+    private PspClient pspClient;
+
+    @Autowired
+    private CommitPhases commitPhases;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ApplicationEventPublisher events;
+
+    @Autowired
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
     @Test
     void listenerCreatesASucceededPayment() throws JsonProcessingException {
         UUID customerId = UUID.randomUUID();
@@ -706,6 +759,338 @@ class RenewalListenerIntegrationTest {
         assertThat(amqpAdmin.getQueueInfo("billing.renewals.main").getMessageCount()).isZero();
     }
 
+    @Test
+    void processBatchWritesTheSameRowsAsPerMessageProcessing() throws JsonProcessingException {
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        LocalDate dueDate = LocalDate.of(2027, 4, 1);
+        UUID succeedingCustomerId = UUID.randomUUID();
+        UUID succeedingSubscriptionId = subscriptionIdEndingIn('f');
+        UUID decliningCustomerId = UUID.randomUUID();
+        UUID decliningSubscriptionId = subscriptionIdEndingIn('0');
+        for (UUID[] ids : new UUID[][]{
+                {succeedingCustomerId, succeedingSubscriptionId},
+                {decliningCustomerId, decliningSubscriptionId}}) {
+            jdbcTemplate.update("""
+                    INSERT INTO customer (id, email, name, status)
+                    VALUES (?, ?, ?, 'active')
+                    """, ids[0], "batch-test-" + ids[0] + "@example.com", "Batch Test Customer");
+            jdbcTemplate.update("""
+                    INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at)
+                    VALUES (?, ?, ?, 'active', ?)
+                    """, ids[1], ids[0], planId, dueDate.minusMonths(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+        }
+        String succeedingKey = "sub-" + succeedingSubscriptionId + "|" + dueDate;
+        String decliningKey = "sub-" + decliningSubscriptionId + "|" + dueDate;
+        RenewalRequested succeeding = new RenewalRequested(
+                1, UUID.randomUUID(), succeedingSubscriptionId, succeedingCustomerId, planId, "month", 1499, "EUR",
+                succeedingKey, dueDate.toString(), dueDate.toString(), dueDate.plusMonths(1).toString(),
+                "2027-04-01T00:00:00.000Z");
+        RenewalRequested declining = new RenewalRequested(
+                1, UUID.randomUUID(), decliningSubscriptionId, decliningCustomerId, planId, "month", 1499, "EUR",
+                decliningKey, dueDate.toString(), dueDate.toString(), dueDate.plusMonths(1).toString(),
+                "2027-04-01T00:00:00.000Z");
+
+        // The duplicate stands in for a redelivery landing in the same batch.
+        billingService.processBatch(List.of(succeeding, declining, succeeding));
+        // A second batch is a redelivery of both: no new rows, no new PSP call for the decline.
+        billingService.processBatch(List.of(succeeding, declining));
+
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM payment WHERE idempotency_key = ?", String.class, succeedingKey))
+                .isEqualTo("succeeded");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM payment WHERE idempotency_key = ?", String.class, decliningKey))
+                .isEqualTo("failed");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM charge WHERE subscription_id = ?", String.class, succeedingSubscriptionId))
+                .isEqualTo("settled");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM charge WHERE subscription_id = ?", String.class, decliningSubscriptionId))
+                .isEqualTo("pending");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM invoice WHERE customer_id = ?", String.class, succeedingCustomerId))
+                .isEqualTo("paid");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT status FROM invoice WHERE customer_id = ?", String.class, decliningCustomerId))
+                .isEqualTo("posted");
+        LocalDateTime renewedAt = jdbcTemplate.queryForObject(
+                "SELECT renewed_at FROM subscription WHERE id = ?",
+                (rs, rowNum) -> rs.getTimestamp(1).toLocalDateTime(), succeedingSubscriptionId);
+        assertThat(renewedAt).isEqualTo(dueDate.plusMonths(1).atTime(9, 0));
+        assertThat(pspRequestCount(decliningSubscriptionId)).isEqualTo(1);
+    }
+
+    @Test
+    void bulkChargeAppliesTheDeclineRulePerItem() {
+        List<PspClient.ChargeRequest> requests = List.of(
+                new PspClient.ChargeRequest("bulk-ok-" + UUID.randomUUID(), subscriptionIdEndingIn('f'), 1999, "EUR"),
+                new PspClient.ChargeRequest("bulk-declined-" + UUID.randomUUID(), subscriptionIdEndingIn('0'), 1999, "EUR"),
+                new PspClient.ChargeRequest("bulk-ok-" + UUID.randomUUID(), subscriptionIdEndingIn('e'), 1999, "EUR"));
+
+        List<PspChargeOutcome> outcomes = pspClient.chargeAll(requests).join();
+
+        assertThat(outcomes).containsExactly(
+                PspChargeOutcome.success(),
+                PspChargeOutcome.failure("card_declined"),
+                PspChargeOutcome.success());
+    }
+
+    @ParameterizedTest
+    @EnumSource(PaymentProviderProperties.Engine.class)
+    void everyEngineBillsSuccessesAndFailsDeclinesAndTimeouts(PaymentProviderProperties.Engine engine) {
+        PspClient engineClient = pspClient(engine);
+        BillingService engineBilling = new BillingService(jdbcTemplate, commitPhases, engineClient,
+                new SimpleMeterRegistry());
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        LocalDate dueDate = LocalDate.of(2027, 10, 1);
+        RenewalRequested succeeding = seededRenewal(planId, subscriptionIdEndingIn('f'), dueDate);
+        RenewalRequested declining = seededRenewal(planId, subscriptionIdEndingIn('0'), dueDate);
+        RenewalRequested timingOut = seededRenewal(planId, subscriptionIdEndingIn('e'), dueDate);
+
+        engineBilling.process(succeeding);
+        engineBilling.process(declining);
+        engineBilling.process(timingOut);
+
+        Instant unchanged = dueDate.minusMonths(1).atStartOfDay().atOffset(ZoneOffset.UTC).toInstant();
+        assertThat(renewalRows(succeeding)).containsExactly("succeeded", true, "settled", "paid",
+                Timestamp.valueOf(dueDate.plusMonths(1).atTime(9, 0)).toInstant(), 1L, 1L);
+        assertThat(renewalRows(declining)).containsExactly("failed", true, "pending", "posted", unchanged, 1L, 1L);
+        assertThat(renewalRows(timingOut)).containsExactly("failed", true, "pending", "posted", unchanged, 1L, 1L);
+
+        // The same outcomes straight from the engine, through the async entry point.
+        assertThat(engineClient.chargeAsync("engine-" + UUID.randomUUID(), declining.subscription_id(), 1499, "EUR")
+                .join()).isEqualTo(PspChargeOutcome.failure("card_declined"));
+        assertThat(engineClient.chargeAsync("engine-" + UUID.randomUUID(), timingOut.subscription_id(), 1499, "EUR")
+                .join().reason()).startsWith("provider_error:");
+    }
+
+    @Test
+    void renewalContainerStopsWhileThePspCircuitIsOpen() throws JsonProcessingException {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer("renewal");
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        RenewalRequested renewal = seededRenewal(planId, subscriptionIdEndingIn('f'), LocalDate.of(2027, 9, 1));
+        try {
+            events.publishEvent(new PspCircuitStateChanged(PspCircuitBreaker.State.OPEN));
+            await().atMost(Duration.ofSeconds(30)).until(() -> !container.isRunning());
+
+            rabbitTemplate.convertAndSend("billing.renewals", "renewal.requested", MessageBuilder
+                    .withBody(objectMapper.writeValueAsBytes(renewal))
+                    .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                    .build());
+            await().during(Duration.ofSeconds(1)).atMost(Duration.ofSeconds(5)).until(
+                    () -> amqpAdmin.getQueueInfo("billing.renewals.main").getMessageCount() == 1);
+
+            // Half-open resumes consumption so the next call can probe the provider.
+            events.publishEvent(new PspCircuitStateChanged(PspCircuitBreaker.State.HALF_OPEN));
+            await().atMost(Duration.ofSeconds(30)).until(container::isRunning);
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+                Long succeededPayments = jdbcTemplate.queryForObject("""
+                        SELECT count(*) FROM payment
+                        WHERE idempotency_key = ? AND status = 'succeeded'
+                        """, Long.class, renewal.idempotency_key());
+                assertThat(succeededPayments).isEqualTo(1L);
+            });
+
+            events.publishEvent(new PspCircuitStateChanged(PspCircuitBreaker.State.OPEN));
+            await().atMost(Duration.ofSeconds(30)).until(() -> !container.isRunning());
+            events.publishEvent(new PspCircuitStateChanged(PspCircuitBreaker.State.CLOSED));
+            await().atMost(Duration.ofSeconds(30)).until(container::isRunning);
+        } finally {
+            events.publishEvent(new PspCircuitStateChanged(PspCircuitBreaker.State.CLOSED));
+            await().atMost(Duration.ofSeconds(30)).until(container::isRunning);
+        }
+    }
+
+    @Test
+    void groupCommitWritesTheSameRowsAsPerPhaseCommits() throws Exception {
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        LocalDate dueDate = LocalDate.of(2027, 5, 1);
+        List<RenewalRequested> perPhase = List.of(
+                seededRenewal(planId, subscriptionIdEndingIn('f'), dueDate),
+                seededRenewal(planId, subscriptionIdEndingIn('0'), dueDate));
+        List<RenewalRequested> grouped = List.of(
+                seededRenewal(planId, subscriptionIdEndingIn('f'), dueDate),
+                seededRenewal(planId, subscriptionIdEndingIn('0'), dueDate),
+                seededRenewal(planId, subscriptionIdEndingIn('f'), dueDate),
+                seededRenewal(planId, subscriptionIdEndingIn('0'), dueDate));
+
+        for (RenewalRequested renewal : perPhase) {
+            billingService.process(renewal);
+        }
+
+        MeterRegistry groupMeters = new SimpleMeterRegistry();
+        CommitPhases groupPhases = groupCommitPhases(grouped.size(), 2000, groupMeters);
+        groupPhases.start();
+        try {
+            BillingService groupBilling = new BillingService(jdbcTemplate, groupPhases, pspClient, groupMeters);
+            runConcurrently(grouped.stream()
+                    .<Runnable>map(renewal -> () -> groupBilling.process(renewal))
+                    .toList());
+        } finally {
+            groupPhases.stop();
+        }
+
+        List<Object> succeededRows = renewalRows(perPhase.get(0));
+        List<Object> declinedRows = renewalRows(perPhase.get(1));
+        assertThat(succeededRows).containsExactly("succeeded", true, "settled", "paid",
+                Timestamp.valueOf(dueDate.plusMonths(1).atTime(9, 0)).toInstant(), 1L, 1L);
+        assertThat(declinedRows).containsExactly("failed", true, "pending", "posted",
+                dueDate.minusMonths(1).atStartOfDay().atOffset(ZoneOffset.UTC).toInstant(), 1L, 1L);
+        for (int i = 0; i < grouped.size(); i++) {
+            assertThat(renewalRows(grouped.get(i))).isEqualTo(i % 2 == 0 ? succeededRows : declinedRows);
+        }
+        // Fewer pre-PSP commits than renewals: concurrent callers shared a transaction.
+        DistributionSummary preGroups = groupMeters.get("billing.commit.group.size")
+                .tag("phase", "pre_psp")
+                .summary();
+        assertThat(preGroups.totalAmount()).isEqualTo(grouped.size());
+        assertThat(preGroups.count()).isLessThan(grouped.size());
+    }
+
+    @Test
+    void failingUnitInAGroupIsReplayedAloneWithoutLosingItsNeighbours() throws Exception {
+        UUID firstCustomerId = UUID.randomUUID();
+        UUID secondCustomerId = UUID.randomUUID();
+        AtomicInteger failingRuns = new AtomicInteger();
+        MeterRegistry groupMeters = new SimpleMeterRegistry();
+        CommitPhases groupPhases = groupCommitPhases(3, 2000, groupMeters);
+        groupPhases.start();
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> units = List.of(
+                    callers.submit(() -> {
+                        start.await();
+                        groupPhases.run(CommitPhases.Phase.PRE_PSP, () -> insertCustomer(firstCustomerId, "group-first-"));
+                        return null;
+                    }),
+                    callers.submit(() -> {
+                        start.await();
+                        groupPhases.run(CommitPhases.Phase.PRE_PSP, () -> {
+                            failingRuns.incrementAndGet();
+                            // Fails inside the database, so the shared transaction is aborted.
+                            jdbcTemplate.queryForObject("SELECT 1 / 0", Integer.class);
+                        });
+                        return null;
+                    }),
+                    callers.submit(() -> {
+                        start.await();
+                        groupPhases.run(CommitPhases.Phase.PRE_PSP, () -> insertCustomer(secondCustomerId, "group-second-"));
+                        return null;
+                    }));
+            start.countDown();
+            units.get(0).get(30, TimeUnit.SECONDS);
+            units.get(2).get(30, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> units.get(1).get(30, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(DataAccessException.class);
+        } finally {
+            callers.shutdownNow();
+            groupPhases.stop();
+        }
+
+        // Once in the failed group, once replayed alone.
+        assertThat(failingRuns).hasValue(2);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM customer WHERE id IN (?, ?)", Long.class, firstCustomerId, secondCustomerId))
+                .isEqualTo(2L);
+        // Only the two replayed neighbours committed, one unit each; the group never did.
+        DistributionSummary preGroups = groupMeters.get("billing.commit.group.size")
+                .tag("phase", "pre_psp")
+                .summary();
+        assertThat(preGroups.count()).isEqualTo(2);
+        assertThat(preGroups.max()).isEqualTo(1.0);
+    }
+
+    private PspClient pspClient(PaymentProviderProperties.Engine engine) {
+        return new PspClient(new PaymentProviderProperties(
+                "http://" + mockPsp.getHost() + ":" + mockPsp.getMappedPort(8080), 1000, engine, 8,
+                new PaymentProviderProperties.Limiter(1, 1000, 0.9),
+                new PaymentProviderProperties.Breaker(20, 30000),
+                new PaymentProviderProperties.Bulk(false, 100)),
+                objectMapper, new SimpleMeterRegistry(), event -> {
+        });
+    }
+
+    private CommitPhases groupCommitPhases(int maxSize, long maxWaitMs, MeterRegistry meters) {
+        return new CommitPhases(transactionManager, dataSource,
+                new CommitProperties(CommitProperties.Mode.GROUP, new CommitProperties.Group(maxSize, maxWaitMs)),
+                meters);
+    }
+
+    private static void runConcurrently(List<Runnable> calls) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(calls.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> running = calls.stream()
+                    .<Future<?>>map(call -> callers.submit(() -> {
+                        start.await();
+                        call.run();
+                        return null;
+                    }))
+                    .toList();
+            start.countDown();
+            for (Future<?> call : running) {
+                call.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    void insertCustomer(UUID customerId, String emailPrefix) {
+        jdbcTemplate.update("""
+                INSERT INTO customer (id, email, name, status)
+                VALUES (?, ?, ?, 'active')
+                """, customerId, emailPrefix + customerId + "@example.com", "Test Customer");
+    }
+
+    // A customer and an active subscription renewed one period before dueDate, and the renewal for dueDate.
+    RenewalRequested seededRenewal(UUID planId, UUID subscriptionId, LocalDate dueDate) {
+        UUID customerId = UUID.randomUUID();
+        insertCustomer(customerId, "seeded-");
+        jdbcTemplate.update("""
+                INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at)
+                VALUES (?, ?, ?, 'active', ?)
+                """, subscriptionId, customerId, planId, dueDate.minusMonths(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+        return new RenewalRequested(
+                1, UUID.randomUUID(), subscriptionId, customerId, planId, "month", 1499, "EUR",
+                "sub-" + subscriptionId + "|" + dueDate, dueDate.toString(), dueDate.toString(),
+                dueDate.plusMonths(1).toString(), dueDate + "T00:00:00.000Z");
+    }
+
+    // Payment status, payment completed, charge status, invoice status, renewed_at, invoice and charge counts.
+    private List<Object> renewalRows(RenewalRequested renewal) {
+        return jdbcTemplate.queryForObject("""
+                        SELECT p.status, p.completed_at IS NOT NULL AS completed, c.status AS charge_status,
+                               i.status AS invoice_status, s.renewed_at,
+                               (SELECT count(*) FROM invoice WHERE customer_id = s.customer_id) AS invoices,
+                               (SELECT count(*) FROM charge WHERE subscription_id = s.id) AS charges
+                        FROM payment p
+                        JOIN charge c ON c.id = p.charge_id
+                        JOIN invoice i ON i.id = c.invoice_id
+                        JOIN subscription s ON s.id = c.subscription_id
+                        WHERE p.idempotency_key = ?
+                        """,
+                (rs, rowNum) -> List.<Object>of(
+                        rs.getString("status"),
+                        rs.getBoolean("completed"),
+                        rs.getString("charge_status"),
+                        rs.getString("invoice_status"),
+                        rs.getTimestamp("renewed_at").toInstant(),
+                        rs.getLong("invoices"),
+                        rs.getLong("charges")),
+                renewal.idempotency_key());
+    }
+
     private int pspRequestCount(UUID subscriptionId) throws JsonProcessingException {
         String request = """
                 {"method":"POST","urlPath":"/psp/charges","bodyPatterns":[{"matchesJsonPath":{"expression":"$.subscription_id","equalTo":"%s"}}]}
@@ -721,7 +1106,7 @@ class RenewalListenerIntegrationTest {
     }
 
     // Pin subscription ids so the deterministic PSP suffix rules cannot make existing tests flaky.
-    private static UUID subscriptionIdEndingIn(char lastHexChar) {
+    static UUID subscriptionIdEndingIn(char lastHexChar) {
         String base = UUID.randomUUID().toString();
         return UUID.fromString(base.substring(0, base.length() - 1) + lastHexChar);
     }
@@ -771,15 +1156,24 @@ class RenewalListenerIntegrationTest {
         try (var migrations = Files.list(migrationDirectory)) {
             migrations
                     .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().matches("V.*\\.sql"))
-                    .sorted()
+                    .filter(path -> MIGRATION_NAME.matcher(path.getFileName().toString()).matches())
                     .forEach(path -> container.withCopyFileToContainer(
                             MountableFile.forHostPath(path.toString()),
-                            "/docker-entrypoint-initdb.d/" + path.getFileName()));
+                            "/docker-entrypoint-initdb.d/" + initdbName(path)));
         } catch (IOException exception) {
             throw new IllegalStateException("Could not enumerate migrations in " + migrationDirectory, exception);
         }
 
         return container;
     }
+
+    // The postgres entrypoint runs initdb scripts in glob order, where V10 sorts before V2;
+    // zero-pad the version so the scripts run in Flyway's numeric order.
+    private static String initdbName(Path migration) {
+        Matcher name = MIGRATION_NAME.matcher(migration.getFileName().toString());
+        if (!name.matches()) {
+            throw new IllegalArgumentException("Not a versioned migration: " + migration);
+        }
+        return "V%03d__%s".formatted(Integer.parseInt(name.group(1)), name.group(2));
+    }
 }
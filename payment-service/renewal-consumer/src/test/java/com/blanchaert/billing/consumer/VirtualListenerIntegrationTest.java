@@ -0,0 +1,118 @@
+package com.blanchaert.billing.consumer;
+
+import com.blanchaert.billing.consumer.model.RenewalRequested;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * The listener scenarios under {@code renewal.listener.mode=virtual}, where deliveries
+ * are processed on virtual threads and acked, requeued, or rejected from them.
+ */
+@TestPropertySource(properties = {
+        "renewal.listener.mode=virtual",
+        "renewal.listener.virtual.max-in-flight=" + VirtualListenerIntegrationTest.MAX_IN_FLIGHT
+})
+class VirtualListenerIntegrationTest extends RenewalListenerIntegrationTest {
+    static final int MAX_IN_FLIGHT = 4;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Test
+    void inFlightDeliveriesStayWithinTheBoundAndEveryOneIsAcked() throws Exception {
+        UUID planId = jdbcTemplate.queryForObject(
+                "SELECT id FROM plan WHERE name = 'Standard'",
+                UUID.class);
+        LocalDate dueDate = LocalDate.of(2027, 11, 1);
+        // Timeouts hold each delivery for the full PSP timeout, so the bound is reached; eight
+        // of them stay under the breaker's failure threshold.
+        List<RenewalRequested> renewals = new ArrayList<>();
+        for (int i = 0; i < 2 * MAX_IN_FLIGHT; i++) {
+            renewals.add(seededRenewal(planId, subscriptionIdEndingIn('e'), dueDate));
+        }
+
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = Thread.ofVirtual().start(() -> {
+            while (sampling.get()) {
+                maxInFlight.accumulateAndGet((int) inFlight(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        try {
+            for (RenewalRequested renewal : renewals) {
+                rabbitTemplate.convertAndSend("billing.renewals", "renewal.requested", MessageBuilder
+                        .withBody(objectMapper.writeValueAsBytes(renewal))
+                        .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                        .build());
+            }
+            await().atMost(Duration.ofSeconds(60)).untilAsserted(() -> {
+                for (RenewalRequested renewal : renewals) {
+                    assertThat(jdbcTemplate.queryForObject(
+                            "SELECT status FROM payment WHERE idempotency_key = ?",
+                            String.class, renewal.idempotency_key())).isEqualTo("failed");
+                }
+            });
+            // A permit is released only after its delivery was settled on the channel.
+            await().atMost(Duration.ofSeconds(30)).until(() -> inFlight() == 0.0);
+        } finally {
+            sampling.set(false);
+            sampler.join();
+        }
+
+        assertThat(maxInFlight.get()).isBetween(2, MAX_IN_FLIGHT);
+        // Stopping the container closes its channel; anything left unacked would be ready again.
+        MessageListenerContainer container = listenerRegistry.getListenerContainer("renewal");
+        container.stop();
+        try {
+            assertThat(amqpAdmin.getQueueInfo("billing.renewals.main").getMessageCount()).isZero();
+        } finally {
+            container.start();
+        }
+        assertThat(amqpAdmin.getQueueInfo("billing.renewals.dlq").getMessageCount()).isZero();
+    }
+
+    private double inFlight() {
+        return registry.get("renewal.listener.in.flight").gauge().value();
+    }
+}
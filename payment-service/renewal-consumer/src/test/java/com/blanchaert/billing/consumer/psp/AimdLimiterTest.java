@@ -0,0 +1,85 @@
+package com.blanchaert.billing.consumer.psp;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class AimdLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    @Test
+    void slowCallsAndProviderErrorsCutTheLimitMultiplicativelyDownToTheFloor() {
+        AimdLimiter limiter = new AimdLimiter(2, 16, 1000, 0.5);
+        assertThat(limiter.limit()).isEqualTo(16);
+
+        complete(limiter, SLOW, false);
+        assertThat(limiter.limit()).isEqualTo(8);
+        complete(limiter, FAST, true);
+        assertThat(limiter.limit()).isEqualTo(4);
+        complete(limiter, SLOW, false);
+        assertThat(limiter.limit()).isEqualTo(2);
+        complete(limiter, SLOW, true);
+        assertThat(limiter.limit()).isEqualTo(2);
+    }
+
+    @Test
+    void fastCallsGrowTheLimitByAboutOnePerWindowUpToTheMax() {
+        AimdLimiter limiter = new AimdLimiter(1, 10, 1000, 0.5);
+        complete(limiter, SLOW, false);
+        assertThat(limiter.limit()).isEqualTo(5);
+
+        // 1/5 + 1/5.2 + ... stays under one step for five calls and crosses it on the sixth.
+        for (int i = 0; i < 5; i++) {
+            complete(limiter, FAST, false);
+        }
+        assertThat(limiter.limit()).isEqualTo(5);
+        complete(limiter, FAST, false);
+        assertThat(limiter.limit()).isEqualTo(6);
+
+        for (int i = 0; i < 200; i++) {
+            complete(limiter, FAST, false);
+        }
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void releaseWithoutACallLeavesTheLimitAlone() {
+        AimdLimiter limiter = new AimdLimiter(1, 4, 1000, 0.5);
+        limiter.acquire();
+        assertThat(limiter.inFlight()).isEqualTo(1);
+
+        limiter.release();
+
+        assertThat(limiter.inFlight()).isZero();
+        assertThat(limiter.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void capHoldsCallersBeyondItUntilAPermitIsReleased() {
+        AimdLimiter limiter = new AimdLimiter(1, 8, 1000, 0.5);
+        limiter.capAt(1);
+        assertThat(limiter.limit()).isEqualTo(1);
+        limiter.acquire();
+
+        CompletableFuture<Void> second = CompletableFuture.runAsync(limiter::acquire);
+        await().during(Duration.ofMillis(300)).atMost(Duration.ofSeconds(2)).until(() -> !second.isDone());
+
+        limiter.release(FAST, false);
+        await().atMost(Duration.ofSeconds(2)).until(second::isDone);
+        assertThat(limiter.inFlight()).isEqualTo(1);
+
+        limiter.capAt(Integer.MAX_VALUE);
+        assertThat(limiter.limit()).isEqualTo(8);
+    }
+
+    private static void complete(AimdLimiter limiter, long latencyNanos, boolean providerError) {
+        limiter.acquire();
+        limiter.release(latencyNanos, providerError);
+    }
+}
@@ -0,0 +1,58 @@
+package com.blanchaert.billing.consumer.psp;
+
+import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdkPspEngineTest {
+
+    @Test
+    void chargesUnderTheBaseUrlPath() throws IOException {
+        List<String> paths = new CopyOnWriteArrayList<>();
+        HttpServer provider = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        provider.createContext("/", exchange -> {
+            paths.add(exchange.getRequestURI().getPath());
+            byte[] body = exchange.getRequestURI().getPath().endsWith("/batch")
+                    ? "{\"results\":[]}".getBytes(StandardCharsets.UTF_8)
+                    : "{\"status\":\"succeeded\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        provider.start();
+        try {
+            // Both spellings of a base URL with a path: with and without the trailing slash.
+            for (String base : List.of("/gateway", "/gateway/")) {
+                JdkPspEngine engine = new JdkPspEngine(new PaymentProviderProperties(
+                        "http://127.0.0.1:" + provider.getAddress().getPort() + base, 1000,
+                        PaymentProviderProperties.Engine.JDK, 8,
+                        new PaymentProviderProperties.Limiter(1, 1000, 0.9),
+                        new PaymentProviderProperties.Breaker(5, 1000),
+                        new PaymentProviderProperties.Bulk(true, 100)),
+                        new ObjectMapper());
+                PspClient.ChargeRequest request = new PspClient.ChargeRequest(
+                        "jdk-" + UUID.randomUUID(), UUID.randomUUID(), 1499, "EUR");
+
+                assertThat(engine.charge(request).join().succeeded()).isTrue();
+                engine.chargeAll(List.of(request)).join();
+            }
+
+            assertThat(paths).containsExactly(
+                    "/gateway/psp/charges", "/gateway/psp/charges/batch",
+                    "/gateway/psp/charges", "/gateway/psp/charges/batch");
+        } finally {
+            provider.stop(0);
+        }
+    }
+}
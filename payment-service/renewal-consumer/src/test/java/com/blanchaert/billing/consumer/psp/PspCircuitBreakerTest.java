@@ -0,0 +1,139 @@
+package com.blanchaert.billing.consumer.psp;
+
+import com.blanchaert.billing.consumer.config.PaymentProviderProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class PspCircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveErrorsThenProbesHalfOpenAndCloses() {
+        List<PspCircuitBreaker.State> transitions = new CopyOnWriteArrayList<>();
+        PspCircuitBreaker breaker = new PspCircuitBreaker(3, 200, transitions::add);
+
+        breaker.onProviderError();
+        breaker.onProviderError();
+        // A decline is an answer: it resets the run of errors.
+        breaker.onAnswer();
+        breaker.onProviderError();
+        breaker.onProviderError();
+        assertThat(breaker.state()).isEqualTo(PspCircuitBreaker.State.CLOSED);
+
+        breaker.onProviderError();
+        assertThat(breaker.state()).isEqualTo(PspCircuitBreaker.State.OPEN);
+        assertThatThrownBy(breaker::checkAvailable).isInstanceOf(PspUnavailableException.class);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> breaker.state() == PspCircuitBreaker.State.HALF_OPEN);
+        breaker.checkAvailable();
+        breaker.onAnswer();
+
+        assertThat(breaker.state()).isEqualTo(PspCircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly(
+                PspCircuitBreaker.State.OPEN,
+                PspCircuitBreaker.State.HALF_OPEN,
+                PspCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedHalfOpenProbeReopensTheCircuit() {
+        List<PspCircuitBreaker.State> transitions = new CopyOnWriteArrayList<>();
+        PspCircuitBreaker breaker = new PspCircuitBreaker(1, 200, transitions::add);
+
+        breaker.onProviderError();
+        await().atMost(Duration.ofSeconds(5)).until(() -> breaker.state() == PspCircuitBreaker.State.HALF_OPEN);
+        breaker.onProviderError();
+
+        assertThat(breaker.state()).isEqualTo(PspCircuitBreaker.State.OPEN);
+        await().atMost(Duration.ofSeconds(5)).until(() -> breaker.state() == PspCircuitBreaker.State.HALF_OPEN);
+        assertThat(transitions).containsExactly(
+                PspCircuitBreaker.State.OPEN,
+                PspCircuitBreaker.State.HALF_OPEN,
+                PspCircuitBreaker.State.OPEN,
+                PspCircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    void closedBreakerStopsItsTimerAndStaysOpen() {
+        PspCircuitBreaker breaker = new PspCircuitBreaker(1, 50, state -> { });
+
+        breaker.close();
+        breaker.onProviderError();
+
+        await().during(Duration.ofMillis(300)).atMost(Duration.ofSeconds(5))
+                .until(() -> breaker.state() == PspCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void pspClientProbesAHalfOpenCircuitWithOneCallAndLiftsTheCapOnClose() throws IOException {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        HttpServer provider = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        provider.createContext("/psp/charges", exchange -> {
+            byte[] body = "{\"status\":\"succeeded\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (failing.get()) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        provider.start();
+        try {
+            List<PspCircuitStateChanged> events = new CopyOnWriteArrayList<>();
+            MeterRegistry meters = new SimpleMeterRegistry();
+            PspClient client = new PspClient(new PaymentProviderProperties(
+                    "http://127.0.0.1:" + provider.getAddress().getPort(), 1000,
+                    PaymentProviderProperties.Engine.SIMPLE, 8,
+                    new PaymentProviderProperties.Limiter(1, 1000, 0.9),
+                    new PaymentProviderProperties.Breaker(2, 300),
+                    new PaymentProviderProperties.Bulk(false, 100)),
+                    new ObjectMapper(), meters, event -> events.add((PspCircuitStateChanged) event));
+
+            assertThat(charge(client).reason()).startsWith("provider_error:");
+            assertThat(charge(client).reason()).startsWith("provider_error:");
+            assertThat(gauge(meters, "psp.circuit.state")).isEqualTo(2.0);
+            assertThatThrownBy(() -> charge(client)).isInstanceOf(PspUnavailableException.class);
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> gauge(meters, "psp.circuit.state") == 1.0);
+            assertThat(gauge(meters, "psp.client.limit")).isEqualTo(1.0);
+
+            failing.set(false);
+            assertThat(charge(client).succeeded()).isTrue();
+
+            assertThat(gauge(meters, "psp.circuit.state")).isEqualTo(0.0);
+            assertThat(gauge(meters, "psp.client.limit")).isGreaterThan(1.0);
+            assertThat(events).extracting(PspCircuitStateChanged::state).containsExactly(
+                    PspCircuitBreaker.State.OPEN,
+                    PspCircuitBreaker.State.HALF_OPEN,
+                    PspCircuitBreaker.State.CLOSED);
+            client.destroy();
+        } finally {
+            provider.stop(0);
+        }
+    }
+
+    private static PspChargeOutcome charge(PspClient client) {
+        return client.charge("breaker-" + UUID.randomUUID(), UUID.randomUUID(), 1499, "EUR");
+    }
+
+    private static double gauge(MeterRegistry meters, String name) {
+        return meters.get(name).gauge().value();
+    }
+}
@@ -0,0 +1,63 @@
+package com.blanchaert.billing.consumer.service;
+
+import com.blanchaert.billing.consumer.config.CommitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Group commit against a stubbed transaction manager: an Error thrown by one unit's work
+ * reaches its caller, its neighbours still commit, and the flusher keeps serving.
+ */
+class CommitPhasesTest {
+    private CommitPhases phases;
+
+    @BeforeEach
+    void start() {
+        PlatformTransactionManager tx = mock(PlatformTransactionManager.class);
+        when(tx.getTransaction(any())).thenAnswer(invocation -> mock(TransactionStatus.class));
+        // A long group wait, so two concurrent calls land in one group.
+        phases = new CommitPhases(tx, mock(DataSource.class),
+                new CommitProperties(CommitProperties.Mode.GROUP, new CommitProperties.Group(2, 2000)),
+                new SimpleMeterRegistry());
+        phases.start();
+    }
+
+    @AfterEach
+    void stop() {
+        phases.stop();
+    }
+
+    @Test
+    void errorInOneUnitFailsOnlyItsCallerAndTheFlusherKeepsRunning() throws Exception {
+        CompletableFuture<String> failing = CompletableFuture.supplyAsync(() ->
+                phases.call(CommitPhases.Phase.PRE_PSP, () -> {
+                    throw new StackOverflowError("unit overflowed");
+                }));
+        CompletableFuture<String> neighbour = CompletableFuture.supplyAsync(() ->
+                phases.call(CommitPhases.Phase.PRE_PSP, () -> "committed"));
+
+        assertThatThrownBy(() -> failing.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(neighbour.get(10, TimeUnit.SECONDS)).isEqualTo("committed");
+
+        CompletableFuture<String> next = CompletableFuture.supplyAsync(() ->
+                phases.call(CommitPhases.Phase.PRE_PSP, () -> "after"));
+        assertThat(next.get(10, TimeUnit.SECONDS)).isEqualTo("after");
+    }
+}
@@ -0,0 +1,160 @@
+#!/usr/bin/env bash
+# Scan access-path benchmark: the full scan's keyset pages through the primary key vs
+# through the covering index of V13, on the RUNNING stack's Postgres. Measures, does not
+# verify — scripts/verify.sh remains the definition of "working". Touches no application
+# table: per size it builds a scratch table shaped like subscription (90% active), walks
+# it in the page query's id order, and drops it again. Ids are uuidv7 by default, as V7
+# mints new rows; v4 is the shape of rows created before V7, whose heap order is
+# unrelated to id order.
+#
+# Per size it reports three passes over every page:
+#   pk        only the primary key and V3's (status, renewed_at) index exist: the
+#             pre-V13 path, where every page also reads its heap blocks
+#   covering  V13's index added and the table vacuumed: index-only pages
+#   stale     after updating 3% of the active rows (about one night of renewals at
+#             target scale) without a vacuum: the heap fetches a lagging
+#             visibility map costs the covering path
+# Each pass sums EXPLAIN (ANALYZE, BUFFERS) over the pages: shared buffers hit and read,
+# heap fetches, and execution time, the scanStep's page reads without its due filter
+# and outbox inserts. Heap fetches are an index-only scan's visits to blocks not marked
+# all-visible; the pk pass visits the heap for every row and reports none. Later passes find more of the table cached, so compare hit + read
+# rather than read alone.
+#
+#   scripts/covering-bench.sh                   # 1,000,000 and 10,000,000 rows
+#   scripts/covering-bench.sh 1000000 10000     # one size, 10,000-row pages
+#   scripts/covering-bench.sh 1000000 10000 v4  # the same over pre-V7 random ids
+#
+# Usage: scripts/covering-bench.sh [N[,N...]] [page-size] [v7|v4]
+#
+# Requires: docker compose v2. psql runs inside the postgres container.
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+SIZES="${1:-1000000,10000000}"
+PAGE="${2:-10000}"
+IDS="${3:-v7}"
+IFS=, read -r -a NS <<< "$SIZES"
+for v in "${NS[@]}" "$PAGE"; do
+  if ! [[ "$v" =~ ^[1-9][0-9]*$ ]]; then
+    echo "[covering-bench] sizes and page size must be positive integers, got: ${v}" >&2
+    exit 2
+  fi
+done
+case "$IDS" in
+  v7) ID_FN=uuidv7 ;;
+  v4) ID_FN=gen_random_uuid ;;
+  *) echo "[covering-bench] id version must be v7 or v4, got: ${IDS}" >&2; exit 2 ;;
+esac
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+PGUSER="$(env_val POSTGRES_USER admin)"
+PGDB="$(env_val POSTGRES_DB payfold)"
+TABLE=covering_bench_subscription
+
+note() { echo "[covering-bench] $*"; }
+die()  { echo "[covering-bench] ERROR: $*" >&2; exit 1; }
+
+bench() {
+  local n="$1"
+  docker compose exec -T postgres psql -U "$PGUSER" -d "$PGDB" -v ON_ERROR_STOP=1 -Atq <<SQL
+DROP TABLE IF EXISTS ${TABLE};
+CREATE TABLE ${TABLE} (
+    id                  uuid PRIMARY KEY,
+    customer_id         uuid NOT NULL,
+    plan_id             uuid NOT NULL,
+    status              varchar(20) NOT NULL,
+    start_at            timestamptz NOT NULL DEFAULT now(),
+    cancel_at           timestamptz,
+    renewed_at          timestamptz,
+    next_due_local_date date
+) WITH (autovacuum_enabled = false);
+INSERT INTO ${TABLE} (id, customer_id, plan_id, status, renewed_at, next_due_local_date)
+SELECT ${ID_FN}(), gen_random_uuid(), gen_random_uuid(),
+       CASE WHEN n % 10 = 0 THEN 'canceled' ELSE 'active' END,
+       now() - make_interval(days => n % 28), current_date + n % 28
+FROM generate_series(1, ${n}) AS n;
+CREATE INDEX ON ${TABLE} (status, renewed_at);
+VACUUM ANALYZE ${TABLE};
+
+CREATE TEMP TABLE pass_stats (pass text, pages int, ms float8, hit bigint, read bigint, heap_fetches bigint);
+-- Page cursors, found once up front so the timed passes run only the page query.
+CREATE TEMP TABLE cursors AS
+SELECT '00000000-0000-0000-0000-000000000000'::uuid AS cursor_id
+UNION ALL
+SELECT id FROM (
+    SELECT id, row_number() OVER (ORDER BY id) AS rn
+    FROM ${TABLE} WHERE status = 'active' AND renewed_at IS NOT NULL
+) a WHERE rn % ${PAGE} = 0;
+
+CREATE FUNCTION pg_temp.scan_pass(pass text) RETURNS void LANGUAGE plpgsql AS \$\$
+DECLARE
+    c uuid;
+    plan json;
+BEGIN
+    FOR c IN SELECT cursor_id FROM cursors ORDER BY cursor_id LOOP
+        EXECUTE format(
+            'EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON)
+             SELECT s.id, s.customer_id, s.plan_id, s.renewed_at
+             FROM ${TABLE} s
+             WHERE s.status = %L AND s.renewed_at IS NOT NULL
+               AND s.id > %L AND s.id <= %L
+             ORDER BY s.id
+             LIMIT ${PAGE}',
+            'active', c, 'ffffffff-ffff-ffff-ffff-ffffffffffff') INTO plan;
+        INSERT INTO pass_stats VALUES (
+            pass, 1,
+            (plan->0->>'Execution Time')::float8,
+            (plan->0->'Plan'->>'Shared Hit Blocks')::bigint,
+            (plan->0->'Plan'->>'Shared Read Blocks')::bigint,
+            coalesce((SELECT sum(f::text::bigint) FROM jsonb_path_query(plan::jsonb, 'strict \$.**."Heap Fetches"') f), 0));
+    END LOOP;
+END
+\$\$;
+
+SELECT pg_temp.scan_pass('pk');
+CREATE INDEX ${TABLE}_scan_covering
+  ON ${TABLE} (id) INCLUDE (customer_id, plan_id, renewed_at)
+  WHERE status = 'active';
+VACUUM ANALYZE ${TABLE};
+SELECT pg_temp.scan_pass('covering');
+UPDATE ${TABLE} SET renewed_at = now()
+WHERE status = 'active' AND (hashtext(id::text) & 2147483647) % 100 < 3;
+SELECT pg_temp.scan_pass('stale');
+
+SELECT format('%-9s %9s  %-8s  pages %5s  %8s ms  hit %10s  read %10s  heap fetches %10s',
+       '${n}', pg_size_pretty(pg_relation_size('${TABLE}')), pass,
+       sum(pages), round(sum(ms)::numeric, 0), sum(hit), sum(read), sum(heap_fetches))
+FROM pass_stats
+GROUP BY pass
+ORDER BY array_position(ARRAY['pk', 'covering', 'stale'], pass);
+DROP TABLE ${TABLE};
+SQL
+}
+
+docker compose exec -T postgres psql -U "$PGUSER" -d "$PGDB" -Atc "SELECT 1" >/dev/null 2>&1 \
+  || die "cannot reach postgres through docker compose"
+
+RESULTS=()
+for n in "${NS[@]}"; do
+  note "loading ${n} rows and scanning them in ${PAGE}-row pages…"
+  # The pass calls print empty rows; only the report lines are kept.
+  OUT="$(bench "$n" | sed '/^$/d')" || die "benchmark failed at ${n} rows: ${OUT}"
+  RESULTS+=("$OUT")
+done
+
+echo
+echo "============================ covering-bench report ============================"
+echo "page size ${PAGE}, ${IDS} ids; blocks are 8 KiB shared buffers; rows  heap size  pass"
+printf '%s\n' "${RESULTS[@]}"
+echo "==============================================================================="
+exit 0
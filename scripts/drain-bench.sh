@@ -0,0 +1,90 @@
+#!/usr/bin/env bash
+# Consumer drain benchmark for a RUNNING Payfold stack. Measures, does not verify —
+# scripts/verify.sh remains the definition of "working".
+#
+# Runs scripts/load-test.sh N to put N fresh renewals on the queue, then polls the
+# consumer's renewals_processed_total (all outcomes) until it has advanced by the
+# published delta, and reports the drain rate in the listener mode the consumer was
+# started with. Compare modes by restarting only the consumer between runs:
+#
+#   RENEWAL_LISTENER_MODE=single docker compose up -d renewal-consumer && scripts/drain-bench.sh 50000
+#   RENEWAL_LISTENER_MODE=batch  docker compose up -d renewal-consumer && scripts/drain-bench.sh 50000
+#   RENEWAL_LISTENER_MODE=virtual docker compose up -d renewal-consumer && scripts/drain-bench.sh 50000
+#
+# The drain window starts when the producer job is triggered, so with a fast producer
+# it is dominated by the consumer; a producer slower than the consumer makes the
+# figure a lower bound. Wall clock only (see load-test.sh for why).
+#
+# Usage: scripts/drain-bench.sh N [timeout-seconds]
+#
+# Requires: docker compose v2, curl.
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+N="${1:?usage: scripts/drain-bench.sh N [timeout-seconds]}"
+TIMEOUT="${2:-1800}"
+if ! [[ "$N" =~ ^[1-9][0-9]*$ && "$TIMEOUT" =~ ^[1-9][0-9]*$ ]]; then
+  echo "[drain-bench] N and timeout must be positive integers" >&2
+  exit 2
+fi
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+CONSUMER_PORT="$(env_val CONSUMER_HTTP_PORT 8081)"
+
+note() { echo "[drain-bench] $*"; }
+die()  { echo "[drain-bench] ERROR: $*" >&2; exit 1; }
+
+processed() { # sum of renewals_processed_total over all outcomes | unreachable
+  local body
+  body="$(curl -fsS "http://localhost:${CONSUMER_PORT}/actuator/prometheus" 2>/dev/null)" || { echo unreachable; return; }
+  echo "$body" | grep -E '^renewals_processed_total\{' \
+    | awk '{s+=$NF} END { printf "%.0f\n", s }'
+}
+
+curl -fsS "http://localhost:${CONSUMER_PORT}/actuator/health" 2>/dev/null | grep -q '"status":"UP"' \
+  || die "consumer not UP on :${CONSUMER_PORT}"
+MODE="$(docker compose exec -T renewal-consumer printenv RENEWAL_LISTENER_MODE 2>/dev/null | tr -d '\r')"
+
+BEFORE="$(processed)"
+[[ "$BEFORE" =~ ^[0-9]+$ ]] || die "invalid consumer baseline: ${BEFORE}"
+
+START=$(date +%s)
+LOAD_OUT="$(scripts/load-test.sh "$N")" || die "load-test failed: ${LOAD_OUT}"
+PUBLISHED="$(echo "$LOAD_OUT" | grep -o 'outbox published delta [0-9]*' | awk '{print $NF}')"
+[[ "$PUBLISHED" =~ ^[0-9]+$ ]] || die "no published delta in load-test output"
+note "published ${PUBLISHED}; polling consumer every 2s…"
+
+DONE=0
+while (( $(date +%s) - START < TIMEOUT )); do
+  NOW="$(processed)"
+  if [[ "$NOW" =~ ^[0-9]+$ ]]; then
+    DONE=$(( NOW - BEFORE ))
+    (( DONE >= PUBLISHED )) && break
+  fi
+  sleep 2
+done
+WALL=$(( $(date +%s) - START ))
+
+RATE=n/a
+(( WALL > 0 )) && RATE="$(awk -v d="$DONE" -v w="$WALL" 'BEGIN { printf "%.0f", d / w }')"
+
+echo
+echo "==================== drain-bench report ===================="
+echo "listener mode          ${MODE:-single (default)}"
+echo "published              ${PUBLISHED}"
+echo "processed delta        ${DONE}"
+echo "drain wall duration    ${WALL}s (from job trigger)"
+echo "drain rate             ${RATE} msg/s"
+echo "============================================================"
+(( DONE >= PUBLISHED )) || exit 1
+exit 0
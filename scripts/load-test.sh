@@ -74,12 +74,12 @@ WITH monthly_plan AS (
     SELECT id FROM plan WHERE interval = 'month' ORDER BY name LIMIT 1
 ), new_customers AS (
     INSERT INTO customer (id, email)
-    SELECT gen_random_uuid(), 'load-${RUN_TAG}-' || g || '@example.test'
+    SELECT uuidv7(), 'load-${RUN_TAG}-' || g || '@example.test'
     FROM generate_series(1, ${N}) g
     RETURNING id
 )
 INSERT INTO subscription (id, customer_id, plan_id, status, renewed_at)
-SELECT gen_random_uuid(), c.id, (SELECT id FROM monthly_plan), 'active',
+SELECT uuidv7(), c.id, (SELECT id FROM monthly_plan), 'active',
        now() - INTERVAL '1 month'
 FROM new_customers c;
 ANALYZE customer;
@@ -0,0 +1,93 @@
+#!/usr/bin/env bash
+# Producer payload allocation benchmark for a RUNNING Payfold stack. Measures, does not
+# verify — scripts/verify.sh remains the definition of "working".
+#
+# Restarts only the producer with a JFR recording (profile settings, so allocation
+# samples are on), runs scripts/load-test.sh N, stops the producer to dump the
+# recording, and reports the publish rate next to JFR's allocation-by-site and
+# allocation-by-class views of the whole run. The recording is kept in
+# bench/payload-<label>.jfr for further digging with `jfr print` or JMC.
+#
+#   scripts/payload-bench.sh 1000000 bytea
+#
+# The comparison R35 asks for is two runs of the same N on fresh stacks: one on the
+# last commit before V10 (jsonb payload rendered to a String, label jsonb) and one on
+# this one (label bytea). A V10-migrated database cannot run the older producer.
+# The producer is started again without the recording afterwards.
+#
+# Usage: scripts/payload-bench.sh N [label]
+#
+# Requires: docker compose v2, curl, and a JDK 21+ `jfr` on PATH (for `jfr view`).
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+N="${1:?usage: scripts/payload-bench.sh N [label]}"
+LABEL="${2:-bytea}"
+if ! [[ "$N" =~ ^[1-9][0-9]*$ ]]; then
+  echo "[payload-bench] N must be a positive integer, got: ${N}" >&2
+  exit 2
+fi
+if ! [[ "$LABEL" =~ ^[A-Za-z0-9._-]+$ ]]; then
+  echo "[payload-bench] label must be [A-Za-z0-9._-]+, got: ${LABEL}" >&2
+  exit 2
+fi
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+PRODUCER_PORT="$(env_val PRODUCER_HTTP_PORT 8080)"
+RECORDING="/tmp/payload-bench.jfr"
+OUT_DIR="bench"
+OUT_FILE="${OUT_DIR}/payload-${LABEL}.jfr"
+
+note() { echo "[payload-bench] $*"; }
+die()  { echo "[payload-bench] ERROR: $*" >&2; exit 1; }
+
+command -v jfr >/dev/null 2>&1 || die "jfr (JDK 21+) not on PATH"
+
+wait_up() {
+  for _ in $(seq 1 60); do
+    curl -fsS "http://localhost:${PRODUCER_PORT}/actuator/health" 2>/dev/null | grep -q '"status":"UP"' && return 0
+    sleep 2
+  done
+  return 1
+}
+
+note "restarting producer with a JFR recording…"
+PRODUCER_JAVA_OPTS="-XX:StartFlightRecording=settings=profile,dumponexit=true,filename=${RECORDING}" \
+  docker compose up -d --force-recreate renewal-producer >/dev/null 2>&1 \
+  || die "could not restart renewal-producer"
+wait_up || die "producer not UP on :${PRODUCER_PORT} after restart"
+
+OUT="$(scripts/load-test.sh "$N")" || die "load-test failed: ${OUT}"
+WALL="$(echo "$OUT" | grep '^job wall duration' | awk '{print $4}')"
+RATE="$(echo "$OUT" | grep '^publish rate' | awk '{print $3}')"
+
+note "stopping producer to dump the recording…"
+docker compose stop renewal-producer >/dev/null 2>&1 || die "could not stop renewal-producer"
+mkdir -p "$OUT_DIR"
+docker compose cp "renewal-producer:${RECORDING}" "$OUT_FILE" >/dev/null 2>&1 \
+  || die "no recording at ${RECORDING} in the producer container"
+docker compose up -d --force-recreate renewal-producer >/dev/null 2>&1 \
+  || die "could not restart renewal-producer without the recording"
+
+echo
+echo "=================== payload-bench report (${LABEL}) ==================="
+echo "renewals               ${N}"
+echo "job wall duration      ${WALL}"
+echo "publish rate (msg/s)   ${RATE}"
+echo "recording              ${OUT_FILE}"
+echo
+jfr view --width 160 allocation-by-site "$OUT_FILE"
+echo
+jfr view --width 160 allocation-by-class "$OUT_FILE"
+echo "======================================================================="
+exit 0
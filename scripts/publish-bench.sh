@@ -0,0 +1,78 @@
+#!/usr/bin/env bash
+# Producer publish benchmark for a RUNNING Payfold stack. Measures, does not verify —
+# scripts/verify.sh remains the definition of "working".
+#
+# For each publisher channel count, restarts only the producer with
+# APP_PUBLISHCHANNELS set, waits for it to come UP, runs scripts/load-test.sh N, and
+# collects the job wall duration and publish rate. The rate is load-test.sh's: the
+# published delta over the whole job (scan included), so compare runs of the same N
+# against each other rather than reading any one figure as a pure publish rate.
+#
+#   scripts/publish-bench.sh 100000            # channel counts 1 2 4 8
+#   scripts/publish-bench.sh 100000 1 4 16
+#
+# The consumer keeps draining between runs; the queue depth it leaves behind is part
+# of the broker state each run sees. The producer is left running with the last count.
+#
+# Usage: scripts/publish-bench.sh N [channel-count ...]
+#
+# Requires: docker compose v2, curl.
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+N="${1:?usage: scripts/publish-bench.sh N [channel-count ...]}"
+shift
+CHANNELS=("$@")
+(( ${#CHANNELS[@]} > 0 )) || CHANNELS=(1 2 4 8)
+for c in "$N" "${CHANNELS[@]}"; do
+  if ! [[ "$c" =~ ^[1-9][0-9]*$ ]]; then
+    echo "[publish-bench] N and channel counts must be positive integers, got: ${c}" >&2
+    exit 2
+  fi
+done
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+PRODUCER_PORT="$(env_val PRODUCER_HTTP_PORT 8080)"
+
+note() { echo "[publish-bench] $*"; }
+die()  { echo "[publish-bench] ERROR: $*" >&2; exit 1; }
+
+wait_up() {
+  for _ in $(seq 1 60); do
+    curl -fsS "http://localhost:${PRODUCER_PORT}/actuator/health" 2>/dev/null | grep -q '"status":"UP"' && return 0
+    sleep 2
+  done
+  return 1
+}
+
+RESULTS=()
+for c in "${CHANNELS[@]}"; do
+  note "restarting producer with APP_PUBLISHCHANNELS=${c}…"
+  APP_PUBLISHCHANNELS="$c" docker compose up -d renewal-producer >/dev/null 2>&1 \
+    || die "could not restart renewal-producer"
+  wait_up || die "producer not UP on :${PRODUCER_PORT} after restart"
+
+  OUT="$(scripts/load-test.sh "$N")" || die "load-test failed with ${c} channels: ${OUT}"
+  WALL="$(echo "$OUT" | grep '^job wall duration' | awk '{print $4}')"
+  RATE="$(echo "$OUT" | grep '^publish rate' | awk '{print $3}')"
+  note "${c} channels: ${WALL} wall, ${RATE} msg/s"
+  RESULTS+=("$(printf '%-9s %-10s %s' "$c" "$WALL" "$RATE")")
+done
+
+echo
+echo "=================== publish-bench report ==================="
+echo "renewals per run       ${N}"
+echo "channels  job wall   publish rate (msg/s)"
+printf '%s\n' "${RESULTS[@]}"
+echo "============================================================"
+exit 0
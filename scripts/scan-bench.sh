@@ -0,0 +1,111 @@
+#!/usr/bin/env bash
+# Producer scan benchmark for a RUNNING Payfold stack. Measures, does not verify —
+# scripts/verify.sh remains the definition of "working".
+#
+# For each scan source, restarts only the producer with APP_SCANSOURCE set, waits for
+# it to come UP, runs scripts/load-test.sh N, and reads that run's scanStep duration
+# from the Spring Batch step table. "full" reads every active subscription; "due-index"
+# reads only today's next_due_local_date slice (V6). Each run adds N more due-today rows
+# and re-finds the earlier runs' ones (deduplicated by the outbox), so the later source
+# sees the larger due slice — run the sources in both orders before reading anything
+# into a small gap.
+#
+# "lease:K" is the full scan distributed through scan_lease (V11): the producer runs with
+# APP_SCANDISTRIBUTION=lease and K renewal-producer-worker replicas (compose profile
+# scan-workers) scan ranges beside it, so K+1 instances share the pass.
+#
+#   scripts/scan-bench.sh 100000                 # sources: full due-index
+#   scripts/scan-bench.sh 100000 due-index full
+#   scripts/scan-bench.sh 100000 lease:0 lease:1 lease:3
+#
+# The producer is left running with the last source (and its workers, for lease:K).
+#
+# Usage: scripts/scan-bench.sh N [full|due-index|lease:K ...]
+#
+# Requires: docker compose v2, curl. psql runs inside the postgres container.
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+N="${1:?usage: scripts/scan-bench.sh N [full|due-index|lease:K ...]}"
+shift
+SOURCES=("$@")
+(( ${#SOURCES[@]} > 0 )) || SOURCES=(full due-index)
+if ! [[ "$N" =~ ^[1-9][0-9]*$ ]]; then
+  echo "[scan-bench] N must be a positive integer, got: ${N}" >&2
+  exit 2
+fi
+for s in "${SOURCES[@]}"; do
+  if [[ "$s" != full && "$s" != due-index && ! "$s" =~ ^lease:[0-9]+$ ]]; then
+    echo "[scan-bench] scan source must be full, due-index or lease:K, got: ${s}" >&2
+    exit 2
+  fi
+done
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+PRODUCER_PORT="$(env_val PRODUCER_HTTP_PORT 8080)"
+PGUSER="$(env_val POSTGRES_USER admin)"
+PGDB="$(env_val POSTGRES_DB payfold)"
+
+note() { echo "[scan-bench] $*"; }
+die()  { echo "[scan-bench] ERROR: $*" >&2; exit 1; }
+q()    { docker compose exec -T postgres psql -U "$PGUSER" -d "$PGDB" -Atc "$1" 2>/dev/null; }
+
+wait_up() {
+  for _ in $(seq 1 60); do
+    curl -fsS "http://localhost:${PRODUCER_PORT}/actuator/health" 2>/dev/null | grep -q '"status":"UP"' && return 0
+    sleep 2
+  done
+  return 1
+}
+
+ACTIVE="$(q "SELECT count(*) FROM subscription WHERE status = 'active'")" || die "cannot query postgres"
+
+RESULTS=()
+for s in "${SOURCES[@]}"; do
+  if [[ "$s" == lease:* ]]; then
+    K="${s#lease:}"
+    note "restarting producer with APP_SCANDISTRIBUTION=lease and ${K} scan workers…"
+    docker compose --profile scan-workers stop renewal-producer-worker >/dev/null 2>&1
+    APP_SCANSOURCE=full APP_SCANDISTRIBUTION=lease docker compose up -d renewal-producer >/dev/null 2>&1 \
+      || die "could not restart renewal-producer"
+    if (( K > 0 )); then
+      # --no-deps: the producer was just recreated with the lease settings; compose must
+      # not recreate it again from this command's environment.
+      APP_SCANSOURCE=full docker compose --profile scan-workers up -d --no-deps --wait \
+        --scale renewal-producer-worker="$K" renewal-producer-worker >/dev/null 2>&1 || die "could not start ${K} scan workers"
+    fi
+  else
+    note "restarting producer with APP_SCANSOURCE=${s}…"
+    docker compose --profile scan-workers stop renewal-producer-worker >/dev/null 2>&1
+    APP_SCANSOURCE="$s" APP_SCANDISTRIBUTION=local docker compose up -d renewal-producer >/dev/null 2>&1 \
+      || die "could not restart renewal-producer"
+  fi
+  wait_up || die "producer not UP on :${PRODUCER_PORT} after restart"
+
+  OUT="$(scripts/load-test.sh "$N")" || die "load-test failed with scan source ${s}: ${OUT}"
+  WALL="$(echo "$OUT" | grep '^job wall duration' | awk '{print $4}')"
+  SCAN="$(q "SELECT round(extract(epoch FROM end_time - start_time)::numeric, 3)
+             FROM batch_step_execution WHERE step_name = 'scanStep'
+             ORDER BY step_execution_id DESC LIMIT 1")"
+  note "${s}: scanStep ${SCAN}s, job ${WALL} wall"
+  RESULTS+=("$(printf '%-10s %-12s %s' "$s" "${SCAN}s" "$WALL")")
+done
+
+echo
+echo "===================== scan-bench report ====================="
+echo "renewals per run       ${N}"
+echo "active before first    ${ACTIVE}"
+echo "source     scanStep     job wall"
+printf '%s\n' "${RESULTS[@]}"
+echo "============================================================="
+exit 0
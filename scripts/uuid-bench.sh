@@ -0,0 +1,128 @@
+#!/usr/bin/env bash
+# Primary-key I/O benchmark: gen_random_uuid() (v4) vs uuidv7() keys, on the RUNNING
+# stack's Postgres. Measures, does not verify — scripts/verify.sh remains the
+# definition of "working". Touches no application table: it builds two scratch tables
+# shaped like subscription (uuid PK + ~100 bytes of row), fills each with N rows in
+# batches, and drops them again.
+#
+# Per key type it reports:
+#   insert    total wall time and p50/p99 per-batch latency, plus shared buffers
+#             hit / read / dirtied across all batches (EXPLAIN ANALYZE BUFFERS)
+#   size      primary-key index size after the load
+#   pk scan   buffers touched by a full PK-ordered index scan — the scanStep access
+#             path — and the planner's id/heap correlation after ANALYZE
+#
+#   scripts/uuid-bench.sh                 # 1,000,000 rows, 10,000-row batches
+#   scripts/uuid-bench.sh 5000000 20000
+#
+# Usage: scripts/uuid-bench.sh [N] [batch-size]
+#
+# Requires: docker compose v2. psql runs inside the postgres container.
+
+set -uo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+cd "$ROOT"
+
+N="${1:-1000000}"
+BATCH="${2:-10000}"
+for v in "$N" "$BATCH"; do
+  if ! [[ "$v" =~ ^[1-9][0-9]*$ ]]; then
+    echo "[uuid-bench] N and batch size must be positive integers, got: ${v}" >&2
+    exit 2
+  fi
+done
+
+env_val() {
+  local v=""
+  if [[ -f .env ]]; then
+    v="$(grep -E "^$1=" .env | head -1 | cut -d= -f2- | sed 's/[[:space:]]*$//')"
+  fi
+  printf '%s' "${v:-$2}"
+}
+
+PGUSER="$(env_val POSTGRES_USER admin)"
+PGDB="$(env_val POSTGRES_DB payfold)"
+
+note() { echo "[uuid-bench] $*"; }
+die()  { echo "[uuid-bench] ERROR: $*" >&2; exit 1; }
+
+bench() {
+  local kind="$1" fn="$2" table="uuid_bench_$1"
+  docker compose exec -T postgres psql -U "$PGUSER" -d "$PGDB" -v ON_ERROR_STOP=1 -Atq <<SQL
+DROP TABLE IF EXISTS ${table};
+CREATE TABLE ${table} (
+    id          uuid PRIMARY KEY,
+    customer_id uuid NOT NULL,
+    status      text NOT NULL,
+    renewed_at  timestamptz NOT NULL,
+    filler      text NOT NULL
+);
+CREATE TEMP TABLE batch_stats (ms float8, hit bigint, read bigint, dirtied bigint);
+DO \$\$
+DECLARE
+    plan json;
+BEGIN
+    FOR b IN 1..ceil(${N}::numeric / ${BATCH}) LOOP
+        EXECUTE format(
+            'EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON)
+             INSERT INTO ${table}
+             SELECT ${fn}(), gen_random_uuid(), %L, now(), repeat(%L, 60)
+             FROM generate_series(1, %s)',
+            'active', 'x', least(${BATCH}, ${N} - (b - 1) * ${BATCH})) INTO plan;
+        INSERT INTO batch_stats VALUES (
+            (plan->0->>'Execution Time')::float8,
+            (plan->0->'Plan'->>'Shared Hit Blocks')::bigint,
+            (plan->0->'Plan'->>'Shared Read Blocks')::bigint,
+            (plan->0->'Plan'->>'Shared Dirtied Blocks')::bigint);
+    END LOOP;
+END
+\$\$;
+ANALYZE ${table};
+SET enable_seqscan = off;
+SET enable_bitmapscan = off;
+DO \$\$
+DECLARE
+    plan json;
+BEGIN
+    EXECUTE 'EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) SELECT filler FROM ${table} ORDER BY id' INTO plan;
+    CREATE TEMP TABLE scan_plan AS
+    SELECT (plan->0->'Plan'->>'Shared Hit Blocks')::bigint
+         + (plan->0->'Plan'->>'Shared Read Blocks')::bigint AS blocks,
+           (plan->0->>'Execution Time')::float8 AS ms;
+END
+\$\$;
+SELECT format('%-4s  insert %8s s  p50 %7s ms  p99 %7s ms  hit %9s  read %8s  dirtied %8s  pk %8s  scan blocks %9s  scan %7s ms  correlation %6s',
+       '${kind}',
+       round((sum(ms) / 1000)::numeric, 2),
+       round(percentile_cont(0.5) WITHIN GROUP (ORDER BY ms)::numeric, 2),
+       round(percentile_cont(0.99) WITHIN GROUP (ORDER BY ms)::numeric, 2),
+       sum(hit), sum(read), sum(dirtied),
+       pg_size_pretty(pg_relation_size('${table}_pkey')),
+       (SELECT blocks FROM scan_plan),
+       (SELECT round(ms::numeric, 0) FROM scan_plan),
+       (SELECT round(correlation::numeric, 3) FROM pg_stats
+         WHERE tablename = '${table}' AND attname = 'id'))
+FROM batch_stats;
+DROP TABLE ${table};
+SQL
+}
+
+docker compose exec -T postgres psql -U "$PGUSER" -d "$PGDB" -Atc "SELECT 1" >/dev/null 2>&1 \
+  || die "cannot reach postgres through docker compose"
+
+RESULTS=()
+for kind in v4 v7; do
+  fn=gen_random_uuid
+  [[ "$kind" == v7 ]] && fn=uuidv7
+  note "loading ${N} rows with ${fn}() keys…"
+  OUT="$(bench "$kind" "$fn")" || die "benchmark failed for ${kind}: ${OUT}"
+  RESULTS+=("$OUT")
+done
+
+echo
+echo "============================ uuid-bench report ============================"
+echo "rows ${N}, batch ${BATCH}; blocks are 8 KiB shared buffers"
+printf '%s\n' "${RESULTS[@]}"
+echo "==========================================================================="
+exit 0
@@ -229,6 +229,42 @@ fi
 wait_for "producer /actuator/prometheus serves outbox counters" producer_prometheus_ready || summary
 wait_for "consumer /actuator/prometheus serves renewals counter" consumer_prometheus_ready || summary
 
+# The full scan's page must be able to run index-only (V13, R41): the covering index
+# exists and is the planner's index path, and autovacuum keeps the visibility map it
+# depends on within a night of renewals. Seq and bitmap scans are disabled for the
+# plan check, because on a small verify dataset the planner may rightly prefer them.
+# Once subscription is hash-partitioned (V14, R42), the plan names each partition's
+# index, and the settings and visibility map live on the partitions.
+SCAN_PLAN="$(q "SET enable_seqscan = off; SET enable_bitmapscan = off;
+  EXPLAIN SELECT s.id, s.customer_id, s.plan_id, s.renewed_at FROM subscription s
+  WHERE s.status = 'active' AND s.renewed_at IS NOT NULL
+    AND s.id > '00000000-0000-0000-0000-000000000000' AND s.id <= 'ffffffff-ffff-ffff-ffff-ffffffffffff'
+  ORDER BY s.id LIMIT 10000")"
+if grep -Eq 'Index Only Scan using (idx_subscription|subscription_p[0-9]+)_scan_covering' <<< "$SCAN_PLAN"; then
+  pass "scan page plans as an index-only scan of the covering index"
+else
+  fail "scan page plans as an index-only scan of the covering index" "$(head -1 <<< "$SCAN_PLAN")"
+fi
+# Tables of subscription (itself, or its partitions) missing either threshold.
+SUB_UNTUNED="$(q "SELECT string_agg(c.relname, ',' ORDER BY c.relname)
+  FROM pg_partition_tree('subscription') t JOIN pg_class c ON c.oid = t.relid
+  WHERE t.isleaf AND NOT (coalesce(c.reloptions, '{}') @> ARRAY['autovacuum_vacuum_scale_factor=0.02',
+                                                                 'autovacuum_vacuum_insert_scale_factor=0.02'])")"
+if [[ -z "$SUB_UNTUNED" ]]; then
+  pass "subscription autovacuum thresholds keep the visibility map current"
+else
+  fail "subscription autovacuum thresholds keep the visibility map current" "untuned: ${SUB_UNTUNED}"
+fi
+# As of the last vacuum or analyze; a low share only costs scan time, so it warns.
+ALL_VISIBLE_PCT="$(q "SELECT CASE WHEN sum(c.relpages) = 0 THEN 100
+                                 ELSE round(100.0 * sum(c.relallvisible) / sum(c.relpages)) END
+  FROM pg_partition_tree('subscription') t JOIN pg_class c ON c.oid = t.relid WHERE t.isleaf")"
+if [[ "$ALL_VISIBLE_PCT" =~ ^[0-9]+$ ]] && (( ALL_VISIBLE_PCT >= 90 )); then
+  pass "subscription heap ${ALL_VISIBLE_PCT}% all-visible"
+else
+  warn "subscription heap all-visible share below 90%" "${ALL_VISIBLE_PCT:-unknown}%; scan pages fetch heap blocks until the next vacuum"
+fi
+
 M_INS_BEFORE="$(prom_val "$PRODUCER_PORT" '^outbox_inserted_total ')"
 M_PUB_BEFORE="$(prom_val "$PRODUCER_PORT" '^outbox_published_total ')"
 M_PROC_BEFORE="$(prom_val "$CONSUMER_PORT" '^renewals_processed_total\{outcome="(succeeded|failed)"\}')"
@@ -24,8 +24,8 @@ public class CustomerSeeder {
     private static final String COUNT_SQL = "SELECT COUNT(*) FROM customer";
 
     private static final String INSERT_SQL = """
-            INSERT INTO customer (id, email, name, locale, status, created_at)
-            VALUES (?, ?, ?, ?, ?, now())
+            INSERT INTO customer (email, name, locale, status, created_at)
+            VALUES (?, ?, ?, ?, now())
             """;
 
     // Adjust to your taste (must sum ~1.0; code normalizes anyway)
@@ -99,11 +99,11 @@ public class CustomerSeeder {
                     String domain = "example." + loc.code; // be/nl/fr/en
                     String email = (localPart + "@" + domain).toLowerCase(Locale.ROOT);
 
-                    ps.setObject(1, java.util.UUID.randomUUID());
-                    ps.setString(2, email);
-                    ps.setString(3, fullName);
-                    ps.setString(4, loc.code);
-                    ps.setString(5, STATUSES[rnd.nextInt(STATUSES.length)]);
+                    // id from the column default (uuidv7, V7): time-ordered like every other insert
+                    ps.setString(1, email);
+                    ps.setString(2, fullName);
+                    ps.setString(3, loc.code);
+                    ps.setString(4, STATUSES[rnd.nextInt(STATUSES.length)]);
                     ps.addBatch();
                     if ((i + 1) % 1000 == 0) ps.executeBatch();   // bounded batch, same cadence as SubscriptionSeederDueToday
 
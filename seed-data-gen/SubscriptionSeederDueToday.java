@@ -128,8 +128,8 @@ public class SubscriptionSeederDueToday {
         Random rnd = new Random();
 
         String sql = """
-            INSERT INTO subscription (id, customer_id, plan_id, status, start_at, cancel_at, renewed_at)
-            VALUES (?, ?, ?, 'active', ?, NULL, ?)
+            INSERT INTO subscription (customer_id, plan_id, status, start_at, cancel_at, renewed_at)
+            VALUES (?, ?, 'active', ?, NULL, ?)
         """;
 
         int count = 0;
@@ -172,11 +172,11 @@ public class SubscriptionSeederDueToday {
                     startAt = renewedAt.minusMonths(monthsBack);
                 }
 
-                ps.setObject(1, UUID.randomUUID());
-                ps.setObject(2, cid);
-                ps.setObject(3, plan.id());
-                ps.setTimestamp(4, ts(startAt));
-                ps.setTimestamp(5, ts(renewedAt));
+                // id from the column default (uuidv7, V7)
+                ps.setObject(1, cid);
+                ps.setObject(2, plan.id());
+                ps.setTimestamp(3, ts(startAt));
+                ps.setTimestamp(4, ts(renewedAt));
 
                 ps.addBatch();
                 if (++count % 1000 == 0) ps.executeBatch();